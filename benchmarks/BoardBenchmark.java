@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.Board;
+import server.Note;
+
+/**
+ * Single-command Board mutations: POST (addNote) and PIN/UNPIN, on boards
+ * of different sizes.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BoardBenchmark {
+    /** Notes posted per measured batch in addNote. */
+    private static final int POST_BATCH = 10000;
+
+    @Param({ "1000", "100000" })
+    public int notes;
+
+    private Board board;
+    private int size;
+
+    /**
+     * Rebuilt before every iteration: POST grows the board, so each batch
+     * starts again from the requested size.
+     */
+    @Setup(Level.Iteration)
+    public void setup() {
+        board = BoardFixtures.populatedBoard(notes, 10);
+        size = BoardFixtures.boardSize(notes);
+    }
+
+    /**
+     * POST at a random position; nearly every call inserts a note. Runs
+     * as fixed batches so the board never grows far beyond its size.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5, batchSize = POST_BATCH)
+    @Measurement(iterations = 20, batchSize = POST_BATCH)
+    public String addNote() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int limit = size - BoardFixtures.NOTE_SIZE;
+        return board.addNote(new Note(random.nextInt(limit), random.nextInt(limit), BoardFixtures.NOTE_SIZE,
+                BoardFixtures.NOTE_SIZE, "blue", "benchmark note"));
+    }
+
+    /** PIN then UNPIN the same point, leaving the board unchanged. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public String pinUnpin() {
+        int side = BoardFixtures.gridSide(notes);
+        int i = ThreadLocalRandom.current().nextInt(notes);
+        int x = (i % side) * BoardFixtures.NOTE_SIZE + 2;
+        int y = (i / side) * BoardFixtures.NOTE_SIZE + 2;
+        String error = board.addPin(x, y);
+        return error != null ? error : board.removePin(x, y);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import server.Board;
+import server.Note;
+
+/**
+ * Builds populated boards for the benchmarks.
+ *
+ * Boards are sized so that the requested number of notes fits on a grid
+ * without overlapping: NOTE_SIZE x NOTE_SIZE notes at NOTE_SIZE spacing.
+ * Colors and messages are drawn from a fixed seed, so every run measures
+ * the same board.
+ */
+final class BoardFixtures {
+    static final int NOTE_SIZE = 10;
+    static final String[] COLORS = { "yellow", "blue", "green", "pink", "orange", "purple", "white" };
+
+    private BoardFixtures() {
+    }
+
+    /** Side length, in notes, of a square grid holding at least n notes. */
+    static int gridSide(int notes) {
+        return (int) Math.ceil(Math.sqrt(Math.max(1, notes)));
+    }
+
+    /** Board dimension that fits the grid for n notes. */
+    static int boardSize(int notes) {
+        return gridSide(notes) * NOTE_SIZE;
+    }
+
+    /** An empty board large enough for n notes. */
+    static Board emptyBoard(int notes) {
+        Set<String> colors = new LinkedHashSet<>();
+        for (String color : COLORS) {
+            colors.add(color);
+        }
+        int size = boardSize(notes);
+        return new Board(size, size, NOTE_SIZE, NOTE_SIZE, colors);
+    }
+
+    /**
+     * A board holding n notes, with a pin in every pinEvery-th note
+     * (0 for no pins).
+     */
+    static Board populatedBoard(int notes, int pinEvery) {
+        Board board = emptyBoard(notes);
+        Random random = new Random(42);
+        int side = gridSide(notes);
+        for (int i = 0; i < notes; i++) {
+            int x = (i % side) * NOTE_SIZE;
+            int y = (i / side) * NOTE_SIZE;
+            String color = COLORS[random.nextInt(COLORS.length)];
+            board.addNote(new Note(x, y, NOTE_SIZE, NOTE_SIZE, color, "note " + i + " about topic " + random.nextInt(100)));
+            if (pinEvery > 0 && i % pinEvery == 0) {
+                board.addPin(x + 1, y + 1);
+            }
+        }
+        return board;
+    }
+}
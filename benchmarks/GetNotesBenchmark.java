@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.Board;
+import server.Note;
+
+/**
+ * GET (Board.getNotes) with every combination of filters, on boards of
+ * different sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class GetNotesBenchmark {
+    @Param({ "1000", "100000" })
+    public int notes;
+
+    /**
+     * Filters applied by getNotes; "+" combines them, as GET ANDs all
+     * filters it is given.
+     */
+    @Param({ "none", "color", "contains", "refersTo", "region", "color+contains", "color+refersTo",
+            "contains+refersTo", "color+contains+refersTo", "color+region" })
+    public String filter;
+
+    private Board board;
+    private int size;
+    private String color;
+    private Integer containsX;
+    private Integer containsY;
+    private String refersTo;
+    private int[] region;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        board = BoardFixtures.populatedBoard(notes, 10);
+        size = BoardFixtures.boardSize(notes);
+        color = filter.contains("color") ? "yellow" : null;
+        containsX = filter.contains("contains") ? size / 2 + 5 : null;
+        containsY = filter.contains("contains") ? size / 2 + 5 : null;
+        refersTo = filter.contains("refersTo") ? "topic 7" : null;
+        // A client viewport: 800x600 board units in the middle of the board
+        region = filter.contains("region") ? new int[] { size / 4, size / 4, 800, 600 } : null;
+    }
+
+    @Benchmark
+    public List<Note> getNotes() {
+        return board.getNotes(color, containsX, containsY, refersTo, region);
+    }
+}
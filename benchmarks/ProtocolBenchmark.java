@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.BoardRegistry;
+import server.ProtocolHandler;
+import server.ProtocolResponse;
+
+/**
+ * ProtocolHandler.processCommand end to end: parsing, validation, the
+ * board operation and building the response text, plus encoding a GET
+ * response to the bytes written to the socket.
+ *
+ * The default board is configured through the same bbs.board.* properties
+ * the server reads, so it matches the fixtures used elsewhere.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class ProtocolBenchmark {
+    private static final int NOTES = 1000;
+
+    /**
+     * Commands replayed against a board of 1000 notes. The POST always
+     * hits an existing note, so it measures parsing and validation
+     * without growing the board.
+     */
+    @Param({ "POST 0 0 yellow note 0 about topic 1", "GET", "GET color=yellow", "GET contains=155 155",
+            "GET refersTo=topic 7", "GET region=0 0 100 100", "GET PINS", "PIN 2 2", "UNPIN 9999 9999",
+            "POST x y yellow malformed" })
+    public String command;
+
+    private ProtocolHandler handler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        int size = BoardFixtures.boardSize(NOTES);
+        System.setProperty("bbs.board.width", Integer.toString(size));
+        System.setProperty("bbs.board.height", Integer.toString(size));
+        System.setProperty("bbs.board.noteWidth", Integer.toString(BoardFixtures.NOTE_SIZE));
+        System.setProperty("bbs.board.noteHeight", Integer.toString(BoardFixtures.NOTE_SIZE));
+        handler = new ProtocolHandler(new BoardRegistry(null, 600, null));
+
+        int side = BoardFixtures.gridSide(NOTES);
+        for (int i = 0; i < NOTES; i++) {
+            int x = (i % side) * BoardFixtures.NOTE_SIZE;
+            int y = (i / side) * BoardFixtures.NOTE_SIZE;
+            handler.processCommand("POST " + x + " " + y + " " + BoardFixtures.COLORS[i % BoardFixtures.COLORS.length]
+                    + " note " + i + " about topic " + (i % 100));
+            if (i % 10 == 0) {
+                handler.processCommand("PIN " + (x + 1) + " " + (y + 1));
+            }
+        }
+    }
+
+    @Benchmark
+    public String processCommand() {
+        return handler.processCommand(command).toString();
+    }
+
+    /** Full cost of a GET reply as sent: command, response text, UTF-8 bytes. */
+    @Benchmark
+    public byte[] encodeResponse() {
+        ProtocolResponse response = handler.processCommand(command);
+        return (response.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import server.Board;
+
+/**
+ * SHAKE (Board.removeUnpinnedNotes) at 1k, 100k and 1M notes.
+ *
+ * SHAKE is destructive, so every invocation gets a freshly built board
+ * with one note in ten pinned, and each invocation is timed on its own.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ShakeBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int notes;
+
+    private Board board;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        board = BoardFixtures.populatedBoard(notes, 10);
+    }
+
+    @Benchmark
+    public int removeUnpinnedNotes() {
+        board.removeUnpinnedNotes();
+        return board.getNoteCount();
+    }
+}
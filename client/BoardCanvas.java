@@ -1,18 +1,40 @@
+package client;
+
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Visual representation of the bulletin board with notes and pins.
- * Board dimensions: 800x600, each note: 100x100 (RFC Section 4.3)
+ * Board and note dimensions come from the server's BOARD_CONFIG handshake
+ * (RFC Section 4.2). The canvas is meant to sit in a JScrollPane: it acts as
+ * a zoomable viewport (Ctrl + mouse wheel) and reports the board region
+ * currently visible so only that region needs to be fetched and drawn.
+ *
+ * Rendering is built for boards with thousands of notes: paint resources
+ * are constants, each note is a cached sprite (keyed by color and shown
+ * text, rendered at the current zoom) copied with one drawImage, only
+ * notes and pins inside the clip are drawn, and pins are de-duplicated
+ * once per state update instead of on every repaint.
  */
 public class BoardCanvas extends JPanel {
-    public static final int BOARD_WIDTH = 800;
-    public static final int BOARD_HEIGHT = 600;
-    public static final int NOTE_WIDTH = 100;
-    public static final int NOTE_HEIGHT = 100;
+    private static final double MIN_ZOOM = 0.1;
+    private static final double MAX_ZOOM = 4.0;
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int noteWidth;
+    private final int noteHeight;
+    private double zoom = 1.0;
 
     private static final Map<String, Color> COLOR_MAP = Map.ofEntries(
             Map.entry("yellow", new Color(255, 255, 0)),
@@ -24,31 +46,134 @@ public class BoardCanvas extends JPanel {
             Map.entry("white", new Color(255, 255, 255))
     );
 
+    // Paint resources, created once instead of on every repaint
+    private static final Color BACKGROUND = new Color(240, 240, 240);
+    private static final Color GRID_COLOR = new Color(200, 200, 200);
+    private static final Color PIN_GLOW = new Color(255, 100, 100, 100);
+    private static final Color PIN_SHADOW = new Color(0, 0, 0, 80);
+    private static final Color PIN_HEAD = new Color(255, 50, 50);
+    private static final Color PIN_HIGHLIGHT = new Color(255, 150, 150, 200);
+    private static final Color PIN_OUTLINE = new Color(139, 0, 0);
+    private static final Color PIN_NEEDLE = new Color(200, 0, 0);
+    private static final BasicStroke THIN = new BasicStroke(1);
+    private static final BasicStroke NEEDLE = new BasicStroke(1.5f);
+    private static final BasicStroke BORDER = new BasicStroke(2);
+    private static final Font MESSAGE_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font LABEL_FONT = new Font("Arial", Font.PLAIN, 8);
+
+    // Pin glyph extent around its anchor (pin + (50, 5)), in board units
+    private static final int PIN_GLOW_RADIUS = 9;
+    private static final int PIN_RADIUS = 5;
+
+    // Below this zoom the 8pt ID labels are unreadable and are skipped
+    private static final double MIN_LABEL_ZOOM = 0.5;
+
+    // Upper bound on pixels held by cached note sprites (4 bytes each)
+    private static final long SPRITE_CACHE_PIXELS = 8L * 1024 * 1024;
+
     private List<Note> notes = new ArrayList<>();
-    private List<int[]> pins = new ArrayList<>();
+    private List<int[]> pins = new ArrayList<>(); // one per pinned note
+
+    // Note sprites rendered at the current zoom, keyed by color and shown
+    // text, least recently used first; cleared when the zoom changes
+    private final LinkedHashMap<String, BufferedImage> sprites = new LinkedHashMap<>(64, 0.75f, true);
+    private int spriteCacheSize;
+    private BufferedImage pinSprite;
 
     public static class Note {
+        public long id;
         public int x, y;
         public String color;
         public String message;
 
-        public Note(int x, int y, String color, String message) {
+        // Derived once per note rather than once per repaint
+        private String spriteKey;
+        private String label;
+
+        public Note(long id, int x, int y, String color, String message) {
+            this.id = id;
             this.x = x;
             this.y = y;
             this.color = color;
             this.message = message;
         }
+
+        String displayText() {
+            return message.length() > 15 ? message.substring(0, 12) + "..." : message;
+        }
+
+        String spriteKey() {
+            if (spriteKey == null) {
+                spriteKey = color.toLowerCase() + "\n" + displayText();
+            }
+            return spriteKey;
+        }
+
+        String label() {
+            if (label == null) {
+                label = "#" + id + " (" + x + "," + y + ")";
+            }
+            return label;
+        }
     }
 
-    public BoardCanvas() {
-        setPreferredSize(new Dimension(BOARD_WIDTH, BOARD_HEIGHT));
-        setBackground(new Color(240, 240, 240));
+    public BoardCanvas(int boardWidth, int boardHeight, int noteWidth, int noteHeight) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.noteWidth = noteWidth;
+        this.noteHeight = noteHeight;
+        setBackground(BACKGROUND);
         setBorder(BorderFactory.createLineBorder(Color.BLACK, 2));
+        addMouseWheelListener(this::handleMouseWheel);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension((int) Math.ceil(boardWidth * zoom), (int) Math.ceil(boardHeight * zoom));
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public void setZoom(double zoom) {
+        this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        // Sprites are rendered at a fixed scale; re-render lazily
+        sprites.clear();
+        spriteCacheSize = 0;
+        pinSprite = null;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Board region currently visible in the viewport, in board coordinates.
+     * Falls back to the whole board before the component is laid out.
+     */
+    public Rectangle getVisibleBoardRegion() {
+        Rectangle view = getVisibleRect();
+        if (view.isEmpty()) {
+            return new Rectangle(0, 0, boardWidth, boardHeight);
+        }
+        int x = (int) Math.floor(view.x / zoom);
+        int y = (int) Math.floor(view.y / zoom);
+        int w = (int) Math.ceil(view.width / zoom) + 1;
+        int h = (int) Math.ceil(view.height / zoom) + 1;
+        return new Rectangle(x, y, w, h).intersection(new Rectangle(0, 0, boardWidth, boardHeight));
+    }
+
+    // Ctrl + wheel zooms; a plain wheel scrolls the enclosing scroll pane
+    private void handleMouseWheel(MouseWheelEvent e) {
+        if ((e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0) {
+            setZoom(zoom * Math.pow(1.1, -e.getPreciseWheelRotation()));
+        } else if (getParent() != null) {
+            getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+        }
     }
 
     public void updateBoardState(List<Note> notes, List<int[]> pins) {
         this.notes = new ArrayList<>(notes);
-        this.pins = new ArrayList<>(pins);
+        this.pins = deduplicatePins(this.notes, pins);
         repaint();
     }
 
@@ -61,138 +186,196 @@ public class BoardCanvas extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
+        Graphics2D g2d = (Graphics2D) g.create();
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.scale(zoom, zoom);
+
+        // Repainted area in board coordinates; anything outside is skipped
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, boardWidth, boardHeight);
+        }
+
+        drawGrid(g2d, clip);
 
-        drawGrid(g2d);
+        // Sprites are already at device scale, so draw them unscaled
+        Graphics2D device = (Graphics2D) g.create();
+        boolean labels = zoom >= MIN_LABEL_ZOOM;
+        g2d.setFont(LABEL_FONT);
+        g2d.setColor(Color.BLACK);
         for (Note note : notes) {
-            drawNote(g2d, note);
+            // The border stroke reaches one unit outside the note
+            if (note.x - 1 < clip.x + clip.width && clip.x < note.x + noteWidth + 1
+                    && note.y - 1 < clip.y + clip.height && clip.y < note.y + noteHeight + 1) {
+                device.drawImage(noteSprite(note), (int) Math.floor((note.x - 1) * zoom),
+                        (int) Math.floor((note.y - 1) * zoom), null);
+                if (labels) {
+                    g2d.drawString(note.label(), note.x + 5, note.y + noteHeight - 5);
+                }
+            }
         }
 
-        List<int[]> deduplicatedPins = getDeduplicatedPins();
-        for (int[] pin : deduplicatedPins) {
-            drawPin(g2d, pin[0], pin[1]);
+        BufferedImage pin = pinSprite();
+        for (int[] p : pins) {
+            int cx = p[0] + 50;
+            int cy = p[1] + 5;
+            if (cx - PIN_GLOW_RADIUS < clip.x + clip.width && clip.x < cx + PIN_GLOW_RADIUS
+                    && cy - PIN_GLOW_RADIUS < clip.y + clip.height && clip.y < cy + PIN_RADIUS + 6) {
+                device.drawImage(pin, (int) Math.floor((cx - PIN_GLOW_RADIUS) * zoom),
+                        (int) Math.floor((cy - PIN_GLOW_RADIUS) * zoom), null);
+            }
         }
+        device.dispose();
 
         g2d.setColor(Color.BLACK);
-        g2d.setStroke(new BasicStroke(2));
-        g2d.drawRect(0, 0, BOARD_WIDTH - 1, BOARD_HEIGHT - 1);
+        g2d.setStroke(BORDER);
+        g2d.drawRect(0, 0, boardWidth - 1, boardHeight - 1);
+        g2d.dispose();
     }
 
-    private void drawGrid(Graphics2D g2d) {
-        g2d.setColor(new Color(200, 200, 200));
-        g2d.setStroke(new BasicStroke(1));
+    private void drawGrid(Graphics2D g2d, Rectangle clip) {
+        g2d.setColor(GRID_COLOR);
+        g2d.setStroke(THIN);
 
-        for (int x = 0; x <= BOARD_WIDTH; x += 50) {
-            g2d.drawLine(x, 0, x, BOARD_HEIGHT);
+        // Only the grid lines inside the repainted area
+        int left = Math.max(0, clip.x - clip.x % 50);
+        int top = Math.max(0, clip.y - clip.y % 50);
+        int right = Math.min(boardWidth, clip.x + clip.width);
+        int bottom = Math.min(boardHeight, clip.y + clip.height);
+
+        for (int x = left; x <= right; x += 50) {
+            g2d.drawLine(x, top, x, bottom);
         }
 
-        for (int y = 0; y <= BOARD_HEIGHT; y += 50) {
-            g2d.drawLine(0, y, BOARD_WIDTH, y);
+        for (int y = top; y <= bottom; y += 50) {
+            g2d.drawLine(left, y, right, y);
         }
     }
 
-    private List<int[]> getDeduplicatedPins() {
-        List<int[]> deduplicatedPins = new ArrayList<>();
-        List<Note> pinnedNotes = new ArrayList<>();
-
-        for (int[] pin : pins) {
-            int pinX = pin[0];
-            int pinY = pin[1];
-            
-            Note pinNoteRef = null;
-            for (Note note : notes) {
-                if (note.x == pinX && note.y == pinY) {
-                    pinNoteRef = note;
-                    break;
+    /**
+     * Keep one pin per note: for each pin, the note it belongs to is the
+     * first note with its corner at the pin, else the first note containing
+     * it, and only the first pin of each note (by position) is kept.
+     * Linear in notes + pins: corners are looked up in a hash map and
+     * containment in a grid of note-sized cells, where a pin's cell holds
+     * every note that can contain it.
+     */
+    private List<int[]> deduplicatePins(List<Note> notes, List<int[]> pins) {
+        Map<Long, Integer> byCorner = new HashMap<>();
+        Map<Long, List<Integer>> byCell = new HashMap<>();
+        for (int i = 0; i < notes.size(); i++) {
+            Note note = notes.get(i);
+            byCorner.putIfAbsent(key(note.x, note.y), i);
+            for (int cy = note.y / noteHeight; cy <= (note.y + noteHeight - 1) / noteHeight; cy++) {
+                for (int cx = note.x / noteWidth; cx <= (note.x + noteWidth - 1) / noteWidth; cx++) {
+                    byCell.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(i);
                 }
             }
-            
-            boolean noteAlreadyPinned = false;
-            if (pinNoteRef != null) {
-                for (Note pinnedNote : pinnedNotes) {
-                    if (pinnedNote.x == pinNoteRef.x && pinnedNote.y == pinNoteRef.y) {
-                        noteAlreadyPinned = true;
-                        break;
-                    }
-                }
-            } else {
-                for (Note note : notes) {
-                    if (pinX >= note.x && pinX < note.x + NOTE_WIDTH &&
-                        pinY >= note.y && pinY < note.y + NOTE_HEIGHT) {
-                        pinNoteRef = note;
-                        for (Note pinnedNote : pinnedNotes) {
-                            if (pinnedNote.x == note.x && pinnedNote.y == note.y) {
-                                noteAlreadyPinned = true;
-                                break;
-                            }
+        }
+
+        List<int[]> result = new ArrayList<>();
+        Set<Long> pinnedNotes = new HashSet<>(); // by note position, as notes may repeat
+        for (int[] pin : pins) {
+            Integer owner = byCorner.get(key(pin[0], pin[1]));
+            if (owner == null) {
+                // Cell lists are in note order, so the first match is the first note
+                List<Integer> candidates = byCell.get(key(pin[0] / noteWidth, pin[1] / noteHeight));
+                if (candidates != null) {
+                    for (int i : candidates) {
+                        Note note = notes.get(i);
+                        if (pin[0] >= note.x && pin[0] < note.x + noteWidth
+                                && pin[1] >= note.y && pin[1] < note.y + noteHeight) {
+                            owner = i;
+                            break;
                         }
-                        break;
                     }
                 }
             }
-            
-            if (!noteAlreadyPinned && pinNoteRef != null) {
-                deduplicatedPins.add(pin);
-                pinnedNotes.add(pinNoteRef);
+            if (owner != null) {
+                Note note = notes.get(owner);
+                if (pinnedNotes.add(key(note.x, note.y))) {
+                    result.add(pin);
+                }
             }
         }
-        
-        return deduplicatedPins;
+        return result;
     }
 
-    private void drawNote(Graphics2D g2d, Note note) {
-        Color noteColor = COLOR_MAP.getOrDefault(note.color.toLowerCase(), Color.LIGHT_GRAY);
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
 
-        g2d.setColor(noteColor);
-        g2d.fillRect(note.x, note.y, NOTE_WIDTH, NOTE_HEIGHT);
+    /** The note's cached sprite, rendering it on a miss. */
+    private BufferedImage noteSprite(Note note) {
+        BufferedImage sprite = sprites.get(note.spriteKey());
+        if (sprite != null) {
+            return sprite;
+        }
 
-        g2d.setColor(Color.BLACK);
-        g2d.setStroke(new BasicStroke(2));
-        g2d.drawRect(note.x, note.y, NOTE_WIDTH, NOTE_HEIGHT);
+        sprite = newSprite(noteWidth + 2, noteHeight + 2);
+        Graphics2D g = sprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.scale(zoom, zoom);
+        g.translate(1, 1);
+        g.setColor(COLOR_MAP.getOrDefault(note.color.toLowerCase(), Color.LIGHT_GRAY));
+        g.fillRect(0, 0, noteWidth, noteHeight);
+        g.setColor(Color.BLACK);
+        g.setStroke(BORDER);
+        g.drawRect(0, 0, noteWidth, noteHeight);
+        g.setFont(MESSAGE_FONT);
+        g.drawString(note.displayText(), 5, noteHeight / 2);
+        g.dispose();
 
-        g2d.setColor(Color.BLACK);
-        g2d.setFont(new Font("Arial", Font.PLAIN, 10));
-
-        String text = note.message;
-        if (text.length() > 15) {
-            text = text.substring(0, 12) + "...";
-        }
-
-        int textX = note.x + 5;
-        int textY = note.y + NOTE_HEIGHT / 2;
-        g2d.drawString(text, textX, textY);
-
-        g2d.setFont(new Font("Arial", Font.PLAIN, 8));
-        String coords = "(" + note.x + "," + note.y + ")";
-        g2d.drawString(coords, note.x + 5, note.y + NOTE_HEIGHT - 5);
-    }
-
-    private void drawPin(Graphics2D g2d, int x, int y) {
-        int pinX = x + 50;
-        int pinY = y + 5;
-        
-        int pinRadius = 5;
-        int glowRadius = 9;
-        
-        g2d.setColor(new Color(255, 100, 100, 100));
-        g2d.fillOval(pinX - glowRadius, pinY - glowRadius, glowRadius * 2, glowRadius * 2);
-        
-        g2d.setColor(new Color(0, 0, 0, 80));
-        g2d.fillOval(pinX - pinRadius + 1, pinY - pinRadius + 1, pinRadius * 2, pinRadius * 2);
-        
-        g2d.setColor(new Color(255, 50, 50));
-        g2d.fillOval(pinX - pinRadius, pinY - pinRadius, pinRadius * 2, pinRadius * 2);
-        
-        g2d.setColor(new Color(255, 150, 150, 200));
-        g2d.fillOval(pinX - pinRadius + 1, pinY - pinRadius + 1, 2, 2);
-        
-        g2d.setColor(new Color(139, 0, 0));
-        g2d.setStroke(new BasicStroke(1));
-        g2d.drawOval(pinX - pinRadius, pinY - pinRadius, pinRadius * 2, pinRadius * 2);
-        
-        g2d.setColor(new Color(200, 0, 0));
-        g2d.setStroke(new BasicStroke(1.5f));
-        g2d.drawLine(pinX, pinY + pinRadius, pinX, pinY + pinRadius + 5);
+        // Evict least recently used sprites to stay within the pixel budget
+        int pixels = sprite.getWidth() * sprite.getHeight();
+        long capacity = Math.max(16, SPRITE_CACHE_PIXELS / pixels);
+        while (spriteCacheSize >= capacity) {
+            sprites.remove(sprites.keySet().iterator().next());
+            spriteCacheSize--;
+        }
+        sprites.put(note.spriteKey(), sprite);
+        spriteCacheSize++;
+        return sprite;
+    }
+
+    private BufferedImage pinSprite() {
+        if (pinSprite != null) {
+            return pinSprite;
+        }
+        int r = PIN_RADIUS;
+        int glow = PIN_GLOW_RADIUS;
+        pinSprite = newSprite(2 * glow + 1, 2 * glow + 2); // needle ends below the glow
+        Graphics2D g = pinSprite.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.scale(zoom, zoom);
+        g.translate(glow, glow); // origin at the pin's anchor
+
+        g.setColor(PIN_GLOW);
+        g.fillOval(-glow, -glow, glow * 2, glow * 2);
+
+        g.setColor(PIN_SHADOW);
+        g.fillOval(-r + 1, -r + 1, r * 2, r * 2);
+
+        g.setColor(PIN_HEAD);
+        g.fillOval(-r, -r, r * 2, r * 2);
+
+        g.setColor(PIN_HIGHLIGHT);
+        g.fillOval(-r + 1, -r + 1, 2, 2);
+
+        g.setColor(PIN_OUTLINE);
+        g.setStroke(THIN);
+        g.drawOval(-r, -r, r * 2, r * 2);
+
+        g.setColor(PIN_NEEDLE);
+        g.setStroke(NEEDLE);
+        g.drawLine(0, r, 0, r + 5);
+        g.dispose();
+        return pinSprite;
+    }
+
+    /** Transparent image covering w x h board units at the current zoom. */
+    private BufferedImage newSprite(int w, int h) {
+        return new BufferedImage(Math.max(1, (int) Math.ceil(w * zoom)), Math.max(1, (int) Math.ceil(h * zoom)),
+                BufferedImage.TYPE_INT_ARGB);
     }
 }
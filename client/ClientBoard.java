@@ -1,22 +1,48 @@
+package client;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class ClientBoard extends JFrame {
     private ClientConnection connection;
     private JTextArea outputArea;
-    private JTextField postX, postY, postMsg, getX, getY, getRef, pinX, pinY;
+    private JTextField postX, postY, postMsg, getX, getY, getRef, pinX, pinY, noteId, editMsg;
     private JComboBox<String> postColor, getColour;
     private BoardCanvas boardCanvas;
-    private static final String[] COLORS = { "yellow", "blue", "green", "pink", "orange", "purple", "white" };
+    private final String[] colors;
+
+    // Refresh scheduling (EDT only). Requests from scrolling, zooming and
+    // mutations are coalesced by refreshTimer: a burst becomes one fetch,
+    // issued once the burst pauses or at most REFRESH_MAX_DELAY_MS after
+    // it began. Only one refresh is in flight at a time; requests made
+    // meanwhile collapse into a single follow-up.
+    private static final int REFRESH_DEBOUNCE_MS = 150;
+    private static final long REFRESH_MAX_DELAY_MS = 500;
+    private final Timer refreshTimer;
+    private long refreshRequestedAt;
+    private boolean refreshInFlight;
+    private boolean refreshPending;
+
+    // Sequence numbers of board fetches (refreshes and GETs), so a result
+    // older than the one on screen is never drawn over it
+    private long fetchSequence;
+    private long appliedSequence;
 
     // Board state management
     private List<BoardCanvas.Note> boardNotes = new ArrayList<>();
     private List<int[]> boardPins = new ArrayList<>();
 
+    // Board content hash and region of the last applied refresh (EDT only);
+    // a reconnect refetches only if either has changed
+    private String syncedVersion;
+    private String syncedRegion;
+
     public ClientBoard(ClientConnection connection) {
         this.connection = connection;
+        this.colors = connection.getColors();
         setTitle("Bulletin Board Client - Visual Interface");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1450, 700);
@@ -39,7 +65,7 @@ public class ClientBoard extends JFrame {
         post.add(new JLabel("Y:"));
         post.add(postY = new JTextField("0", 3));
         post.add(new JLabel("Color:"));
-        post.add(postColor = new JComboBox<>(COLORS));
+        post.add(postColor = new JComboBox<>(colors));
         post.add(new JLabel("Msg:"));
         post.add(postMsg = new JTextField("Hello", 10));
         JButton postBtn = new JButton("POST");
@@ -51,7 +77,7 @@ public class ClientBoard extends JFrame {
         JPanel get = new JPanel(new FlowLayout(FlowLayout.LEFT));
         get.add(new JLabel("GET:"));
         get.add(new JLabel("Colour:"));
-        get.add(getColour = new JComboBox<>(COLORS));
+        get.add(getColour = new JComboBox<>(colors));
         getColour.insertItemAt("", 0);
         getColour.setSelectedIndex(0);
         get.add(new JLabel("Contains (X,Y):"));
@@ -82,6 +108,20 @@ public class ClientBoard extends JFrame {
         pin.add(unpinBtn);
         commands.add(pin);
 
+        // DELETE/EDIT panel: targets one note by the ID shown on the board
+        JPanel note = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        note.add(new JLabel("NOTE ID:"));
+        note.add(noteId = new JTextField(5));
+        JButton deleteBtn = new JButton("DELETE");
+        deleteBtn.addActionListener(e -> executeCommand("DELETE " + noteId.getText().trim()));
+        note.add(deleteBtn);
+        note.add(new JLabel("Msg:"));
+        note.add(editMsg = new JTextField(10));
+        JButton editBtn = new JButton("EDIT");
+        editBtn.addActionListener(e -> executeCommand("EDIT " + noteId.getText().trim() + " " + editMsg.getText()));
+        note.add(editBtn);
+        commands.add(note);
+
         // Action buttons
         JPanel actions = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton shakeBtn = new JButton("SHAKE");
@@ -111,18 +151,27 @@ public class ClientBoard extends JFrame {
 
         // Right panel: Visual Board
         JPanel rightPanel = new JPanel(new BorderLayout());
-        rightPanel.setBorder(BorderFactory.createTitledBorder("Board (800x600)"));
-        boardCanvas = new BoardCanvas();
+        rightPanel.setBorder(BorderFactory.createTitledBorder("Board (" + connection.getBoardWidth() + "x"
+                + connection.getBoardHeight() + ") - Ctrl+wheel to zoom"));
+        boardCanvas = new BoardCanvas(connection.getBoardWidth(), connection.getBoardHeight(),
+                connection.getNoteWidth(), connection.getNoteHeight());
         JScrollPane boardScroll = new JScrollPane(boardCanvas);
         rightPanel.add(boardScroll, BorderLayout.CENTER);
 
+        // Refetch the visible region once scrolling or zooming settles
+        refreshTimer = new Timer(REFRESH_DEBOUNCE_MS, e -> runRefresh());
+        refreshTimer.setRepeats(false);
+        boardScroll.getViewport().addChangeListener(e -> requestRefresh());
+
         main.add(leftPanel, BorderLayout.WEST);
         main.add(rightPanel, BorderLayout.CENTER);
         setContentPane(main);
         setVisible(true);
 
         // Initial board fetch
-        SwingUtilities.invokeLater(() -> refreshBoardState());
+        SwingUtilities.invokeLater(() -> runRefresh());
+
+        connection.setReconnectListener(this::resyncAfterReconnect);
     }
 
     private void executePost() {
@@ -143,73 +192,157 @@ public class ClientBoard extends JFrame {
         executeCommand(cmd.toString());
     }
 
+    /**
+     * Send a command and log its response. Never blocks the event thread:
+     * responses arrive on the connection's reader thread and are handed
+     * back to the EDT with invokeLater.
+     */
     private void executeCommand(String command) {
-        new SwingWorker<String, Void>() {
-            protected String doInBackground() {
-                return connection.sendCommand(command);
-            }
-
-            protected void done() {
-                try {
-                    String response = get();
-                    outputArea.append("\n> " + command + "\n");
-                    for (String line : response.split("\n")) {
-                        if (line.startsWith("OK"))
-                            outputArea.append("  ✓ " + line + "\n");
-                        else if (line.startsWith("ERROR"))
-                            outputArea.append("  ✗ " + line + "\n");
-                        else
-                            outputArea.append("    " + line + "\n");
-                    }
-                    outputArea.setCaretPosition(outputArea.getDocument().getLength());
-
-                    // Parse GET response and update board immediately
-                    if (command.startsWith("GET") && !command.equals("GET PINS") && response.startsWith("OK")) {
-                        // For regular GET, fetch pins immediately after to get complete state
-                        String pinsResponse = connection.sendCommand("GET PINS");
-                        parseAndMergeBoard(response, pinsResponse);
-                    } else if (command.equals("GET PINS") && response.startsWith("OK")) {
-                        // For GET PINS, merge with existing notes
-                        parseAndMergePins(response);
-                    } else if (response.startsWith("OK") &&
-                            (command.startsWith("POST") || command.startsWith("PIN") ||
-                                    command.startsWith("UNPIN") || command.equals("SHAKE") ||
-                                    command.equals("CLEAR"))) {
-                        // Auto-refresh board after state-changing commands
-                        SwingUtilities.invokeLater(() -> {
-                            refreshBoardState();
-                        });
+        CompletableFuture<String> response = connection.sendAsync(command);
+
+        if (command.startsWith("GET") && !command.startsWith("GET PINS")) {
+            // Pipeline GET PINS right behind the GET so the board is
+            // redrawn from both without a second round trip
+            CompletableFuture<String> pins = connection.sendAsync("GET PINS");
+            long sequence = ++fetchSequence;
+            response.thenCombine(pins, (notesResponse, pinsResponse) -> {
+                SwingUtilities.invokeLater(() -> {
+                    logResponse(command, notesResponse);
+                    if (notesResponse.startsWith("OK") && sequence > appliedSequence) {
+                        appliedSequence = sequence;
+                        parseAndMergeBoard(notesResponse, pinsResponse);
                     }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    outputArea.append("ERROR: " + ex.getMessage() + "\n");
-                }
+                });
+                return null;
+            });
+            return;
+        }
+
+        response.thenAccept(r -> SwingUtilities.invokeLater(() -> {
+            logResponse(command, r);
+            if (command.equals("GET PINS") && r.startsWith("OK")) {
+                // For GET PINS, merge with existing notes
+                parseAndMergePins(r);
+            } else if (r.startsWith("OK") &&
+                    (command.startsWith("POST") || command.startsWith("DELETE") ||
+                            command.startsWith("EDIT") || command.startsWith("PIN") ||
+                            command.startsWith("UNPIN") || command.equals("SHAKE") ||
+                            command.equals("CLEAR"))) {
+                // Auto-refresh board after state-changing commands
+                requestRefresh();
             }
-        }.execute();
+        }));
+    }
+
+    private void logResponse(String command, String response) {
+        outputArea.append("\n> " + command + "\n");
+        for (String line : response.split("\n")) {
+            if (line.startsWith("OK"))
+                outputArea.append("  ✓ " + line + "\n");
+            else if (line.startsWith("ERROR"))
+                outputArea.append("  ✗ " + line + "\n");
+            else
+                outputArea.append("    " + line + "\n");
+        }
+        outputArea.setCaretPosition(outputArea.getDocument().getLength());
+    }
+
+    /**
+     * Ask for the visible board to be refetched soon. Cheap to call any
+     * number of times: calls within the debounce window share one fetch.
+     */
+    private void requestRefresh() {
+        long now = System.currentTimeMillis();
+        if (!refreshTimer.isRunning()) {
+            refreshRequestedAt = now;
+            refreshTimer.restart();
+        } else if (now - refreshRequestedAt < REFRESH_MAX_DELAY_MS) {
+            // Keep postponing while the burst goes on, but not forever
+            refreshTimer.restart();
+        }
+    }
+
+    // Start a refresh now, or once the one in flight has finished
+    private void runRefresh() {
+        if (refreshInFlight) {
+            refreshPending = true;
+        } else {
+            refreshBoardState();
+        }
+    }
+
+    // Called on the EDT when a refresh completes; starts the follow-up
+    private void refreshFinished() {
+        refreshInFlight = false;
+        if (refreshPending) {
+            refreshPending = false;
+            refreshBoardState();
+        }
     }
 
     /**
      * Refresh board state by executing GET and GET PINS commands together
-     * Fetches both notes and pins, then merges them into board state
+     * Fetches notes and pins in the visible region only, so transfer cost
+     * follows the viewport rather than the board size, then merges them
+     * into board state. Both requests are pipelined on the connection.
+     * Callers go through runRefresh, so at most one refresh is in flight.
      */
     private void refreshBoardState() {
-        new SwingWorker<Void, Void>() {
-            protected Void doInBackground() {
-                try {
-                    // Fetch both notes and pins
-                    String notesResponse = connection.sendCommand("GET");
-                    String pinsResponse = connection.sendCommand("GET PINS");
-
-                    // Parse both responses and merge on EDT
-                    SwingUtilities.invokeLater(() -> {
-                        parseAndMergeBoard(notesResponse, pinsResponse);
-                    });
-                } catch (Exception ex) {
-                    // Silently fail on auto-refresh
+        Rectangle view = boardCanvas.getVisibleBoardRegion();
+        if (view.isEmpty()) {
+            return;
+        }
+        refreshInFlight = true;
+        long sequence = ++fetchSequence;
+        String region = "region=" + view.x + " " + view.y + " " + view.width + " " + view.height;
+        // The version is read first, so it is never newer than the data and
+        // a later comparison can only refetch too often, never too rarely
+        CompletableFuture<String> version = connection.sendAsync("GET VERSION");
+        CompletableFuture<String> notes = connection.sendAsync("GET " + region);
+        CompletableFuture<String> pins = connection.sendAsync("GET PINS " + region);
+        // Merge on the EDT; a failed refresh just leaves the board as it was
+        notes.thenCombine(pins, (notesResponse, pinsResponse) -> {
+            String versionResponse = version.join(); // Answered before the GET
+            SwingUtilities.invokeLater(() -> {
+                // Skip results already superseded: a newer fetch has been
+                // drawn, or the board changed again while this one ran and
+                // the follow-up refresh is about to replace it
+                if (sequence > appliedSequence && !refreshPending) {
+                    appliedSequence = sequence;
+                    parseAndMergeBoard(notesResponse, pinsResponse);
+                    boolean complete = notesResponse.startsWith("OK") && pinsResponse.startsWith("OK");
+                    syncedVersion = complete ? contentHash(versionResponse) : null;
+                    syncedRegion = complete ? region : null;
                 }
-                return null;
+                refreshFinished();
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Called after the connection comes back. Asks only for the board's
+     * content hash and refetches the viewport if the board or the view has
+     * changed since the last refresh, so a server restart with an
+     * unchanged board costs each client one small request.
+     */
+    private void resyncAfterReconnect() {
+        connection.sendAsync("GET VERSION").thenAccept(r -> SwingUtilities.invokeLater(() -> {
+            String hash = contentHash(r);
+            Rectangle view = boardCanvas.getVisibleBoardRegion();
+            String region = "region=" + view.x + " " + view.y + " " + view.width + " " + view.height;
+            boolean unchanged = hash != null && hash.equals(syncedVersion) && region.equals(syncedRegion);
+            outputArea.append("\n  Reconnected" + (unchanged ? ", board unchanged\n" : ", refreshing board\n"));
+            if (!unchanged) {
+                runRefresh();
             }
-        }.execute();
+        }));
+    }
+
+    // Content hash from "OK VERSION <version> <hash>", or null
+    private static String contentHash(String response) {
+        String[] parts = response.split(" ");
+        return parts.length == 4 && response.startsWith("OK VERSION ") ? parts[3] : null;
     }
 
     /**
@@ -270,8 +403,8 @@ public class ClientBoard extends JFrame {
     /**
      * Parse notes from GET response
      * Format: OK <count>
-     * NOTE x y color message
-     * NOTE x y color message
+     * NOTE id x y color message
+     * NOTE id x y color message
      */
     private List<BoardCanvas.Note> parseNotes(String response) {
         List<BoardCanvas.Note> notes = new ArrayList<>();
@@ -295,15 +428,15 @@ public class ClientBoard extends JFrame {
                 if (line.isEmpty())
                     continue;
 
-                String[] parts = line.split(" ");
-                if (parts.length >= 4 && parts[0].equals("NOTE")) {
+                String[] parts = line.split(" ", 6);
+                if (parts.length >= 5 && parts[0].equals("NOTE")) {
                     try {
-                        int x = Integer.parseInt(parts[1]);
-                        int y = Integer.parseInt(parts[2]);
-                        String color = parts[3];
-                        int msgStartIdx = line.indexOf(color) + color.length();
-                        String message = msgStartIdx < line.length() ? line.substring(msgStartIdx).trim() : "";
-                        notes.add(new BoardCanvas.Note(x, y, color, message));
+                        long id = Long.parseLong(parts[1]);
+                        int x = Integer.parseInt(parts[2]);
+                        int y = Integer.parseInt(parts[3]);
+                        String color = parts[4];
+                        String message = parts.length > 5 ? parts[5] : "";
+                        notes.add(new BoardCanvas.Note(id, x, y, color, message));
                     } catch (NumberFormatException e) {
                         // Skip malformed line
                     }
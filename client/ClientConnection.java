@@ -1,49 +1,137 @@
+package client;
+
 import java.io.*;
 import java.net.*;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles TCP connection to the bulletin board server.
  * Sends commands and parses responses per protocol spec.
+ *
+ * Commands are pipelined: sendAsync writes the command and returns at once,
+ * so several commands can be in flight on the one socket. The server
+ * answers each connection's commands in order (RFC Section 5.2), so a
+ * dedicated reader thread completes pending requests strictly FIFO.
+ * Responses, including failures, are the protocol strings: a request that
+ * gets no answer in time completes with "ERROR TIMEOUT", and one cut off by
+ * a lost connection with "ERROR CONNECTION_CLOSED".
+ *
+ * A lost connection is re-established in the background with exponential
+ * backoff and full jitter (each wait is random between 0 and the current
+ * cap), so clients dropped together by a server restart come back spread
+ * out instead of all at once. Commands sent while disconnected fail fast
+ * with "ERROR NOT_CONNECTED". The reconnect listener runs after every
+ * successful reconnect so the GUI can resynchronize.
  */
 public class ClientConnection {
-    private static final String HOST = "localhost";
-    private static final int PORT = 4200;
+    private static final String DEFAULT_HOST = "localhost";
+    private static final int DEFAULT_PORT = 4200;
+
+    // Send PING after this long without traffic, so the server's idle
+    // timeout only reaps clients that are really gone
+    private static final long HEARTBEAT_MILLIS = 60000;
+
+    // Default time allowed for one response
+    private static final long REQUEST_TIMEOUT_MILLIS = 10000;
+
+    // How long disconnect() waits for the server to acknowledge
+    private static final long DISCONNECT_WAIT_MILLIS = 1000;
+
+    // Reconnect backoff: the cap doubles per failed attempt up to the max
+    private static final long RECONNECT_BASE_MILLIS = 500;
+    private static final long RECONNECT_MAX_MILLIS = 30000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
 
+    // Current socket and streams; replaced on reconnect under writeLock
     private Socket socket;
     private BufferedReader in;
     private PrintWriter out;
-    private boolean connected;
+    private volatile boolean connected;
+    private volatile boolean closed; // disconnect() was called; stay down
+    private volatile long lastSent;
+    private final AtomicBoolean reconnecting = new AtomicBoolean();
+    private volatile Runnable reconnectListener;
+
+    // Requests written to the current socket but not yet answered, oldest
+    // first. Appended under writeLock together with the write, so queue
+    // order is wire order. Each socket gets its own queue, so a reader still
+    // draining a lost socket can never answer the new socket's requests.
+    private Queue<CompletableFuture<String>> pending = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object();
+
+    // Board configuration announced by the server (RFC Section 4.2);
+    // defaults apply until the handshake has been read
+    private int boardWidth = 800;
+    private int boardHeight = 600;
+    private int noteWidth = 100;
+    private int noteHeight = 100;
+    private String[] colors = { "yellow", "blue", "green", "pink", "orange", "purple", "white" };
+
+    private final String host;
+    private final int port;
 
     public ClientConnection() {
+        this(DEFAULT_HOST, DEFAULT_PORT);
+    }
+
+    ClientConnection(String host, int port) {
+        this.host = host;
+        this.port = port;
         this.connected = false;
     }
 
-    // Establish connection to server
+    /**
+     * Establish connection to server. If the server is not reachable this
+     * returns false and keeps retrying in the background.
+     */
     public boolean connect() {
+        startHeartbeat();
+        if (open()) {
+            startReader();
+            return true;
+        }
+        scheduleReconnect();
+        return false;
+    }
+
+    /**
+     * Run an action after each automatic reconnect. It runs on the
+     * reconnect thread, so GUI code must hand off to the event thread.
+     */
+    public void setReconnectListener(Runnable listener) {
+        this.reconnectListener = listener;
+    }
+
+    // Open a socket and read the handshake; the caller starts the reader
+    private boolean open() {
+        Socket s = new Socket();
         try {
-            socket = new Socket(HOST, PORT);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(socket.getOutputStream(), true);
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            PrintWriter writer = new PrintWriter(s.getOutputStream(), true);
 
             // Read initial board configuration from server
-            String config = in.readLine();
-            if (config != null && config.startsWith("BOARD_CONFIG")) {
+            String config = reader.readLine();
+            if (config == null) {
+                throw new IOException("Server closed the connection during handshake");
+            }
+            if (config.startsWith("BOARD_CONFIG")) {
                 // Parse and validate board configuration per RFC
                 // Format: BOARD_CONFIG width height noteWidth noteHeight colors...
                 String[] parts = config.split(" ");
                 if (parts.length >= 5) {
                     try {
-                        int serverWidth = Integer.parseInt(parts[1]);
-                        int serverHeight = Integer.parseInt(parts[2]);
-                        int serverNoteWidth = Integer.parseInt(parts[3]);
-                        int serverNoteHeight = Integer.parseInt(parts[4]);
-
-                        // Validate dimensions match expected values
-                        if (serverWidth != 800 || serverHeight != 600 ||
-                                serverNoteWidth != 100 || serverNoteHeight != 100) {
-                            System.err.println("Warning: Server board dimensions differ from client expectations");
-                            System.err.println("Server: " + serverWidth + "x" + serverHeight + ", notes: " +
-                                    serverNoteWidth + "x" + serverNoteHeight);
+                        boardWidth = Integer.parseInt(parts[1]);
+                        boardHeight = Integer.parseInt(parts[2]);
+                        noteWidth = Integer.parseInt(parts[3]);
+                        noteHeight = Integer.parseInt(parts[4]);
+                        if (parts.length >= 6) {
+                            colors = parts[5].split(",");
                         }
                     } catch (NumberFormatException e) {
                         System.err.println("Warning: Invalid BOARD_CONFIG format from server");
@@ -51,74 +139,250 @@ public class ClientConnection {
                 }
             }
 
-            connected = true;
+            synchronized (writeLock) {
+                socket = s;
+                in = reader;
+                out = writer;
+                pending = new ConcurrentLinkedQueue<>();
+                connected = true;
+            }
+            lastSent = System.currentTimeMillis();
             return true;
         } catch (IOException e) {
-            connected = false;
+            try {
+                s.close();
+            } catch (IOException ignored) {
+                // Nothing to clean up
+            }
             return false;
         }
     }
 
-    // Send command and get response
+    /**
+     * Send a command and wait for its response. Safe to call from any
+     * thread except the Swing event thread, which should use sendAsync.
+     */
     public String sendCommand(String command) {
-        if (!connected) {
-            return "ERROR NOT_CONNECTED";
-        }
-        try {
+        return sendAsync(command).join();
+    }
+
+    /**
+     * Send a command without waiting; the default timeout applies.
+     *
+     * @return Future completed with the full response (data lines joined
+     *         by newlines), or with an ERROR string; never exceptionally
+     */
+    public CompletableFuture<String> sendAsync(String command) {
+        return sendAsync(command, REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a command without waiting.
+     *
+     * @param timeout How long to wait for the response before completing
+     *                with "ERROR TIMEOUT"
+     */
+    public CompletableFuture<String> sendAsync(String command, long timeout, TimeUnit unit) {
+        // A late response still consumes this entry, so FIFO matching holds
+        CompletableFuture<String> response = new CompletableFuture<>();
+        Socket target;
+        boolean failed;
+        synchronized (writeLock) {
+            if (!connected) {
+                return CompletableFuture.completedFuture("ERROR NOT_CONNECTED");
+            }
+            pending.add(response);
             out.println(command);
+            failed = out.checkError();
+            target = socket;
+            lastSent = System.currentTimeMillis();
+        }
+        if (failed) {
+            connectionLost(target);
+        }
+        return response.completeOnTimeout("ERROR TIMEOUT No response to " + command, timeout, unit);
+    }
 
-            String response = in.readLine();
-            if (response == null) {
-                connected = false;
-                return "ERROR CONNECTION_CLOSED";
+    // Reader thread: match each response to the oldest pending request of
+    // the socket it reads
+    private void startReader() {
+        Socket s;
+        BufferedReader reader;
+        Queue<CompletableFuture<String>> requests;
+        synchronized (writeLock) {
+            s = socket;
+            reader = in;
+            requests = pending;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                String response;
+                while ((response = readResponse(reader)) != null) {
+                    CompletableFuture<String> request = requests.poll();
+                    if (request != null) {
+                        request.complete(response);
+                    }
+                }
+            } catch (IOException e) {
+                // Connection lost or closed by disconnect()
             }
+            connectionLost(s);
+        }, "connection-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-            // Handle multi-line responses (OK <count>)
-            if (response.startsWith("OK ")) {
-                String[] parts = response.split(" ", 2);
-                if (parts.length == 2) {
-                    try {
-                        int count = Integer.parseInt(parts[1]);
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(response);
-                        for (int i = 0; i < count; i++) {
-                            String line = in.readLine();
-                            if (line != null) {
-                                sb.append("\n").append(line);
-                            }
+    // Read one response, including the data lines of "OK <count>"
+    private static String readResponse(BufferedReader in) throws IOException {
+        String response = in.readLine();
+        if (response == null) {
+            return null;
+        }
+
+        // Handle multi-line responses (OK <count>)
+        if (response.startsWith("OK ")) {
+            String[] parts = response.split(" ", 2);
+            if (parts.length == 2) {
+                try {
+                    int count = Integer.parseInt(parts[1]);
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(response);
+                    for (int i = 0; i < count; i++) {
+                        String line = in.readLine();
+                        if (line == null) {
+                            return null;
                         }
-                        return sb.toString();
-                    } catch (NumberFormatException e) {
-                        // Not a count, just return response
+                        sb.append("\n").append(line);
                     }
+                    return sb.toString();
+                } catch (NumberFormatException e) {
+                    // Not a count, just return response
                 }
             }
-            return response;
-        } catch (IOException e) {
-            connected = false;
-            return "ERROR " + e.getMessage();
         }
+        return response;
     }
 
-    // Close connection gracefully
-    public void disconnect() {
-        try {
-            if (connected) {
-                out.println("DISCONNECT");
+    /**
+     * Handle the loss of one socket: fail its unanswered requests and start
+     * reconnecting. Ignored for a socket that has already been replaced, so
+     * a stale reader cannot disturb the new connection.
+     */
+    private void connectionLost(Socket lost) {
+        Queue<CompletableFuture<String>> requests;
+        synchronized (writeLock) {
+            if (lost != socket || !connected) {
+                return;
             }
-            if (in != null)
-                in.close();
-            if (out != null)
-                out.close();
-            if (socket != null)
-                socket.close();
+            connected = false;
+            requests = pending;
+        }
+        try {
+            lost.close();
         } catch (IOException e) {
             // Ignore close errors
         }
-        connected = false;
+        CompletableFuture<String> request;
+        while ((request = requests.poll()) != null) {
+            request.complete("ERROR CONNECTION_CLOSED");
+        }
+        scheduleReconnect();
+    }
+
+    // Reconnect in the background, at most one thread at a time
+    private void scheduleReconnect() {
+        if (closed || !reconnecting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            for (int attempt = 0; !closed; attempt++) {
+                long cap = Math.min(RECONNECT_MAX_MILLIS, RECONNECT_BASE_MILLIS << Math.min(attempt, 16));
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (!closed && open()) {
+                    // Clear the flag before the reader can report a new loss
+                    reconnecting.set(false);
+                    startReader();
+                    System.out.println("Reconnected to " + host + ":" + port + " after " + (attempt + 1)
+                            + " attempt(s)");
+                    Runnable listener = reconnectListener;
+                    if (listener != null) {
+                        listener.run();
+                    }
+                    return;
+                }
+            }
+            reconnecting.set(false);
+        }, "reconnect");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Keep the connection alive while the user is idle
+    private void startHeartbeat() {
+        Thread heartbeat = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(HEARTBEAT_MILLIS / 4);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (connected && System.currentTimeMillis() - lastSent >= HEARTBEAT_MILLIS) {
+                    sendAsync("PING");
+                }
+            }
+        }, "heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+    }
+
+    // Close connection gracefully; no reconnect afterwards
+    public void disconnect() {
+        closed = true;
+        if (connected) {
+            // Let earlier requests finish and the server acknowledge
+            sendAsync("DISCONNECT", DISCONNECT_WAIT_MILLIS, TimeUnit.MILLISECONDS).join();
+        }
+        Socket s;
+        synchronized (writeLock) {
+            s = socket;
+        }
+        if (s != null) {
+            // Closing the socket unblocks the reader, which then fails any
+            // requests still pending
+            connectionLost(s);
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Ignore close errors
+            }
+        }
     }
 
     public boolean isConnected() {
         return connected;
     }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+
+    public int getNoteWidth() {
+        return noteWidth;
+    }
+
+    public int getNoteHeight() {
+        return noteHeight;
+    }
+
+    public String[] getColors() {
+        return colors.clone();
+    }
 }
@@ -0,0 +1,165 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pipelining on one connection: responses are matched to requests in wire
+ * order, whichever thread sent them and however late they arrive.
+ */
+class ClientConnectionTest {
+    private ServerSocket listener;
+    private Socket server;
+    private PrintWriter toClient;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private ClientConnection connection;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = Executors.newCachedThreadPool();
+        listener = new ServerSocket(0);
+        Future<Socket> accepted = pool.submit(() -> {
+            Socket socket = listener.accept();
+            new PrintWriter(socket.getOutputStream(), true).println("BOARD_CONFIG 800 600 100 100 yellow,blue");
+            return socket;
+        });
+        connection = new ClientConnection("localhost", listener.getLocalPort());
+        assertTrue(connection.connect());
+        server = accepted.get(5, TimeUnit.SECONDS);
+        toClient = new PrintWriter(server.getOutputStream(), true);
+
+        BufferedReader fromClient = new BufferedReader(new InputStreamReader(server.getInputStream()));
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = fromClient.readLine()) != null) {
+                    received.add(line);
+                }
+            } catch (IOException e) {
+                // Socket closed by the test
+            }
+        }, "fake-server");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+        connection.disconnect();
+        listener.close();
+        pool.shutdownNow();
+    }
+
+    private String next() throws InterruptedException {
+        String command = received.poll(5, TimeUnit.SECONDS);
+        assertTrue(command != null, "no command reached the server");
+        return command;
+    }
+
+    @Test
+    void handshakeConfiguresTheBoard() {
+        assertEquals(800, connection.getBoardWidth());
+        assertEquals(2, connection.getColors().length);
+    }
+
+    @Test
+    void pipelinedResponsesMatchTheirRequests() throws Exception {
+        CompletableFuture<String> get = connection.sendAsync("GET");
+        CompletableFuture<String> ping = connection.sendAsync("PING");
+        CompletableFuture<String> post = connection.sendAsync("POST 0 0 yellow hi");
+        assertEquals("GET", next());
+        assertEquals("PING", next());
+        assertEquals("POST 0 0 yellow hi", next());
+
+        // All three answers in one burst, the first with data lines
+        toClient.print("OK 2\nNOTE 1 0 0 yellow a\nNOTE 2 9 9 blue b\nOK PONG\nOK NOTE_POSTED 3\n");
+        toClient.flush();
+        assertEquals("OK NOTE_POSTED 3", post.get(5, TimeUnit.SECONDS));
+        assertEquals("OK PONG", ping.get(5, TimeUnit.SECONDS));
+        assertEquals("OK 2\nNOTE 1 0 0 yellow a\nNOTE 2 9 9 blue b", get.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void concurrentSendersEachGetTheirOwnResponse() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<String>>> senders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int sender = t;
+            senders.add(pool.submit(() -> {
+                start.await();
+                List<CompletableFuture<String>> responses = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    responses.add(connection.sendAsync("ECHO " + sender + "-" + i));
+                }
+                List<String> mismatches = new ArrayList<>();
+                for (int i = 0; i < perThread; i++) {
+                    String response = responses.get(i).join();
+                    if (!response.equals("OK " + sender + "-" + i)) {
+                        mismatches.add(response);
+                    }
+                }
+                return mismatches;
+            }));
+        }
+        start.countDown();
+
+        // Answer in arrival order, which is the order the client wrote them
+        for (int n = 0; n < threads * perThread; n++) {
+            toClient.println("OK " + next().substring("ECHO ".length()));
+        }
+        for (Future<List<String>> sender : senders) {
+            assertEquals(List.of(), sender.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void lateResponseIsNotGivenToTheNextRequest() throws Exception {
+        CompletableFuture<String> slow = connection.sendAsync("GET", 50, TimeUnit.MILLISECONDS);
+        assertTrue(slow.get(5, TimeUnit.SECONDS).startsWith("ERROR TIMEOUT"));
+        CompletableFuture<String> ping = connection.sendAsync("PING");
+        assertEquals("GET", next());
+        assertEquals("PING", next());
+
+        toClient.print("OK 1\nNOTE 1 0 0 yellow late\nOK PONG\n");
+        toClient.flush();
+        assertEquals("OK PONG", ping.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lostConnectionFailsPendingRequests() throws Exception {
+        CompletableFuture<String> first = connection.sendAsync("PING");
+        CompletableFuture<String> second = connection.sendAsync("PING");
+        assertEquals("PING", next());
+        toClient.println("OK PONG");
+        assertEquals("OK PONG", first.get(5, TimeUnit.SECONDS));
+
+        server.close();
+        assertEquals("ERROR CONNECTION_CLOSED", second.get(5, TimeUnit.SECONDS));
+        assertEquals("ERROR NOT_CONNECTED", connection.sendAsync("PING").get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,97 @@
+package loadgen;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * CommandMix picks which command each generated request is.
+ *
+ * The mix is given as comma separated TYPE=weight pairs, for example
+ * "POST=40,GET_REGION=40,PIN=10,UNPIN=9,SHAKE=1". Weights are relative.
+ *
+ * Types:
+ * - POST: a note at a random position and color
+ * - GET: unfiltered GET (whole board)
+ * - GET_REGION: GET region= of a random 800x600 viewport
+ * - GET_CONTAINS: GET contains= at a random point
+ * - GET_COLOR: GET color= for a random color
+ * - PIN: a point inside a note this worker posted
+ * - UNPIN: a pin this worker placed
+ * - SHAKE, CLEAR: as in the protocol
+ */
+final class CommandMix {
+    static final String[] TYPES = { "POST", "GET", "GET_REGION", "GET_CONTAINS", "GET_COLOR", "PIN", "UNPIN",
+            "SHAKE", "CLEAR" };
+
+    private final String[] types;
+    private final int[] cumulative;
+    private final int total;
+
+    private CommandMix(Map<String, Integer> weights) {
+        this.types = weights.keySet().toArray(new String[0]);
+        this.cumulative = new int[types.length];
+        int sum = 0;
+        for (int i = 0; i < types.length; i++) {
+            sum += weights.get(types[i]);
+            cumulative[i] = sum;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Parse "TYPE=weight,..." into a mix.
+     *
+     * @throws IllegalArgumentException on unknown types or bad weights
+     */
+    static CommandMix parse(String spec) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String pair : spec.split(",")) {
+            String[] kv = pair.trim().split("=");
+            if (kv.length != 2 || !isType(kv[0].toUpperCase())) {
+                throw new IllegalArgumentException("Bad mix entry: " + pair);
+            }
+            int weight = Integer.parseInt(kv[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight: " + pair);
+            }
+            if (weight > 0) {
+                weights.put(kv[0].toUpperCase(), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no commands: " + spec);
+        }
+        return new CommandMix(weights);
+    }
+
+    /** Command types with a non-zero weight, in mix order. */
+    List<String> getTypes() {
+        List<String> list = new ArrayList<>();
+        for (String type : types) {
+            list.add(type);
+        }
+        return list;
+    }
+
+    String next(Random random) {
+        int r = random.nextInt(total);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    private static boolean isType(String type) {
+        for (String t : TYPES) {
+            if (t.equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
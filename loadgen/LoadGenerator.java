@@ -0,0 +1,222 @@
+package loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load generator speaking the BBS protocol.
+ *
+ * Opens many connections to a server and replays a configurable mix of
+ * commands, then reports throughput and latency percentiles per command.
+ *
+ * Usage:
+ * java -cp ... loadgen.LoadGenerator [options]
+ *
+ * --host &lt;host&gt;          Server host (default localhost)
+ * --port &lt;port&gt;          Server port (default 4200)
+ * --board &lt;name&gt;         Board to USE (default: the default board)
+ * --connections &lt;n&gt;     Connections to open (default 100)
+ * --threads &lt;n&gt;         Selector threads sharing the connections (default 1)
+ * --mode closed|open     Closed loop (users with think time) or open loop
+ *                        (fixed arrival rate); default closed
+ * --think &lt;ms&gt;          Closed loop: mean think time, exponential (default 0)
+ * --rate &lt;n&gt;            Open loop: commands per second across all connections
+ * --mix &lt;spec&gt;          TYPE=weight list, see CommandMix
+ * --warmup &lt;s&gt;          Seconds run before recording starts (default 5)
+ * --duration &lt;s&gt;        Seconds recorded (default 30)
+ *
+ * In open loop a command that could not be sent or answered on time is
+ * still timed from its scheduled arrival, so latency includes the queueing
+ * a real client would have seen.
+ */
+public final class LoadGenerator {
+    private static final String DEFAULT_MIX = "POST=30,GET_REGION=40,GET_CONTAINS=10,PIN=10,UNPIN=9,SHAKE=1";
+
+    /** Parsed command line. */
+    static final class Options {
+        String host = "localhost";
+        int port = 4200;
+        String board;
+        int connections = 100;
+        int threads = 1;
+        double rate; // > 0 selects open loop
+        long thinkMillis;
+        CommandMix mix = CommandMix.parse(DEFAULT_MIX);
+        int warmupSeconds = 5;
+        int durationSeconds = 30;
+    }
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: LoadGenerator [--host h] [--port p] [--board name] [--connections n]"
+                    + " [--threads n] [--mode closed|open] [--think ms] [--rate n] [--mix TYPE=w,...]"
+                    + " [--warmup s] [--duration s]");
+            System.exit(1);
+            return;
+        }
+
+        LoadResults results = new LoadResults(options.mix.getTypes());
+        List<LoadWorker> workers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < options.threads; i++) {
+            int share = options.connections / options.threads + (i < options.connections % options.threads ? 1 : 0);
+            Options workerOptions = shareOf(options, options.threads);
+            LoadWorker worker = new LoadWorker(workerOptions, results, share, 31L * i + 7);
+            Thread thread = new Thread(worker, "load-" + i);
+            workers.add(worker);
+            threads.add(thread);
+            thread.start();
+        }
+
+        System.out.println("Load: " + options.connections + " connections to " + options.host + ":" + options.port
+                + (options.rate > 0 ? ", open loop at " + (long) options.rate + "/s" : ", closed loop, think "
+                        + options.thinkMillis + " ms")
+                + ", mix " + options.mix.getTypes());
+
+        TimeUnit.SECONDS.sleep(options.warmupSeconds);
+        results.startRecording();
+        long previous = 0;
+        for (int s = 1; s <= options.durationSeconds; s++) {
+            TimeUnit.SECONDS.sleep(1);
+            long count = results.getAll().count.sum();
+            System.out.println(String.format(Locale.ROOT, "[%3ds] %8d ops/s, %d connections", s, count - previous,
+                    results.getConnections()));
+            previous = count;
+        }
+        double seconds = results.recordedSeconds();
+
+        int outstanding = 0;
+        for (LoadWorker worker : workers) {
+            worker.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        for (LoadWorker worker : workers) {
+            outstanding += worker.outstanding();
+        }
+
+        report(options, results, seconds, outstanding);
+    }
+
+    /** Per-worker copy of the options; open-loop rate is split evenly. */
+    private static Options shareOf(Options options, int workers) {
+        Options share = new Options();
+        share.host = options.host;
+        share.port = options.port;
+        share.board = options.board;
+        share.rate = options.rate / workers;
+        share.thinkMillis = options.thinkMillis;
+        share.mix = options.mix;
+        return share;
+    }
+
+    private static void report(Options options, LoadResults results, double seconds, int outstanding) {
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-13s %10s %10s %8s %9s %9s %9s %9s %9s", "command", "count",
+                "ops/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms"));
+        for (String type : options.mix.getTypes()) {
+            System.out.println(row(type, results.get(type), seconds));
+        }
+        System.out.println(row("ALL", results.getAll(), seconds));
+        System.out.println();
+        System.out.println("Unanswered at end: " + outstanding + ", connection failures: "
+                + results.getConnectionFailures());
+        if (options.rate > 0) {
+            double achieved = results.getAll().count.sum() / seconds;
+            if (achieved < options.rate * 0.95) {
+                System.out.println(String.format(Locale.ROOT,
+                        "Server kept up with only %.0f of %.0f ops/s offered; latencies include the backlog",
+                        achieved, options.rate));
+            }
+        }
+    }
+
+    private static String row(String name, LoadResults.TypeResults r, double seconds) {
+        long count = r.count.sum();
+        return String.format(Locale.ROOT, "%-13s %10d %10.0f %8d %9.3f %9.3f %9.3f %9.3f %9.3f", name, count,
+                count / seconds, r.errors.sum(), millis(r.latency.getPercentile(50)),
+                millis(r.latency.getPercentile(90)), millis(r.latency.getPercentile(99)),
+                millis(r.latency.getPercentile(99.9)), millis(r.latency.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        String mode = "closed";
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            try {
+                switch (name) {
+                    case "--host":
+                        options.host = value;
+                        break;
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "--board":
+                        options.board = value;
+                        break;
+                    case "--connections":
+                        options.connections = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "--mode":
+                        mode = value;
+                        break;
+                    case "--think":
+                        options.thinkMillis = Long.parseLong(value);
+                        break;
+                    case "--rate":
+                        options.rate = Double.parseDouble(value);
+                        break;
+                    case "--mix":
+                        options.mix = CommandMix.parse(value);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        options.durationSeconds = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number for " + name + ": " + value);
+            }
+        }
+
+        if (mode.equals("open")) {
+            if (options.rate <= 0) {
+                throw new IllegalArgumentException("Open loop needs --rate");
+            }
+        } else if (mode.equals("closed")) {
+            options.rate = 0;
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        if (options.connections < 1 || options.threads < 1 || options.threads > options.connections) {
+            throw new IllegalArgumentException("Need 1 <= threads <= connections");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,97 @@
+package loadgen;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.LatencyHistogram;
+
+/**
+ * LoadResults accumulates what the workers measured.
+ *
+ * Latencies go into the same fixed-memory, lock-free histogram the server
+ * uses for STATS, so client- and server-side percentiles are comparable.
+ * Nothing is recorded until warmup has ended.
+ */
+final class LoadResults {
+    private final Map<String, TypeResults> byType = new ConcurrentHashMap<>();
+    private final TypeResults all = new TypeResults();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder connectionFailures = new LongAdder();
+    private volatile boolean recording;
+    private volatile long recordingSince;
+
+    /** Results for one command type. */
+    static final class TypeResults {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    LoadResults(List<String> types) {
+        for (String type : types) {
+            byType.put(type, new TypeResults());
+        }
+    }
+
+    /** Start recording; called when warmup is over. */
+    void startRecording() {
+        recordingSince = System.nanoTime();
+        recording = true;
+    }
+
+    /** Seconds since recording started. */
+    double recordedSeconds() {
+        return (System.nanoTime() - recordingSince) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    void record(String type, long nanos, boolean error) {
+        if (!recording) {
+            return;
+        }
+        add(byType.get(type), nanos, error);
+        add(all, nanos, error);
+    }
+
+    private static void add(TypeResults results, long nanos, boolean error) {
+        results.count.increment();
+        results.latency.record(nanos);
+        if (error) {
+            results.errors.increment();
+        }
+    }
+
+    void connected() {
+        connections.incrementAndGet();
+    }
+
+    void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    void connectionFailed(String reason) {
+        connectionFailures.increment();
+        if (connectionFailures.sum() <= 10) {
+            System.err.println("Connection failed: " + reason);
+        }
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    long getConnectionFailures() {
+        return connectionFailures.sum();
+    }
+
+    TypeResults get(String type) {
+        return byType.get(type);
+    }
+
+    TypeResults getAll() {
+        return all;
+    }
+}
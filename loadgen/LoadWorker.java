@@ -0,0 +1,439 @@
+package loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadWorker drives a share of the connections from one selector thread.
+ *
+ * Every connection is non-blocking, so one worker can hold thousands of
+ * them. Responses are matched to requests in order (the server answers
+ * each connection's commands in sequence), and GET bodies are skipped by
+ * counting lines rather than decoding them.
+ *
+ * Closed loop: each connection is a user that sends one command, waits
+ * for the reply, thinks, and sends the next. Latency is reply time minus
+ * send time.
+ *
+ * Open loop: commands arrive on a fixed schedule regardless of how fast
+ * the server answers, spread round-robin over the connections and
+ * pipelined if a connection is still busy. Latency is measured from the
+ * scheduled arrival time, not the actual send, so a stalled server is
+ * charged for every request it delayed (no coordinated omission).
+ */
+final class LoadWorker implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_REMEMBERED = 10000; // notes/pins kept for PIN/UNPIN targets
+
+    private final LoadGenerator.Options options;
+    private final LoadResults results;
+    private final int connectionCount;
+    private final Random random;
+    private final List<Connection> connections = new ArrayList<>();
+    private final PriorityQueue<Connection> thinking = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.nextSendAt, b.nextSendAt));
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // Targets for PIN and UNPIN, learned from this worker's own successes
+    private final List<int[]> notes = new ArrayList<>();
+    private final List<int[]> pins = new ArrayList<>();
+
+    // Board configuration from the BOARD_CONFIG handshake
+    private int boardWidth;
+    private int boardHeight;
+    private int noteWidth;
+    private int noteHeight;
+    private String[] colors;
+
+    private Selector selector;
+    private int nextConnection;
+    private long nextArrival;
+    private long arrivalInterval;
+    private volatile boolean running = true;
+
+    /** One command awaiting its reply. */
+    private static final class Request {
+        final String type;
+        final long intended; // scheduled start, System.nanoTime()
+        final int x;
+        final int y;
+
+        Request(String type, long intended, int x, int y) {
+            this.type = type;
+            this.intended = intended;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /** Client-side state of one connection. */
+    private static final class Connection {
+        SocketChannel channel;
+        SelectionKey key;
+        boolean ready; // handshake done
+        boolean useSent;
+        final ArrayDeque<ByteBuffer> writes = new ArrayDeque<>();
+        final ArrayDeque<Request> pending = new ArrayDeque<>();
+        final StringBuilder line = new StringBuilder();
+        int bodyLines; // GET data lines still to skip
+        long nextSendAt; // closed loop
+    }
+
+    LoadWorker(LoadGenerator.Options options, LoadResults results, int connectionCount, long seed) {
+        this.options = options;
+        this.results = results;
+        this.connectionCount = connectionCount;
+        this.random = new Random(seed);
+    }
+
+    void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /** Requests sent but not answered. */
+    int outstanding() {
+        int n = 0;
+        for (Connection c : connections) {
+            n += c.pending.size();
+        }
+        return n;
+    }
+
+    @Override
+    public void run() {
+        try {
+            selector = Selector.open();
+            for (int i = 0; i < connectionCount; i++) {
+                open();
+            }
+            if (options.rate > 0) {
+                arrivalInterval = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate);
+            }
+            loop();
+        } catch (IOException e) {
+            System.err.println("Worker failed: " + e.getMessage());
+        } finally {
+            for (Connection c : connections) {
+                close(c);
+            }
+            try {
+                if (selector != null) {
+                    selector.close();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        Connection c = new Connection();
+        c.channel = SocketChannel.open();
+        c.channel.configureBlocking(false);
+        c.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        c.channel.connect(new InetSocketAddress(options.host, options.port));
+        c.key = c.channel.register(selector, SelectionKey.OP_CONNECT, c);
+        connections.add(c);
+    }
+
+    private void loop() throws IOException {
+        while (running) {
+            long now = System.nanoTime();
+            long wait = fireTimers(now);
+            if (wait <= 0) {
+                selector.selectNow();
+            } else {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Connection c = (Connection) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        c.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(c);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(c);
+                    }
+                } catch (IOException e) {
+                    results.connectionFailed(e.getMessage());
+                    close(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send whatever is due.
+     *
+     * @return Nanoseconds until the next timer, or Long.MAX_VALUE if none
+     */
+    private long fireTimers(long now) throws IOException {
+        if (colors == null) {
+            return TimeUnit.MILLISECONDS.toNanos(10); // Waiting for the first handshake
+        }
+
+        if (options.rate > 0) {
+            // Open loop: issue every arrival whose time has come, even if late
+            if (nextArrival == 0) {
+                nextArrival = now;
+            }
+            while (nextArrival <= now) {
+                Connection c = nextReadyConnection();
+                if (c == null) {
+                    break;
+                }
+                send(c, nextArrival);
+                nextArrival += arrivalInterval;
+            }
+            return nextArrival - now;
+        }
+
+        // Closed loop: users whose think time is over send their next command
+        while (!thinking.isEmpty() && thinking.peek().nextSendAt <= now) {
+            Connection c = thinking.poll();
+            if (c.channel.isOpen()) {
+                send(c, now);
+            }
+        }
+        return thinking.isEmpty() ? TimeUnit.MILLISECONDS.toNanos(10) : thinking.peek().nextSendAt - now;
+    }
+
+    private Connection nextReadyConnection() {
+        for (int i = 0; i < connections.size(); i++) {
+            Connection c = connections.get(nextConnection++ % connections.size());
+            if (c.ready && c.channel.isOpen()) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private void send(Connection c, long intended) throws IOException {
+        String type = options.mix.next(random);
+        int x = 0;
+        int y = 0;
+        String command;
+        switch (type) {
+            case "POST":
+                x = random.nextInt(Math.max(1, boardWidth - noteWidth + 1));
+                y = random.nextInt(Math.max(1, boardHeight - noteHeight + 1));
+                command = "POST " + x + " " + y + " " + colors[random.nextInt(colors.length)] + " load note "
+                        + random.nextInt(1000);
+                break;
+            case "GET":
+                command = "GET";
+                break;
+            case "GET_REGION":
+                command = "GET region=" + random.nextInt(Math.max(1, boardWidth - 800 + 1)) + " "
+                        + random.nextInt(Math.max(1, boardHeight - 600 + 1)) + " 800 600";
+                break;
+            case "GET_CONTAINS":
+                command = "GET contains=" + random.nextInt(boardWidth) + " " + random.nextInt(boardHeight);
+                break;
+            case "GET_COLOR":
+                command = "GET color=" + colors[random.nextInt(colors.length)];
+                break;
+            case "PIN":
+                if (!notes.isEmpty()) {
+                    int[] note = notes.get(random.nextInt(notes.size()));
+                    x = note[0] + random.nextInt(noteWidth);
+                    y = note[1] + random.nextInt(noteHeight);
+                } else {
+                    x = random.nextInt(boardWidth);
+                    y = random.nextInt(boardHeight);
+                }
+                command = "PIN " + x + " " + y;
+                break;
+            case "UNPIN":
+                if (!pins.isEmpty()) {
+                    int[] pin = pins.remove(random.nextInt(pins.size()));
+                    x = pin[0];
+                    y = pin[1];
+                } else {
+                    x = random.nextInt(boardWidth);
+                    y = random.nextInt(boardHeight);
+                }
+                command = "UNPIN " + x + " " + y;
+                break;
+            default:
+                command = type; // SHAKE, CLEAR
+        }
+
+        c.pending.add(new Request(type, intended, x, y));
+        write(c, command);
+    }
+
+    private void write(Connection c, String command) throws IOException {
+        c.writes.add(ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.UTF_8)));
+        flush(c);
+    }
+
+    private void flush(Connection c) throws IOException {
+        while (!c.writes.isEmpty()) {
+            ByteBuffer buffer = c.writes.peek();
+            c.channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            c.writes.poll();
+        }
+        c.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void read(Connection c) throws IOException {
+        readBuffer.clear();
+        int n = c.channel.read(readBuffer);
+        if (n < 0) {
+            throw new IOException("Server closed the connection");
+        }
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (c.bodyLines > 0) {
+                if (b == '\n' && --c.bodyLines == 0) {
+                    complete(c, c.pending.poll(), false);
+                }
+            } else if (b == '\n') {
+                String line = c.line.toString();
+                c.line.setLength(0);
+                onLine(c, line);
+            } else if (b != '\r') {
+                c.line.append((char) b); // Status lines are ASCII
+            }
+        }
+    }
+
+    private void onLine(Connection c, String line) throws IOException {
+        if (!c.ready) {
+            if (line.startsWith("BOARD_CONFIG")) {
+                if (colors == null && options.board == null) {
+                    parseConfig(line.split(" "), 1);
+                }
+                if (options.board != null && !c.useSent) {
+                    c.useSent = true;
+                    write(c, "USE " + options.board);
+                    return;
+                }
+            } else if (!line.startsWith("OK BOARD_SELECTED ")) {
+                throw new IOException("Handshake failed: " + line);
+            } else if (colors == null) {
+                // The selected board's own configuration
+                parseConfig(line.split(" "), 2);
+            }
+            c.ready = true;
+            results.connected();
+            if (options.rate <= 0) {
+                c.nextSendAt = System.nanoTime() + thinkTime();
+                thinking.add(c);
+            }
+            return;
+        }
+
+        Request request = c.pending.peek();
+        if (request == null) {
+            return; // Unsolicited line
+        }
+        if (request.type.startsWith("GET") && line.startsWith("OK ")) {
+            int count = parseCount(line.substring(3));
+            if (count > 0) {
+                c.bodyLines = count;
+                return;
+            }
+        }
+        c.pending.poll();
+        complete(c, request, line.startsWith("ERROR"));
+    }
+
+    private void complete(Connection c, Request request, boolean error) {
+        long now = System.nanoTime();
+        results.record(request.type, now - request.intended, error);
+
+        if (!error && request.type.equals("POST")) {
+            remember(notes, new int[] { request.x, request.y });
+        } else if (!error && request.type.equals("PIN")) {
+            remember(pins, new int[] { request.x, request.y });
+        } else if (request.type.equals("CLEAR") || request.type.equals("SHAKE")) {
+            notes.clear();
+            pins.clear();
+        }
+
+        if (options.rate <= 0) {
+            c.nextSendAt = now + thinkTime();
+            thinking.add(c);
+        }
+    }
+
+    private void remember(List<int[]> list, int[] point) {
+        if (list.size() >= MAX_REMEMBERED) {
+            list.set(random.nextInt(list.size()), point);
+        } else {
+            list.add(point);
+        }
+    }
+
+    /** Exponentially distributed think time with the configured mean. */
+    private long thinkTime() {
+        if (options.thinkMillis <= 0) {
+            return 0;
+        }
+        double mean = TimeUnit.MILLISECONDS.toNanos(options.thinkMillis);
+        return (long) (-Math.log(1 - random.nextDouble()) * mean);
+    }
+
+    /** Read width height noteWidth noteHeight color1,color2,... from parts[from]. */
+    private void parseConfig(String[] parts, int from) {
+        // BOARD_CONFIG or OK BOARD_SELECTED, then the fields
+        boardWidth = Integer.parseInt(parts[from]);
+        boardHeight = Integer.parseInt(parts[from + 1]);
+        noteWidth = Integer.parseInt(parts[from + 2]);
+        noteHeight = Integer.parseInt(parts[from + 3]);
+        colors = parts[from + 4].split(",");
+    }
+
+    private static int parseCount(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return -1;
+            }
+        }
+        return text.isEmpty() ? -1 : Integer.parseInt(text);
+    }
+
+    private void close(Connection c) {
+        if (c.channel.isOpen()) {
+            try {
+                c.channel.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            if (c.ready) {
+                results.disconnected();
+            }
+        }
+    }
+}
@@ -1,33 +1,218 @@
+package server;
+
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Board manages shared bulletin board state with thread-safe operations.
  * Thread-per-client model; all modifying ops (POST, PIN, UNPIN, SHAKE, CLEAR)
- * are synchronized.
+ * run inside critical sections.
  * Width/height fixed at startup; notes must lie fully inside board.
+ *
+ * Locking: the board is divided into square tiles and each tile is guarded
+ * by one lock from a fixed stripe of locks. POST locks only the tiles its
+ * note covers, PIN/UNPIN only the tile holding the coordinate, so mutations
+ * in different board regions proceed in parallel. Operations spanning the
+ * whole board (SHAKE, CLEAR, unfiltered GET) take every stripe. Stripes are
+ * always acquired in ascending order, which rules out deadlock.
+ *
+ * Notes are also indexed by ID in a hash map. Lookups by ID (GET id=)
+ * read the index without locking; DELETE and EDIT find the note there and
+ * then lock only the tiles it covers, so all three are O(1) in board size.
+ *
+ * Notes posted with a TTL are expired by one hashed timer wheel shared by
+ * all boards, so pending expirations cost O(1) each to schedule and cancel
+ * and nothing ever scans the board for stale notes. Each expiry locks only
+ * the note's tiles, removes it atomically and is logged as a DELETE for
+ * replicas. A note that is pinned when it expires is kept and checked
+ * again later. Because the timer outlives any one board, a discarded board
+ * must be closed, which cancels its pending expirations.
+ *
+ * A board may be limited in note count and estimated memory. A POST past a
+ * limit either fails with BOARD_FULL or evicts unpinned notes taken from a
+ * queue kept in insertion order: oldest first, or least recently read
+ * first as approximated by a CLOCK reference bit. Each eviction locks only
+ * the victim's tiles and is logged as a DELETE; nothing scans the board.
+ *
+ * With bbs.board.combining=true, POST and PIN go through a flat-combining
+ * front end: each thread publishes its operation, and whichever thread
+ * gets the combiner lock applies every published operation in one pass
+ * under one acquisition of the union of their stripes, then hands the
+ * results back. Under bursts this replaces many threads queueing on the
+ * same stripes with one thread working through a batch; each operation is
+ * still applied atomically and in publication order.
+ *
+ * Time spent waiting for and holding stripes is reported to ServerMetrics,
+ * and each locking operation emits a Diagnostics flight recorder event.
  */
 public class Board {
+    // Number of lock stripes; a power of two so a stripe is a mask away
+    private static final int LOCK_STRIPES = Integer.highestOneBit(
+            Math.max(1, ServerConfig.integer("board.lockStripes", 64)));
+    // Odd multiplier (golden ratio) that spreads tile keys; see packTile
+    private static final int TILE_MIX = 0x9E3779B9;
+    // What lockRegion returns for a region off the board
+    private static final int[] NO_STRIPES = new int[0];
+    // A pinned note past its expiry is checked again after this long
+    private static final long PINNED_RECHECK_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    // Estimated heap cost of a note apart from its message (object, index
+    // entries, tile slots) and of a pin; see estimatedSize
+    private static final int NOTE_OVERHEAD_BYTES = 256;
+    private static final int PIN_BYTES = 160;
+    // Live eviction candidates examined per POST before answering BOARD_FULL
+    private static final int MAX_EVICTION_ATTEMPTS = 64;
+    // A waiting thread spins this often between combiner attempts, then parks
+    private static final int COMBINE_SPINS = 64;
+    private static final long COMBINE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+    /** A POST or PIN published for combining; one per thread, reused. */
+    private static final class Combined {
+        final Thread thread = Thread.currentThread();
+        Note note; // POST, or null for PIN x y
+        int x;
+        int y;
+        String result; // error code, or null on success; set before done
+        RuntimeException failure; // thrown by the operation; rethrown by its owner
+        Combined next; // publication stack link
+        volatile boolean done;
+    }
+
+    private static final ThreadLocal<Combined> COMBINED = ThreadLocal.withInitial(Combined::new);
+
+    /** What a POST does when the board is at capacity. */
+    public enum EvictionPolicy {
+        /** Reject the POST with BOARD_FULL. */
+        NONE,
+        /** Evict the oldest unpinned note. */
+        OLDEST,
+        /** Evict an unpinned note not read recently (CLOCK approximation of LRU). */
+        LRU
+    }
+
+    /** Expiry timer shared by all boards; started by the first TTL note. */
+    private static final class Expiry {
+        // One-second ticks; one revolution of the wheel is about 4.5 hours
+        static final HashedWheelTimer TIMER = new HashedWheelTimer("note-expiry", 1, TimeUnit.SECONDS, 16384);
+    }
+
     private final int width;
     private final int height;
     private final int noteWidth;
     private final int noteHeight;
     private final Set<String> validColors;
 
-    // Protected resources per RFC Section 10.2
-    private final List<Note> notes;
-    private final List<int[]> pins; // Each pin is [x, y]
+    // Tiles are twice the note size, so a note touches at most 2x2 tiles
+    private final int tileSize;
+    private final ReentrantLock[] stripes;
+    private final int[] allStripes;
+    // When each stripe was acquired; guarded by the stripe itself
+    private final long[] heldSince;
+
+    // Protected resources per RFC Section 10.2. Each tile's contents are
+    // guarded by its stripe; the ordered maps keep insertion order for GET.
+    private final ConcurrentHashMap<Long, Tile> tiles;
+    private final ConcurrentSkipListMap<Long, Note> notes; // ID -> note
+    private final ConcurrentHashMap<Long, Note> notesById; // ID -> note, unordered
+    private final ConcurrentSkipListMap<Long, int[]> pins; // sequence -> [x, y]
+    private final AtomicLong sequence; // source of note IDs and pin sequences
+    private final AtomicInteger noteCount;
+    private final AtomicInteger pinCount;
+
+    // Incremented on every successful modification; lets snapshots skip
+    // unchanged boards and numbers replication log entries
+    private final AtomicLong version;
+    // Order-independent hash of all notes and pins: the sum of one hash per
+    // item, adjusted by each mutation, so equal contents give equal hashes
+    // whatever history produced them (e.g. after a restart from a snapshot)
+    private final AtomicLong contentHash;
+    private volatile ReplicationLog replicationLog; // null unless enabled
+    private volatile long defaultTtlSeconds; // POST without ttl=; 0 = never expire
+    private volatile boolean closed; // discarded; schedules no more expirations
+    private final AtomicLong expiredCount;
+
+    // Capacity limits, 0 = unlimited
+    private volatile int maxNotes;
+    private volatile long maxBytes;
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.NONE;
+    private final AtomicLong estimatedBytes;
+    private final AtomicLong evictedCount;
+    // Eviction candidates: note IDs in insertion order, oldest at the head.
+    // Kept only while a limit and a policy are set. Deleted notes leave
+    // stale IDs behind, skipped when polled and purged once they outnumber
+    // the live ones.
+    private final ConcurrentLinkedQueue<Long> evictionQueue;
+    private final AtomicInteger queued;
+    private final AtomicBoolean compacting;
+
+    // Boards with at least this many notes scan filtered GETs in parallel
+    // (bbs.board.parallelScanThreshold, read per board)
+    private final int parallelScanThreshold = ServerConfig.integer("board.parallelScanThreshold", 50000);
+    // Flat combining of POST and PIN (bbs.board.combining, read per board):
+    // published operations, newest first, and the lock whose holder applies them
+    private final boolean combining = ServerConfig.flag("board.combining", false);
+    private final AtomicReference<Combined> published;
+    private final ReentrantLock combiner;
+    private final boolean[] combinedStripes; // scratch; guarded by combiner
+
+    /** Notes intersecting one tile and pins placed inside it. */
+    private static final class Tile {
+        final List<Note> notes = new ArrayList<>();
+        final Map<Long, Long> pins = new HashMap<>(); // coordinate key -> sequence
+    }
 
     public Board(int width, int height, int noteWidth, int noteHeight, Set<String> colors) {
         this.width = width;
         this.height = height;
         this.noteWidth = noteWidth;
         this.noteHeight = noteHeight;
-        this.validColors = new HashSet<>(colors);
-        this.notes = new ArrayList<>();
-        this.pins = new ArrayList<>();
+        this.validColors = new LinkedHashSet<>(colors); // keeps announced order
+        this.tileSize = Math.max(1, 2 * Math.max(noteWidth, noteHeight));
+        this.stripes = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.heldSince = new long[LOCK_STRIPES];
+        this.allStripes = new int[LOCK_STRIPES];
+        Arrays.setAll(allStripes, i -> i);
+        this.tiles = new ConcurrentHashMap<>();
+        this.notes = new ConcurrentSkipListMap<>();
+        this.notesById = new ConcurrentHashMap<>();
+        this.pins = new ConcurrentSkipListMap<>();
+        this.sequence = new AtomicLong();
+        this.noteCount = new AtomicInteger();
+        this.pinCount = new AtomicInteger();
+        this.version = new AtomicLong();
+        this.contentHash = new AtomicLong();
+        this.expiredCount = new AtomicLong();
+        this.estimatedBytes = new AtomicLong();
+        this.evictedCount = new AtomicLong();
+        this.evictionQueue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.compacting = new AtomicBoolean();
+        this.published = new AtomicReference<>();
+        this.combiner = new ReentrantLock();
+        this.combinedStripes = new boolean[LOCK_STRIPES];
     }
 
     // Getters
@@ -48,7 +233,15 @@ public class Board {
     }
 
     public Set<String> getValidColors() {
-        return new HashSet<>(validColors);
+        return new LinkedHashSet<>(validColors);
+    }
+
+    /**
+     * Dimensions and palette as announced to clients, in BOARD_CONFIG and
+     * the USE response: width height noteWidth noteHeight color1,color2,...
+     */
+    public String getConfiguration() {
+        return width + " " + height + " " + noteWidth + " " + noteHeight + " " + String.join(",", validColors);
     }
 
     public boolean isValidColor(String color) {
@@ -56,10 +249,12 @@ public class Board {
     }
 
     /**
-     * Add note to board (POST). Thread-safe. Returns null on success, error string
-     * on failure.
+     * Add note to board (POST). Thread-safe; locks only the tiles the note
+     * covers. Returns null on success, error string on failure.
+     * On success the note's ID is set; a note that already carries an ID
+     * (e.g. replicated from the primary) keeps it.
      */
-    public synchronized String addNote(Note note) {
+    public String addNote(Note note) {
         // Check bounds per RFC Section 9.1 - OUT_OF_BOUNDS
         if (!note.isWithinBounds(width, height)) {
             return "OUT_OF_BOUNDS";
@@ -70,136 +265,1287 @@ public class Board {
             return "COLOR_NOT_SUPPORTED";
         }
 
-        // Check overlap per RFC Section 9.1 - COMPLETE_OVERLAP
-        for (Note existing : notes) {
-            if (note.overlapsCompletely(existing)) {
-                return "COMPLETE_OVERLAP";
+        // Evict only for a note that will be inserted: rule out
+        // COMPLETE_OVERLAP first. Identical notes share the anchor tile, so
+        // its lock is enough; placeNote checks again under the note's locks
+        long size = estimatedSize(note);
+        if (overCapacity(1, size)) {
+            int[] anchor = lockPoint(note.getX(), note.getY());
+            try {
+                if (overlapsCompletely(note)) {
+                    return "COMPLETE_OVERLAP";
+                }
+            } finally {
+                unlock(anchor);
             }
         }
 
-        notes.add(note);
+        // Check capacity per RFC Section 9.1 - BOARD_FULL; evictions take
+        // and release their own locks before this note's are taken
+        if (!makeRoom(1, size, false)) {
+            return "BOARD_FULL";
+        }
+
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        if (combining) {
+            try {
+                return combine(note, 0, 0);
+            } finally {
+                event.finish("POST", 1);
+            }
+        }
+        int[] locked = lockRegion(note.getX(), note.getY(), note.getWidth(), note.getHeight());
+        try {
+            return placeNote(note);
+        } finally {
+            unlock(locked);
+            event.finish("POST", 1);
+        }
+    }
+
+    /** POST once the note's tiles are held. */
+    private String placeNote(Note note) {
+        // Check overlap per RFC Section 9.1 - COMPLETE_OVERLAP
+        if (overlapsCompletely(note)) {
+            return "COMPLETE_OVERLAP";
+        }
+
+        insertNote(note);
+        recordMutation("POST " + note.getId() + " " + note.getX() + " " + note.getY() + " "
+                + note.getColor() + " " + note.getMessage());
         return null; // Success
     }
 
+    /**
+     * Look up a note by ID (GET id=). Lock-free: the index always holds
+     * either the current note or none, and notes are immutable.
+     *
+     * @return The note, or null if no note has this ID
+     */
+    public Note getNote(long id) {
+        Note note = notesById.get(id);
+        if (note != null && evictionPolicy == EvictionPolicy.LRU) {
+            markRead(note);
+        }
+        return note;
+    }
+
+    /**
+     * Remove one note by ID (DELETE). Pins left outside every note are
+     * removed with it. Thread-safe; locks only the tiles the note covers.
+     * Returns null on success, error string on failure.
+     */
+    public String deleteNote(long id) {
+        Note note = notesById.get(id);
+        if (note == null) {
+            return "NOTE_NOT_FOUND";
+        }
+        // A note's position never changes, so these are still its tiles
+        // even if it is deleted or edited before we get the locks
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int[] locked = lockRegion(note.getX(), note.getY(), note.getWidth(), note.getHeight());
+        try {
+            note = notesById.get(id);
+            if (note == null) {
+                return "NOTE_NOT_FOUND";
+            }
+            removeNote(note);
+            recordMutation("DELETE " + id);
+            return null;
+        } finally {
+            unlock(locked);
+            event.finish("DELETE", 1);
+        }
+    }
+
+    /**
+     * Replace the message of one note (EDIT), keeping its ID and position.
+     * Thread-safe; locks only the tiles the note covers. A longer message
+     * must fit the byte limit as a POST must; evicting to make room may
+     * evict the note itself, which then answers NOTE_NOT_FOUND.
+     * Returns null on success, error string on failure.
+     */
+    public String editNote(long id, String message) {
+        Note note = notesById.get(id);
+        if (note == null) {
+            return "NOTE_NOT_FOUND";
+        }
+
+        // Check capacity per RFC Section 9.1 - BOARD_FULL; as in POST,
+        // evictions take and release their own locks before these are taken
+        long growth = 2L * (message.length() - note.getMessage().length()); // As estimatedSize
+        if (growth > 0 && !makeRoom(0, growth, false)) {
+            return "BOARD_FULL";
+        }
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int[] locked = lockRegion(note.getX(), note.getY(), note.getWidth(), note.getHeight());
+        try {
+            Note current = notesById.get(id);
+            if (current == null) {
+                return "NOTE_NOT_FOUND";
+            }
+            Note edited = current.withMessage(message);
+            forEachTile(current, tile -> tile.notes.set(tile.notes.indexOf(current), edited));
+            notes.put(id, edited);
+            notesById.put(id, edited);
+            contentHash.addAndGet(edited.contentHash() - current.contentHash());
+            estimatedBytes.addAndGet(estimatedSize(edited) - estimatedSize(current));
+            recordMutation("EDIT " + id + " " + message);
+            return null;
+        } finally {
+            unlock(locked);
+            event.finish("EDIT", 1);
+        }
+    }
+
     /**
      * Get all notes with optional filters (GET). All filters use AND logic.
      * Thread-safe.
      */
-    public synchronized List<Note> getNotes(String colorFilter, Integer containsX,
+    public List<Note> getNotes(String colorFilter, Integer containsX,
             Integer containsY, String refersTo) {
+        return getNotes(colorFilter, containsX, containsY, refersTo, null);
+    }
+
+    /**
+     * Get notes with optional filters, including a region= rectangle given as
+     * [x, y, w, h]. Thread-safe. The tiles double as a spatial index: a
+     * contains= filter locks and visits only the tile holding the point, a
+     * region= filter only the tiles under the rectangle, so the cost follows
+     * the size of the query rather than the size of the board.
+     *
+     * Other filters need a full scan. On large boards (at least
+     * bbs.board.parallelScanThreshold notes) the notes are copied under the
+     * locks and the copy is filtered by ParallelScan after releasing them,
+     * so one heavy GET uses every core and blocks writers only for the copy.
+     */
+    public List<Note> getNotes(String colorFilter, Integer containsX,
+            Integer containsY, String refersTo, int[] region) {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        List<Note> result = findNotes(colorFilter, containsX, containsY, refersTo, region);
+        event.finish("GET", result.size());
+        if (evictionPolicy == EvictionPolicy.LRU) {
+            result.forEach(Board::markRead);
+        }
+        return result;
+    }
+
+    private List<Note> findNotes(String colorFilter, Integer containsX,
+            Integer containsY, String refersTo, int[] region) {
         List<Note> result = new ArrayList<>();
 
-        for (Note note : notes) {
-            // Apply all filters & logic per RFC Section 7.2
-            if (colorFilter != null && !note.getColor().equalsIgnoreCase(colorFilter)) {
-                continue;
+        if (containsX != null && containsY != null) {
+            // Every note containing the point intersects the point's tile
+            int[] locked = lockPoint(containsX, containsY);
+            try {
+                Tile tile = tiles.get(tileKey(containsX, containsY));
+                if (tile != null) {
+                    for (Note note : tile.notes) {
+                        if (note.contains(containsX, containsY)
+                                && (region == null || note.intersects(region[0], region[1], region[2], region[3]))
+                                && matches(note, colorFilter, refersTo)) {
+                            result.add(note);
+                        }
+                    }
+                }
+            } finally {
+                unlock(locked);
+            }
+            return result;
+        }
+
+        if (region != null) {
+            int[] locked = lockRegion(region[0], region[1], region[2], region[3]);
+            try {
+                // Notes spanning several tiles are seen more than once
+                Set<Note> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (Tile tile : tilesIn(region[0], region[1], region[2], region[3])) {
+                    for (Note note : tile.notes) {
+                        if (note.intersects(region[0], region[1], region[2], region[3])
+                                && matches(note, colorFilter, refersTo) && seen.add(note)) {
+                            result.add(note);
+                        }
+                    }
+                }
+            } finally {
+                unlock(locked);
+            }
+            result.sort(Comparator.comparingLong(Note::getId));
+            return result;
+        }
+
+        if ((colorFilter != null || refersTo != null) && noteCount.get() >= parallelScanThreshold) {
+            List<Note> copy;
+            lockAll();
+            try {
+                copy = new ArrayList<>(notes.values());
+            } finally {
+                unlockAll();
             }
-            if (containsX != null && containsY != null && !note.contains(containsX, containsY)) {
-                continue;
+            // The board may have shrunk (e.g. CLEAR) before we got the locks
+            if (copy.size() >= parallelScanThreshold) {
+                return ParallelScan.filter(copy, note -> matches(note, colorFilter, refersTo));
             }
-            if (refersTo != null && !note.getMessage().contains(refersTo)) {
-                continue;
+            for (Note note : copy) {
+                if (matches(note, colorFilter, refersTo)) {
+                    result.add(note);
+                }
             }
-            result.add(note);
+            return result;
+        }
+
+        lockAll();
+        try {
+            for (Note note : notes.values()) {
+                // Apply all filters & logic per RFC Section 7.2
+                if (matches(note, colorFilter, refersTo)) {
+                    result.add(note);
+                }
+            }
+        } finally {
+            unlockAll();
         }
 
         return result;
     }
 
+    private static boolean matches(Note note, String colorFilter, String refersTo) {
+        if (colorFilter != null && !note.getColor().equalsIgnoreCase(colorFilter)) {
+            return false;
+        }
+        return refersTo == null || note.getMessage().contains(refersTo);
+    }
+
+    /**
+     * Clip an [x, y, w, h] region to the board.
+     *
+     * @return The part of the region on the board, or null if none of it is
+     */
+    public int[] clipRegion(int[] region) {
+        int left = Math.max(0, region[0]);
+        int top = Math.max(0, region[1]);
+        long right = Math.min(width, (long) region[0] + region[2]);
+        long bottom = Math.min(height, (long) region[1] + region[3]);
+        if (left >= right || top >= bottom) {
+            return null;
+        }
+        return new int[] { left, top, (int) (right - left), (int) (bottom - top) };
+    }
+
     /** Get all pins (GET PINS). Thread-safe. Returns list of [x, y] coordinates. */
-    public synchronized List<int[]> getPins() {
-        return new ArrayList<>(pins);
+    public List<int[]> getPins() {
+        return getPins(null);
+    }
+
+    /**
+     * Get pins inside an optional [x, y, w, h] region (GET PINS region=).
+     * Thread-safe; a region only locks and visits the tiles under it.
+     */
+    public List<int[]> getPins(int[] region) {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        if (region == null) {
+            List<int[]> all;
+            lockAll();
+            try {
+                all = new ArrayList<>(pins.values());
+            } finally {
+                unlockAll();
+            }
+            event.finish("GET PINS", all.size());
+            return all;
+        }
+
+        TreeMap<Long, int[]> inRegion = new TreeMap<>(); // sequence keeps PIN order
+        int[] locked = lockRegion(region[0], region[1], region[2], region[3]);
+        try {
+            for (Tile tile : tilesIn(region[0], region[1], region[2], region[3])) {
+                for (Map.Entry<Long, Long> pin : tile.pins.entrySet()) {
+                    int x = (int) (pin.getKey() >> 32);
+                    int y = (int) (long) pin.getKey();
+                    if (x >= region[0] && x < region[0] + region[2]
+                            && y >= region[1] && y < region[1] + region[3]) {
+                        inRegion.put(pin.getValue(), new int[] { x, y });
+                    }
+                }
+            }
+        } finally {
+            unlock(locked);
+        }
+        event.finish("GET PINS", inRegion.size());
+        return new ArrayList<>(inRegion.values());
     }
 
     /**
      * Add pin at coordinate (PIN). Pin must be within at least one note.
      * Only one pin allowed per coordinate (no duplicates).
-     * Thread-safe.
+     * Thread-safe; locks only the tile holding the coordinate.
      */
-    public synchronized String addPin(int x, int y) {
+    public String addPin(int x, int y) {
         // Validate coordinates are non-negative per RFC Section 4.1
         if (x < 0 || y < 0) {
             return "OUT_OF_BOUNDS";
         }
 
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        if (combining) {
+            try {
+                return combine(null, x, y);
+            } finally {
+                event.finish("PIN", 1);
+            }
+        }
+        int[] locked = lockPoint(x, y);
+        try {
+            return placePin(x, y);
+        } finally {
+            unlock(locked);
+            event.finish("PIN", 1);
+        }
+    }
+
+    /** PIN once the coordinate's tile is held. */
+    private String placePin(int x, int y) {
+        Tile tile = tiles.get(tileKey(x, y));
+
         // Check if pin already exists at this coordinate - per RFC, silently allow
         // duplicates
-        for (int[] existingPin : pins) {
-            if (existingPin[0] == x && existingPin[1] == y) {
-                return null; // Already exists, no error per RFC
-            }
+        if (tile != null && tile.pins.containsKey(pointKey(x, y))) {
+            return null; // Already exists, no error per RFC
         }
 
         // Check if pin is within at least one note per RFC Section 9.1
-        boolean withinNote = false;
-        for (Note note : notes) {
-            if (note.contains(x, y)) {
-                withinNote = true;
-                break;
+        if (tile == null || !coveredByNote(tile, x, y)) {
+            return "NO_NOTE_AT_COORDINATE";
+        }
+
+        insertPin(tile, x, y);
+        recordMutation("PIN " + x + " " + y);
+        return null; // Success
+    }
+
+    /**
+     * Publish a POST (note) or PIN (x, y) and wait until a combiner has
+     * applied it, combining ourselves whenever the combiner lock is free.
+     *
+     * @return The operation's error code, or null on success
+     * @throws RuntimeException whatever the operation threw, on whichever
+     *                          thread applied it
+     */
+    private String combine(Note note, int x, int y) {
+        Combined op = COMBINED.get();
+        op.note = note;
+        op.x = x;
+        op.y = y;
+        op.done = false;
+        publish(op);
+
+        for (int spins = 0; !op.done; spins++) {
+            if (combiner.tryLock()) {
+                try {
+                    applyCombined();
+                } finally {
+                    combiner.unlock();
+                }
+            } else if (spins < COMBINE_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(COMBINE_PARK_NANOS); // Woken early when applied
             }
         }
+        String result = op.result;
+        RuntimeException failure = op.failure;
+        op.note = null;
+        op.result = null;
+        op.failure = null;
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
 
-        if (!withinNote) {
-            return "NO_NOTE_AT_COORDINATE";
+    private void publish(Combined op) {
+        do {
+            op.next = published.get();
+        } while (!published.compareAndSet(op.next, op));
+    }
+
+    /**
+     * Combiner pass: take every published operation, lock the union of
+     * their stripes once, apply them in publication order and release
+     * their threads. An operation that throws gets the exception instead of
+     * a result, and the others still run. If the pass itself fails, the
+     * operations it did not apply are published again to be retried.
+     * Caller holds the combiner lock.
+     */
+    private void applyCombined() {
+        Combined stack = published.getAndSet(null);
+        if (stack == null) {
+            return;
+        }
+        Combined ops = null; // reversed into publication order
+        while (stack != null) {
+            Combined next = stack.next;
+            stack.next = ops;
+            ops = stack;
+            stack = next;
         }
 
-        // Add pin to the list
-        pins.add(new int[] { x, y });
-        return null; // Success
+        Combined pending = ops; // first operation not yet applied
+        try {
+            Arrays.fill(combinedStripes, false);
+            int count = 0;
+            for (Combined op = ops; op != null; op = op.next) {
+                if (op.note == null) {
+                    count += markStripe(tileKey(op.x, op.y));
+                    continue;
+                }
+                Note note = op.note;
+                for (int ty = note.getY() / tileSize; ty <= (note.getY() + note.getHeight() - 1) / tileSize; ty++) {
+                    for (int tx = note.getX() / tileSize; tx <= (note.getX() + note.getWidth() - 1) / tileSize; tx++) {
+                        count += markStripe(packTile(tx, ty));
+                    }
+                }
+            }
+            int[] locked = new int[count];
+            for (int stripe = 0, n = 0; n < count; stripe++) {
+                if (combinedStripes[stripe]) {
+                    locked[n++] = stripe;
+                }
+            }
+
+            lockStripes(locked);
+            try {
+                for (; pending != null; pending = pending.next) {
+                    try {
+                        pending.result = pending.note != null ? placeNote(pending.note)
+                                : placePin(pending.x, pending.y);
+                    } catch (RuntimeException e) {
+                        pending.failure = e;
+                    }
+                }
+            } finally {
+                unlock(locked);
+            }
+        } finally {
+            while (ops != pending) {
+                Combined next = ops.next; // The owner reuses op once done
+                ops.next = null;
+                ops.done = true;
+                LockSupport.unpark(ops.thread);
+                ops = next;
+            }
+            while (pending != null) {
+                Combined next = pending.next;
+                publish(pending);
+                pending = next;
+            }
+        }
+    }
+
+    /** Mark a tile's stripe for the combiner pass; 1 if newly marked. */
+    private int markStripe(long tileKey) {
+        int stripe = stripeOf(tileKey);
+        if (combinedStripes[stripe]) {
+            return 0;
+        }
+        combinedStripes[stripe] = true;
+        return 1;
     }
 
-    /** Remove pin at coordinate (UNPIN). Thread-safe. */
-    public synchronized String removePin(int x, int y) {
-        // Find and remove the pin
-        for (int i = 0; i < pins.size(); i++) {
-            int[] pin = pins.get(i);
-            if (pin[0] == x && pin[1] == y) {
-                pins.remove(i);
-                return null; // Success
+    /**
+     * Add a batch of notes and pins (IMPORT). Each item is validated as
+     * POST or PIN would validate it and skipped if invalid; a pin may rely
+     * on a note earlier in the same batch. Every stripe is taken once for
+     * the whole batch, so a bulk load pays one lock round trip per batch
+     * instead of one per item. An imported note keeps its ID if the ID is
+     * above every ID the board has issued, so IDs are still never reused
+     * and always increase; otherwise it gets a new one. Each accepted item
+     * is logged like the command it replaces, so replicas follow an
+     * import. Capacity limits apply as for POST, and evictions are logged as
+     * DELETEs. Thread-safe.
+     *
+     * @return { notes added, pins added or already present }
+     */
+    public int[] importBatch(List<Note> batchNotes, List<int[]> batchPins) {
+        int added = 0;
+        int pinned = 0;
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        lockAll();
+        try {
+            for (Note note : batchNotes) {
+                if (note.getWidth() != noteWidth || note.getHeight() != noteHeight
+                        || !note.isWithinBounds(width, height) || !isValidColor(note.getColor())
+                        || overlapsCompletely(note) || !makeRoom(1, estimatedSize(note), true)) {
+                    continue;
+                }
+                if (note.getId() <= sequence.get()) {
+                    note.setId(0);
+                }
+                insertNote(note);
+                recordMutation("POST " + note.getId() + " " + note.getX() + " " + note.getY() + " "
+                        + note.getColor() + " " + note.getMessage());
+                added++;
             }
+            for (int[] pin : batchPins) {
+                if (pin[0] < 0 || pin[1] < 0) {
+                    continue;
+                }
+                Tile tile = tiles.get(tileKey(pin[0], pin[1]));
+                if (tile == null || !coveredByNote(tile, pin[0], pin[1])) {
+                    continue;
+                }
+                if (!tile.pins.containsKey(pointKey(pin[0], pin[1]))) {
+                    insertPin(tile, pin[0], pin[1]);
+                    recordMutation("PIN " + pin[0] + " " + pin[1]);
+                }
+                pinned++;
+            }
+            return new int[] { added, pinned };
+        } finally {
+            unlockAll();
+            event.finish("IMPORT", added + pinned);
         }
+    }
 
-        // Pin not found per RFC Section 9.1
-        return "PIN_NOT_FOUND";
+    /** Remove pin at coordinate (UNPIN). Thread-safe; locks one tile. */
+    public String removePin(int x, int y) {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int[] locked = lockPoint(x, y);
+        try {
+            Tile tile = tiles.get(tileKey(x, y));
+            Long seq = tile == null ? null : tile.pins.remove(pointKey(x, y));
+            if (seq == null) {
+                // Pin not found per RFC Section 9.1
+                return "PIN_NOT_FOUND";
+            }
+
+            pins.remove(seq);
+            pinCount.decrementAndGet();
+            estimatedBytes.addAndGet(-PIN_BYTES);
+            contentHash.addAndGet(-pinHash(x, y));
+            recordMutation("UNPIN " + x + " " + y);
+            return null; // Success
+        } finally {
+            unlock(locked);
+            event.finish("UNPIN", 1);
+        }
     }
 
     /**
      * Remove all unpinned notes (SHAKE). A note is pinned if any pin exists within
-     * bounds. Thread-safe.
+     * bounds. Thread-safe; holds every stripe so the removal is atomic.
      */
-    public synchronized void removeUnpinnedNotes() {
-        List<Note> pinnedNotes = new ArrayList<>();
-
-        // Check each note to see if it has any pins
-        for (Note note : notes) {
-            boolean isPinned = false;
-            for (int[] pin : pins) {
-                if (note.contains(pin[0], pin[1])) {
-                    isPinned = true;
-                    break;
+    public void removeUnpinnedNotes() {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int before = noteCount.get();
+        lockAll();
+        try {
+            Set<Note> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            Iterator<Note> it = notes.values().iterator();
+            while (it.hasNext()) {
+                Note note = it.next();
+                if (!isPinned(note)) {
+                    it.remove();
+                    cancelExpiry(note);
+                    notesById.remove(note.getId());
+                    contentHash.addAndGet(-note.contentHash());
+                    estimatedBytes.addAndGet(-estimatedSize(note));
+                    removed.add(note);
                 }
             }
-            if (isPinned) {
-                pinnedNotes.add(note);
+
+            if (!removed.isEmpty()) {
+                noteCount.addAndGet(-removed.size());
+                tiles.values().removeIf(tile -> {
+                    tile.notes.removeIf(removed::contains);
+                    return tile.notes.isEmpty() && tile.pins.isEmpty();
+                });
             }
+            recordMutation("SHAKE");
+        } finally {
+            unlockAll();
+            event.finish("SHAKE", before - noteCount.get());
         }
+    }
 
-        // Replace notes list with only pinned notes
-        notes.clear();
-        notes.addAll(pinnedNotes);
+    /**
+     * Cancel every pending TTL expiration once the board is discarded (for
+     * example evicted from the registry). No expiration mutates the board
+     * afterwards, and the shared timer no longer holds the tasks, which
+     * capture the board. The contents are left as they are.
+     */
+    public void close() {
+        lockAll();
+        try {
+            closed = true;
+            notes.values().forEach(Board::cancelExpiry);
+        } finally {
+            unlockAll();
+        }
     }
 
     /** Clear all notes and pins atomically (CLEAR). Thread-safe. */
-    public synchronized void clear() {
-        notes.clear();
-        pins.clear();
+    public void clear() {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int before = noteCount.get();
+        lockAll();
+        try {
+            notes.values().forEach(Board::cancelExpiry);
+            tiles.clear();
+            notes.clear();
+            notesById.clear();
+            pins.clear();
+            noteCount.set(0);
+            pinCount.set(0);
+            contentHash.set(0);
+            estimatedBytes.set(0);
+            evictionQueue.clear();
+            queued.set(0);
+            recordMutation("CLEAR");
+        } finally {
+            unlockAll();
+            event.finish("CLEAR", before);
+        }
+    }
+
+    /** TTL in seconds for POSTs that give none; 0 means notes never expire. */
+    public long getDefaultTtlSeconds() {
+        return defaultTtlSeconds;
+    }
+
+    public void setDefaultTtlSeconds(long seconds) {
+        this.defaultTtlSeconds = Math.max(0, seconds);
+    }
+
+    /** Notes removed because their TTL ran out. */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Limit the board's note count and estimated memory (0 = unlimited) and
+     * choose what a POST past a limit does. Notes already on the board
+     * become eviction candidates in ID order. Thread-safe.
+     */
+    public void setCapacity(int maxNotes, long maxBytes, EvictionPolicy policy) {
+        lockAll();
+        try {
+            this.maxNotes = Math.max(0, maxNotes);
+            this.maxBytes = Math.max(0, maxBytes);
+            this.evictionPolicy = policy;
+            evictionQueue.clear();
+            queued.set(0);
+            if (tracksEviction()) {
+                evictionQueue.addAll(notes.keySet());
+                queued.set(evictionQueue.size());
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /** Estimated heap used by the board's notes and pins, in bytes. */
+    public long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    /** Notes removed to make room under a capacity limit. */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public int getNoteCount() {
+        return noteCount.get();
+    }
+
+    public int getPinCount() {
+        return pinCount.get();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Hash of the board's notes (including IDs and messages) and pins.
+     * Two boards with the same contents have the same hash; clients use it
+     * to skip refetching a board that has not changed.
+     */
+    public long getContentHash() {
+        return contentHash.get();
+    }
+
+    /**
+     * Take an immutable point-in-time view of notes and pins.
+     * Only the list copies happen inside the critical section; callers
+     * serialize the snapshot afterwards without blocking writers.
+     */
+    public BoardSnapshot snapshot() {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        BoardSnapshot snapshot;
+        lockAll();
+        try {
+            snapshot = new BoardSnapshot(version.get(), new ArrayList<>(notes.values()),
+                    new ArrayList<>(pins.values()));
+        } finally {
+            unlockAll();
+        }
+        event.finish("SNAPSHOT", snapshot.getNotes().size() + snapshot.getPins().size());
+        return snapshot;
     }
 
-    public synchronized int getNoteCount() {
-        return notes.size();
+    /**
+     * Start recording mutations for read replicas, unless already recording.
+     *
+     * @param capacity Number of recent mutations retained
+     * @return The board's replication log
+     */
+    public ReplicationLog enableReplicationLog(int capacity) {
+        ReplicationLog log = replicationLog;
+        if (log != null) {
+            return log;
+        }
+        lockAll();
+        try {
+            if (replicationLog == null) {
+                replicationLog = new ReplicationLog(capacity, version.get());
+            }
+            return replicationLog;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /** The replication log, or null if no replica has followed this board. */
+    public ReplicationLog getReplicationLog() {
+        return replicationLog;
+    }
+
+    /**
+     * Replace board contents with a previously saved snapshot (startup, or a
+     * replica resynchronizing from its primary).
+     * Notes that no longer fit the board or use an unknown color are dropped,
+     * as are pins that no longer fall inside a note. Thread-safe.
+     *
+     * @return Number of notes restored
+     */
+    public int restore(BoardSnapshot snapshot) {
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        lockAll();
+        try {
+            notes.values().forEach(Board::cancelExpiry);
+            tiles.clear();
+            notes.clear();
+            notesById.clear();
+            pins.clear();
+            noteCount.set(0);
+            pinCount.set(0);
+            contentHash.set(0);
+            estimatedBytes.set(0);
+            evictionQueue.clear();
+            queued.set(0);
+
+            for (Note note : snapshot.getNotes()) {
+                if (note.getWidth() == noteWidth && note.getHeight() == noteHeight
+                        && note.isWithinBounds(width, height) && isValidColor(note.getColor())) {
+                    if (notesById.containsKey(note.getId())) {
+                        note.setId(0); // Corrupt input; never let two notes share an ID
+                    }
+                    insertNote(note);
+                }
+            }
+            for (int[] pin : snapshot.getPins()) {
+                Tile tile = tiles.get(tileKey(pin[0], pin[1]));
+                if (tile == null || tile.pins.containsKey(pointKey(pin[0], pin[1]))) {
+                    continue;
+                }
+                for (Note note : tile.notes) {
+                    if (note.contains(pin[0], pin[1])) {
+                        insertPin(tile, pin[0], pin[1]);
+                        break;
+                    }
+                }
+            }
+
+            version.set(snapshot.getVersion());
+            if (replicationLog != null) {
+                replicationLog.reset(snapshot.getVersion());
+            }
+            return noteCount.get();
+        } finally {
+            unlockAll();
+            event.finish("RESTORE", noteCount.get());
+        }
+    }
+
+    // ---- Internal structure; callers hold the stripes involved ----
+
+    /**
+     * Bump the version and log the mutation in canonical command form.
+     * Called while still holding the mutation's stripes, so conflicting
+     * mutations are logged in the order they were applied.
+     */
+    private void recordMutation(String command) {
+        long newVersion = version.incrementAndGet();
+        ReplicationLog log = replicationLog;
+        if (log != null) {
+            log.append(newVersion, command);
+        }
+    }
+
+    private void insertNote(Note note) {
+        if (note.getId() == 0) {
+            note.setId(sequence.incrementAndGet());
+        } else {
+            // Restored or replicated ID; later IDs must stay above it
+            sequence.accumulateAndGet(note.getId(), Math::max);
+        }
+        notes.put(note.getId(), note);
+        notesById.put(note.getId(), note);
+        noteCount.incrementAndGet();
+        estimatedBytes.addAndGet(estimatedSize(note));
+        if (tracksEviction()) {
+            evictionQueue.offer(note.getId());
+            queued.incrementAndGet();
+        }
+        if (note.getExpiresAt() > 0) {
+            scheduleExpiry(note, note.getExpiresAt() - System.currentTimeMillis());
+        }
+        contentHash.addAndGet(note.contentHash());
+        forEachTile(note, tile -> tile.notes.add(note));
+    }
+
+    /**
+     * Unlink a note and drop any of its pins that no other note still
+     * covers, keeping every pin inside a note. Caller holds the note's tiles.
+     */
+    private void removeNote(Note note) {
+        cancelExpiry(note);
+        notes.remove(note.getId());
+        notesById.remove(note.getId());
+        noteCount.decrementAndGet();
+        estimatedBytes.addAndGet(-estimatedSize(note));
+        contentHash.addAndGet(-note.contentHash());
+
+        int tx0 = note.getX() / tileSize;
+        int ty0 = note.getY() / tileSize;
+        int tx1 = (note.getX() + note.getWidth() - 1) / tileSize;
+        int ty1 = (note.getY() + note.getHeight() - 1) / tileSize;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                long key = packTile(tx, ty);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    continue;
+                }
+                tile.notes.remove(note);
+                Iterator<Map.Entry<Long, Long>> it = tile.pins.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<Long, Long> pin = it.next();
+                    int x = (int) (pin.getKey() >> 32);
+                    int y = (int) (long) pin.getKey();
+                    if (note.contains(x, y) && !coveredByNote(tile, x, y)) {
+                        it.remove();
+                        pins.remove(pin.getValue());
+                        pinCount.decrementAndGet();
+                        estimatedBytes.addAndGet(-PIN_BYTES);
+                        contentHash.addAndGet(-pinHash(x, y));
+                    }
+                }
+                if (tile.notes.isEmpty() && tile.pins.isEmpty()) {
+                    tiles.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * True if an existing note occupies exactly the same area. Identical
+     * notes share an upper-left corner, hence its tile.
+     */
+    private boolean overlapsCompletely(Note note) {
+        Tile anchor = tiles.get(tileKey(note.getX(), note.getY()));
+        if (anchor != null) {
+            for (Note existing : anchor.notes) {
+                if (note.overlapsCompletely(existing)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Caller holds the note's tiles, so this cannot race close(). */
+    private void scheduleExpiry(Note note, long delayMillis) {
+        if (closed) {
+            return;
+        }
+        long id = note.getId();
+        note.expiry = Expiry.TIMER.schedule(() -> expireNote(id), Math.max(0, delayMillis),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private static void cancelExpiry(Note note) {
+        if (note.expiry != null) {
+            note.expiry.cancel();
+            note.expiry = null;
+        }
+    }
+
+    /**
+     * Timer task: remove a note whose TTL has run out, unless it is pinned.
+     * Runs on the expiry timer thread and locks only the note's tiles.
+     */
+    private void expireNote(long id) {
+        Note note = notesById.get(id);
+        if (note == null) {
+            return;
+        }
+        Diagnostics.BoardEvent event = Diagnostics.beginBoard();
+        int[] locked = lockRegion(note.getX(), note.getY(), note.getWidth(), note.getHeight());
+        try {
+            note = notesById.get(id);
+            if (note == null || note.getExpiresAt() == 0 || closed) {
+                return; // Deleted meanwhile, or the board was discarded
+            }
+            long remaining = note.getExpiresAt() - System.currentTimeMillis();
+            if (remaining > 0) {
+                scheduleExpiry(note, remaining); // Wall clock moved; not due yet
+            } else if (isPinned(note)) {
+                scheduleExpiry(note, PINNED_RECHECK_MILLIS);
+            } else {
+                removeNote(note);
+                recordMutation("DELETE " + id);
+                expiredCount.incrementAndGet();
+            }
+        } finally {
+            unlock(locked);
+            event.finish("EXPIRE", 1);
+        }
+    }
+
+    private boolean tracksEviction() {
+        return evictionPolicy != EvictionPolicy.NONE && (maxNotes > 0 || maxBytes > 0);
+    }
+
+    private boolean overCapacity(int incomingNotes, long incomingBytes) {
+        int noteLimit = maxNotes;
+        long byteLimit = maxBytes;
+        return (noteLimit > 0 && noteCount.get() + incomingNotes > noteLimit)
+                || (byteLimit > 0 && estimatedBytes.get() + incomingBytes > byteLimit);
+    }
+
+    /**
+     * Evict unpinned notes until the given number of notes and estimated
+     * bytes fit: one note and its size for a POST, no note and the growth
+     * of the message for an EDIT.
+     * Candidates come off the head of the eviction queue, so each costs
+     * O(1) and locks only its own tiles. Limits are read without locking,
+     * so concurrent POSTs may overshoot them by a few notes.
+     *
+     * @param holdingAll Caller already holds every stripe (IMPORT)
+     * @return false if the board is full and nothing could be evicted
+     */
+    private boolean makeRoom(int incomingNotes, long incomingBytes, boolean holdingAll) {
+        if (!holdingAll && queued.get() > 2 * noteCount.get() + 1024) {
+            compactEvictionQueue();
+        }
+        int attempts = 0;
+        while (overCapacity(incomingNotes, incomingBytes)) {
+            if (evictionPolicy == EvictionPolicy.NONE || attempts >= MAX_EVICTION_ATTEMPTS) {
+                return false;
+            }
+            Long id = evictionQueue.poll();
+            if (id == null) {
+                return false;
+            }
+            queued.decrementAndGet();
+            Note note = notesById.get(id);
+            if (note == null) {
+                continue; // Deleted since it was queued
+            }
+            attempts++;
+            if (holdingAll) {
+                evictOrRequeue(id);
+            } else {
+                int[] locked = lockRegion(note.getX(), note.getY(), note.getWidth(), note.getHeight());
+                try {
+                    evictOrRequeue(id);
+                } finally {
+                    unlock(locked);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evict one candidate, or send it to the back of the queue if it is
+     * pinned or, under LRU, was read since it was last considered (CLOCK
+     * second chance). Caller holds the note's tiles.
+     */
+    private void evictOrRequeue(long id) {
+        Note note = notesById.get(id);
+        if (note == null) {
+            return;
+        }
+        if (isPinned(note) || (evictionPolicy == EvictionPolicy.LRU && note.referenced)) {
+            note.referenced = false;
+            evictionQueue.offer(id);
+            queued.incrementAndGet();
+            return;
+        }
+        removeNote(note);
+        recordMutation("DELETE " + id);
+        evictedCount.incrementAndGet();
+    }
+
+    /** Purge IDs of deleted notes from the eviction queue, without board locks. */
+    private void compactEvictionQueue() {
+        if (compacting.compareAndSet(false, true)) {
+            try {
+                evictionQueue.removeIf(id -> !notesById.containsKey(id));
+                queued.set(evictionQueue.size());
+            } finally {
+                compacting.set(false);
+            }
+        }
+    }
+
+    private static void markRead(Note note) {
+        if (!note.referenced) {
+            note.referenced = true; // Write only on change to keep the line shared
+        }
+    }
+
+    /** Rough heap cost of a note; messages are counted as two bytes per char. */
+    private static long estimatedSize(Note note) {
+        return NOTE_OVERHEAD_BYTES + 2L * note.getMessage().length();
+    }
+
+    private static long pinHash(int x, int y) {
+        return Note.mix(pointKey(x, y) ^ 0x50494E5FL); // "PIN_"
+    }
+
+    private static boolean coveredByNote(Tile tile, int x, int y) {
+        for (Note note : tile.notes) {
+            if (note.contains(x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insertPin(Tile tile, int x, int y) {
+        long seq = sequence.incrementAndGet();
+        tile.pins.put(pointKey(x, y), seq);
+        pins.put(seq, new int[] { x, y });
+        pinCount.incrementAndGet();
+        estimatedBytes.addAndGet(PIN_BYTES);
+        contentHash.addAndGet(pinHash(x, y));
+    }
+
+    /** True if any pin lies inside the note; only the note's tiles are searched. */
+    private boolean isPinned(Note note) {
+        int tx0 = note.getX() / tileSize;
+        int ty0 = note.getY() / tileSize;
+        int tx1 = (note.getX() + note.getWidth() - 1) / tileSize;
+        int ty1 = (note.getY() + note.getHeight() - 1) / tileSize;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                Tile tile = tiles.get(packTile(tx, ty));
+                if (tile == null) {
+                    continue;
+                }
+                for (long key : tile.pins.keySet()) {
+                    if (note.contains((int) (key >> 32), (int) key)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Apply an action to every tile the note covers, creating tiles as needed. */
+    private void forEachTile(Note note, Consumer<Tile> action) {
+        int tx0 = note.getX() / tileSize;
+        int ty0 = note.getY() / tileSize;
+        int tx1 = (note.getX() + note.getWidth() - 1) / tileSize;
+        int ty1 = (note.getY() + note.getHeight() - 1) / tileSize;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                action.accept(tiles.computeIfAbsent(packTile(tx, ty), k -> new Tile()));
+            }
+        }
+    }
+
+    /**
+     * Existing tiles under a region, clipped to the board. Walks the tile
+     * map instead of the tile grid when the region covers more tiles than
+     * the board actually has.
+     */
+    private List<Tile> tilesIn(int x, int y, int w, int h) {
+        List<Tile> result = new ArrayList<>();
+        int right = Math.min(width, x + w);
+        int bottom = Math.min(height, y + h);
+        if (x >= right || y >= bottom) {
+            return result;
+        }
+        int tx0 = x / tileSize;
+        int ty0 = y / tileSize;
+        int tx1 = (right - 1) / tileSize;
+        int ty1 = (bottom - 1) / tileSize;
+
+        if ((long) (tx1 - tx0 + 1) * (ty1 - ty0 + 1) > tiles.size()) {
+            for (Map.Entry<Long, Tile> entry : tiles.entrySet()) {
+                int tx = tileX(entry.getKey());
+                int ty = tileY(entry.getKey());
+                if (tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1) {
+                    result.add(entry.getValue());
+                }
+            }
+            return result;
+        }
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                Tile tile = tiles.get(packTile(tx, ty));
+                if (tile != null) {
+                    result.add(tile);
+                }
+            }
+        }
+        return result;
+    }
+
+    private long tileKey(int x, int y) {
+        return packTile(x / tileSize, y / tileSize);
+    }
+
+    /**
+     * Tile key: ty in the high half, tx mixed with ty in the low half.
+     * Long.hashCode folds the halves together, so without the mixing every
+     * tile with the same tx ^ ty would share a hash bucket and large boards
+     * would degrade the tile map to tree bins.
+     */
+    private static long packTile(int tx, int ty) {
+        return ((long) ty << 32) | ((tx ^ ty * TILE_MIX) & 0xffffffffL);
+    }
+
+    private static int tileX(long tileKey) {
+        return (int) tileKey ^ tileY(tileKey) * TILE_MIX;
+    }
+
+    private static int tileY(long tileKey) {
+        return (int) (tileKey >> 32);
+    }
+
+    private static long pointKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    // ---- Lock striping ----
+
+    private static int stripeOf(long tileKey) {
+        long h = tileKey * 0x9E3779B97F4A7C15L; // spread neighbouring tiles
+        return (int) (h >>> 40) & (LOCK_STRIPES - 1);
+    }
+
+    /** Lock the stripe of the tile holding one point. */
+    private int[] lockPoint(int x, int y) {
+        int[] locked = { stripeOf(tileKey(x, y)) };
+        long start = System.nanoTime();
+        stripes[locked[0]].lock();
+        acquired(locked[0], start);
+        return locked;
+    }
+
+    /**
+     * Lock the stripes of every tile a rectangle touches, in ascending order.
+     * Rectangles spanning more tiles than there are stripes lock them all;
+     * a rectangle entirely off the board locks nothing.
+     */
+    private int[] lockRegion(int x, int y, int w, int h) {
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        int right = (int) Math.min(width, (long) x + w);
+        int bottom = (int) Math.min(height, (long) y + h);
+        if (left >= right || top >= bottom) {
+            return NO_STRIPES;
+        }
+        int tx0 = left / tileSize;
+        int ty0 = top / tileSize;
+        int tx1 = (right - 1) / tileSize;
+        int ty1 = (bottom - 1) / tileSize;
+        long count = (long) (tx1 - tx0 + 1) * (ty1 - ty0 + 1);
+        if (count > LOCK_STRIPES) {
+            lockAll();
+            return allStripes;
+        }
+
+        int[] ids = new int[(int) count];
+        int n = 0;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                ids[n++] = stripeOf(packTile(tx, ty));
+            }
+        }
+        int[] locked = Arrays.stream(ids, 0, n).sorted().distinct().toArray();
+        lockStripes(locked);
+        return locked;
+    }
+
+    /** Lock distinct stripes given in ascending order; none is a no-op. */
+    private void lockStripes(int[] locked) {
+        if (locked.length == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (int stripe : locked) {
+            stripes[stripe].lock();
+        }
+        acquired(locked[0], start);
+    }
+
+    private void unlock(int[] locked) {
+        if (locked.length == 0) {
+            return;
+        }
+        released(locked[0]);
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+
+    private void lockAll() {
+        long start = System.nanoTime();
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        acquired(0, start);
+    }
+
+    private void unlockAll() {
+        released(0);
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Record lock wait once all stripes of an operation are held. Hold time
+     * is tracked on the lowest stripe, which is acquired first.
+     */
+    private void acquired(int firstStripe, long waitStart) {
+        long now = System.nanoTime();
+        heldSince[firstStripe] = now;
+        ServerMetrics.recordLockWait(now - waitStart);
+        LoadShedder.observeLockWait(now - waitStart);
+        Diagnostics.lockWaited(now - waitStart);
     }
 
-    public synchronized int getPinCount() {
-        return pins.size();
+    private void released(int firstStripe) {
+        ServerMetrics.recordLockHold(System.nanoTime() - heldSince[firstStripe]);
     }
 }
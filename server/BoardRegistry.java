@@ -0,0 +1,406 @@
+package server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * BoardRegistry holds the named boards served by one server.
+ *
+ * Boards are created lazily the first time a connection binds to them
+ * (USE command) and each board has its own lock, so clients on different
+ * boards never contend with each other. Boards with no bound connections
+ * are evicted after an idle period; the default board is never evicted.
+ *
+ * The map holds a future per board. The thread that inserts it loads the
+ * board (snapshot I/O, follower and sequencer threads) outside the map's
+ * locks, and other threads binding to the same board wait on the future;
+ * lookups of other boards never wait for a load or an eviction.
+ *
+ * Per-board configuration comes from system properties, falling back to
+ * the server-wide defaults (RFC Section 4.2):
+ *
+ * bbs.board.width / bbs.board.&lt;name&gt;.width (default 800)
+ * bbs.board.height / bbs.board.&lt;name&gt;.height (default 600)
+ * bbs.board.noteWidth / bbs.board.&lt;name&gt;.noteWidth (default 100)
+ * bbs.board.noteHeight / bbs.board.&lt;name&gt;.noteHeight (default 100)
+ * bbs.board.colors / bbs.board.&lt;name&gt;.colors (comma separated)
+ * bbs.board.ttlSeconds / bbs.board.&lt;name&gt;.ttlSeconds (default 0 = notes never expire)
+ * bbs.board.maxNotes / bbs.board.&lt;name&gt;.maxNotes (default 0 = unlimited)
+ * bbs.board.maxBytes / bbs.board.&lt;name&gt;.maxBytes (estimated heap, default 0 = unlimited)
+ * bbs.board.eviction / bbs.board.&lt;name&gt;.eviction (none, oldest or lru; default none)
+ *
+ * When a snapshot directory is configured, each board is restored from
+ * &lt;dir&gt;/&lt;name&gt;.snap on creation and written back before eviction.
+ *
+ * A board starts a replication log (bbs.replication.logSize entries, 0
+ * disables replication) on its first REPLICATE, so boards no replica
+ * follows pay nothing for it. bbs.replication.allow lists the boards
+ * replicas may follow (comma separated, default * for all). On a replica, each board
+ * instead gets a ReplicaFollower that tails the same board on the primary;
+ * replica boards must be configured with the primary's dimensions, and
+ * ignore capacity limits since they apply the primary's evictions.
+ *
+ * With bbs.board.sequencer=true each board on a primary also gets a
+ * CommandSequencer, and client mutations of the board run on its writer
+ * thread.
+ */
+public class BoardRegistry {
+    public static final String DEFAULT_BOARD = "default";
+
+    // Board configuration defaults per RFC Section 4.2
+    private static final int BOARD_WIDTH = 800;
+    private static final int BOARD_HEIGHT = 600;
+    private static final int NOTE_WIDTH = 100;
+    private static final int NOTE_HEIGHT = 100;
+
+    // Valid colors per RFC Section 4.3
+    private static final String COLORS = "yellow,blue,green,pink,orange,purple,white";
+
+    private static final Pattern BOARD_NAME = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> boards = new ConcurrentHashMap<>();
+    private final Path snapshotDir; // null when snapshots are disabled
+    private final long idleMillis;
+    private final String primary; // host:port when this server is a replica
+    private final int replicationLogSize = ServerConfig.integer("replication.logSize", 100000);
+    private final Set<String> replicationAllow = replicationAllow();
+
+    /** Registry state for one named board. */
+    private static final class Entry {
+        final Board board;
+        final SnapshotStore store;
+        final ReplicaFollower follower; // null on a primary
+        final CommandSequencer sequencer; // null unless bbs.board.sequencer is set
+        // Completed once an evicted entry is out of the map and its snapshot written
+        final CompletableFuture<Void> gone = new CompletableFuture<>();
+        int connections; // guarded by the entry's monitor
+        boolean evicted; // guarded by the entry's monitor; no new bindings
+        volatile long lastUsed;
+        volatile long lastSnapshotVersion;
+
+        Entry(Board board, SnapshotStore store, ReplicaFollower follower, CommandSequencer sequencer) {
+            this.board = board;
+            this.store = store;
+            this.follower = follower;
+            this.sequencer = sequencer;
+            this.lastUsed = System.currentTimeMillis();
+            this.lastSnapshotVersion = board.getVersion();
+        }
+    }
+
+    /**
+     * @param snapshotDir Directory for per-board snapshots, or null to disable
+     * @param idleSeconds Seconds a board may stay unused before eviction
+     * @param primary     Primary server as host:port, or null on a primary
+     */
+    public BoardRegistry(Path snapshotDir, long idleSeconds, String primary) {
+        this.snapshotDir = snapshotDir;
+        this.idleMillis = TimeUnit.SECONDS.toMillis(idleSeconds);
+        this.primary = primary;
+        // The default board always exists, matching the single-board behaviour
+        boards.put(DEFAULT_BOARD, CompletableFuture.completedFuture(createEntry(DEFAULT_BOARD)));
+    }
+
+    /** Check that a board name is acceptable for USE. */
+    public static boolean isValidName(String name) {
+        return name != null && BOARD_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Bind a connection to the named board, creating it if needed.
+     * Every acquire must be paired with a release.
+     */
+    public Board acquire(String name) {
+        return bind(name, true);
+    }
+
+    /**
+     * Bind to the named board only if it exists, in memory or as a
+     * snapshot to reload; for readers that must not create boards (HTTP
+     * GETs). A non-null result must be paired with a release.
+     *
+     * @return The board, or null if there is no such board
+     */
+    public Board acquireExisting(String name) {
+        return bind(name, false);
+    }
+
+    private Board bind(String name, boolean create) {
+        while (true) {
+            CompletableFuture<Entry> future = boards.get(name);
+            if (future == null) {
+                if (!create && !hasSnapshot(name)) {
+                    return null;
+                }
+                CompletableFuture<Entry> created = new CompletableFuture<>();
+                future = boards.putIfAbsent(name, created);
+                if (future == null) {
+                    future = created;
+                    load(name, created);
+                }
+            }
+            Entry e = future.join();
+            synchronized (e) {
+                if (!e.evicted) {
+                    e.connections++;
+                    e.lastUsed = System.currentTimeMillis();
+                    return e.board;
+                }
+            }
+            // Being evicted: bind to the board reloaded from its snapshot
+            e.gone.join();
+        }
+    }
+
+    private boolean hasSnapshot(String name) {
+        return snapshotDir != null && Files.exists(snapshotDir.resolve(name + ".snap"));
+    }
+
+    /** Load a board into the future this thread put in the map. */
+    private void load(String name, CompletableFuture<Entry> created) {
+        try {
+            created.complete(createEntry(name));
+        } catch (RuntimeException | Error e) {
+            boards.remove(name, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Unbind a connection from the named board. */
+    public void release(String name) {
+        Entry e = loaded(name);
+        if (e != null) {
+            synchronized (e) {
+                e.connections--;
+                e.lastUsed = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /** The named board's entry once it has loaded, or null. */
+    private Entry loaded(String name) {
+        CompletableFuture<Entry> future = boards.get(name);
+        return future == null || !future.isDone() || future.isCompletedExceptionally() ? null : future.join();
+    }
+
+    /** The default board, without binding a connection to it. */
+    public Board getDefaultBoard() {
+        return loaded(DEFAULT_BOARD).board;
+    }
+
+    /** The named board if it is in memory, without binding a connection. */
+    public Board getBoard(String name) {
+        Entry e = loaded(name);
+        return e == null ? null : e.board;
+    }
+
+    /** True if this server is a read replica; mutations are rejected. */
+    public boolean isReplica() {
+        return primary != null;
+    }
+
+    /** The follower replicating the named board, or null on a primary. */
+    public ReplicaFollower getFollower(String name) {
+        Entry e = loaded(name);
+        return e == null ? null : e.follower;
+    }
+
+    /**
+     * The replication log of a bound board for a REPLICATE command, started
+     * on first use.
+     *
+     * @return The log, or null if replication of this board is disabled
+     */
+    public ReplicationLog replicationLog(String name, Board board) {
+        if (replicationLogSize <= 0
+                || !(replicationAllow.contains("*") || replicationAllow.contains(name))) {
+            return null;
+        }
+        return board.enableReplicationLog(replicationLogSize);
+    }
+
+    /** The sequencer running the named board's mutations, or null if they run on client threads. */
+    public CommandSequencer getSequencer(String name) {
+        Entry e = loaded(name);
+        return e == null ? null : e.sequencer;
+    }
+
+    /** Names of the boards currently in memory. */
+    public List<String> getBoardNames() {
+        return new ArrayList<>(boards.keySet());
+    }
+
+    /**
+     * Evict boards that have no bound connections and have been idle for
+     * longer than the configured period. The entry stays in the map until
+     * its snapshot is written, so a concurrent USE waits for the snapshot
+     * instead of loading a stale file.
+     *
+     * @return Number of boards evicted
+     */
+    public int evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        int evicted = 0;
+        for (String name : boards.keySet()) {
+            if (name.equals(DEFAULT_BOARD)) {
+                continue;
+            }
+            Entry e = loaded(name);
+            if (e == null) {
+                continue;
+            }
+            synchronized (e) {
+                if (e.evicted || e.connections > 0 || e.lastUsed > cutoff) {
+                    continue;
+                }
+                e.evicted = true;
+            }
+            if (e.follower != null) {
+                e.follower.stop();
+            }
+            if (e.sequencer != null) {
+                e.sequencer.stop();
+            }
+            writeSnapshot(name, e);
+            e.board.close();
+            boards.remove(name);
+            e.gone.complete(null);
+            evicted++;
+            System.out.println("Board evicted: " + name);
+        }
+        return evicted;
+    }
+
+    /** Write snapshots of all boards that changed since their last snapshot. */
+    public void snapshotAll() {
+        for (String name : boards.keySet()) {
+            Entry e = loaded(name);
+            if (e != null) {
+                writeSnapshot(name, e);
+            }
+        }
+    }
+
+    private void writeSnapshot(String name, Entry e) {
+        if (e.store == null || e.board.getVersion() == e.lastSnapshotVersion) {
+            return;
+        }
+        try {
+            BoardSnapshot snapshot = e.board.snapshot();
+            e.store.write(snapshot, e.board.getNoteWidth(), e.board.getNoteHeight());
+            e.lastSnapshotVersion = snapshot.getVersion();
+        } catch (IOException ex) {
+            System.err.println("Error writing snapshot for board " + name + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Create an empty board with the named board's configuration; also used
+     * by BoardTool to validate imports offline.
+     */
+    static Board createBoard(String name) {
+        Board board = new Board(
+                boardSetting(name, "width", BOARD_WIDTH),
+                boardSetting(name, "height", BOARD_HEIGHT),
+                boardSetting(name, "noteWidth", NOTE_WIDTH),
+                boardSetting(name, "noteHeight", NOTE_HEIGHT),
+                boardColors(name));
+        board.setDefaultTtlSeconds(boardSetting(name, "ttlSeconds", 0));
+        board.setCapacity(boardSetting(name, "maxNotes", 0),
+                ServerConfig.longValue("board." + name + ".maxBytes", ServerConfig.longValue("board.maxBytes", 0)),
+                evictionPolicy(name));
+        return board;
+    }
+
+    private Entry createEntry(String name) {
+        Board board = createBoard(name);
+        if (primary != null) {
+            // The primary's evictions arrive as DELETEs
+            board.setCapacity(0, 0, Board.EvictionPolicy.NONE);
+        }
+
+        SnapshotStore store = null;
+        if (snapshotDir != null) {
+            store = new SnapshotStore(snapshotDir.resolve(name + ".snap"));
+            restore(name, board, store);
+        }
+
+        ReplicaFollower follower = null;
+        if (primary != null) {
+            follower = new ReplicaFollower(primary, name, board);
+            follower.start();
+        }
+
+        System.out.println("Board " + name + " initialized: " + board.getWidth() + "x" + board.getHeight()
+                + " (notes: " + board.getNoteWidth() + "x" + board.getNoteHeight() + ")");
+        // Replicas apply mutations on the follower thread already
+        CommandSequencer sequencer = CommandSequencer.ENABLED && primary == null ? new CommandSequencer(name) : null;
+        return new Entry(board, store, follower, sequencer);
+    }
+
+    private static void restore(String name, Board board, SnapshotStore store) {
+        long start = System.nanoTime();
+        try {
+            BoardSnapshot snapshot = store.read();
+            if (snapshot != null) {
+                int restored = board.restore(snapshot);
+                System.out.println("Board " + name + ": restored " + restored + " notes and "
+                        + board.getPinCount() + " pins from " + store.getFile() + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading snapshot for board " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static int boardSetting(String name, String setting, int defaultValue) {
+        return ServerConfig.integer("board." + name + "." + setting,
+                ServerConfig.integer("board." + setting, defaultValue));
+    }
+
+    private static Board.EvictionPolicy evictionPolicy(String name) {
+        String value = ServerConfig.string("board." + name + ".eviction",
+                ServerConfig.string("board.eviction", "none"));
+        try {
+            return Board.EvictionPolicy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid eviction policy for board " + name + ": " + value);
+            return Board.EvictionPolicy.NONE;
+        }
+    }
+
+    private static Set<String> replicationAllow() {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : ServerConfig.string("replication.allow", "*").split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> boardColors(String name) {
+        String list = ServerConfig.string("board." + name + ".colors",
+                ServerConfig.string("board.colors", COLORS));
+        Set<String> colors = new LinkedHashSet<>();
+        for (String color : list.split(",")) {
+            if (color.indexOf('=') >= 0) {
+                // POST reads a leading ttl= before the color; keep them apart
+                System.err.println("Invalid color for board " + name + ": " + color.trim());
+            } else if (!color.trim().isEmpty()) {
+                colors.add(color.trim().toLowerCase());
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,44 @@
+package server;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * BoardSnapshot is an immutable point-in-time view of a board.
+ *
+ * The lists are copied inside the board's critical section (a reference
+ * copy, no per-note work) and are never modified afterwards, so the
+ * snapshot can be serialized or scanned without holding any lock.
+ * This keeps slow work such as disk I/O off the writers' path.
+ */
+public final class BoardSnapshot {
+    private final long version;
+    private final long createdAt;
+    private final List<Note> notes;
+    private final List<int[]> pins; // Each pin is [x, y]
+
+    public BoardSnapshot(long version, List<Note> notes, List<int[]> pins) {
+        this.version = version;
+        this.createdAt = System.currentTimeMillis();
+        this.notes = Collections.unmodifiableList(notes);
+        this.pins = Collections.unmodifiableList(pins);
+    }
+
+    /** Board version (mutation count) at the time of the snapshot. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Wall-clock time the snapshot was taken, in milliseconds. */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public List<Note> getNotes() {
+        return notes;
+    }
+
+    public List<int[]> getPins() {
+        return pins;
+    }
+}
@@ -0,0 +1,136 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BoardTool moves whole boards in the EXPORT/IMPORT line format (RFC
+ * Sections 7.15 and 7.16) without going through the request loop one
+ * command at a time.
+ *
+ * Usage:
+ *   java -cp bbs-server.jar server.BoardTool export &lt;snapshot&gt; [&lt;file&gt;]
+ *   java -cp bbs-server.jar server.BoardTool import &lt;file&gt; &lt;snapshot&gt; [&lt;board&gt;]
+ *   java -cp bbs-server.jar server.BoardTool send &lt;host:port&gt; &lt;file&gt; [&lt;board&gt;] [REPLACE]
+ *
+ * export and import work offline on snapshot files: export prints every
+ * note and pin of a snapshot, and import builds a snapshot from lines,
+ * validated as IMPORT validates them against the board's bbs.board.*
+ * configuration, listing rejected lines. Put the result at
+ * &lt;bbs.snapshot.dir&gt;/&lt;board&gt;.snap and the server restores it on
+ * startup. send streams a file to a running server with one IMPORT.
+ * A &lt;file&gt; of "-" means standard input or output.
+ */
+public final class BoardTool {
+    // Rejected lines listed before the rest are only counted
+    private static final int MAX_REPORTED = 100;
+
+    private BoardTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args[0].equals("export") && args.length <= 3) {
+            export(args[1], args.length == 3 ? args[2] : "-");
+        } else if (args.length >= 3 && args[0].equals("import") && args.length <= 4) {
+            importFile(args[1], args[2], args.length == 4 ? args[3] : BoardRegistry.DEFAULT_BOARD);
+        } else if (args.length >= 3 && args[0].equals("send") && args.length <= 5) {
+            boolean replace = args[args.length - 1].equalsIgnoreCase("REPLACE");
+            int named = args.length - (replace ? 1 : 0);
+            send(args[1], args[2], named == 4 ? args[3] : null, replace);
+        } else {
+            System.err.println("Usage: BoardTool export <snapshot> [<file>]");
+            System.err.println("       BoardTool import <file> <snapshot> [<board>]");
+            System.err.println("       BoardTool send <host:port> <file> [<board>] [REPLACE]");
+            System.exit(2);
+        }
+    }
+
+    private static void export(String snapshotFile, String file) throws IOException {
+        BoardSnapshot snapshot = new SnapshotStore(Paths.get(snapshotFile)).read();
+        if (snapshot == null) {
+            throw new IOException("No snapshot at " + snapshotFile);
+        }
+        try (PrintWriter out = writer(file)) {
+            TransferHandler.write(snapshot, out);
+        }
+        System.err.println("Exported " + snapshot.getNotes().size() + " notes and " + snapshot.getPins().size()
+                + " pins");
+    }
+
+    private static void importFile(String file, String snapshotFile, String boardName) throws IOException {
+        long start = System.nanoTime();
+        Board board = BoardRegistry.createBoard(boardName);
+        long[] reported = { 0 };
+        TransferHandler.Result result;
+        try (BufferedReader in = reader(file)) {
+            result = TransferHandler.importLines(board, in, (error, line) -> {
+                if (reported[0]++ < MAX_REPORTED) {
+                    System.err.println("line " + line + ": " + error);
+                }
+            }, false);
+        }
+        new SnapshotStore(Paths.get(snapshotFile)).write(board.snapshot(), board.getNoteWidth(),
+                board.getNoteHeight());
+        System.err.println("Imported " + result.notes + " notes and " + result.pins + " pins, rejected "
+                + result.rejected + ", in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private static void send(String address, String file, String boardName, boolean replace) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IOException("Expected host:port, got " + address);
+        }
+        try (Socket socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+                BufferedReader server = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                        StandardCharsets.UTF_8));
+                PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16));
+                BufferedReader in = reader(file)) {
+            server.readLine(); // BOARD_CONFIG
+            if (boardName != null) {
+                out.print("USE " + boardName + "\n");
+                out.flush();
+                String response = server.readLine();
+                if (response == null || !response.startsWith("OK")) {
+                    throw new IOException("USE failed: " + response);
+                }
+            }
+
+            // The server answers only after END, so stream without waiting
+            out.print(replace ? "IMPORT REPLACE\n" : "IMPORT\n");
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.equals("END")) {
+                    out.print(line + "\n");
+                }
+            }
+            out.print("END\n");
+            out.flush();
+            System.out.println(server.readLine());
+        }
+    }
+
+    private static BufferedReader reader(String file) throws IOException {
+        if (file.equals("-")) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+        }
+        return Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+    }
+
+    private static PrintWriter writer(String file) throws IOException {
+        if (file.equals("-")) {
+            return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                    1 << 16));
+        }
+        return new PrintWriter(Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8));
+    }
+}
@@ -1,3 +1,5 @@
+package server;
+
 /**
  * ClearHandler implements the CLEAR command logic.
  * 
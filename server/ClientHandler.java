@@ -1,5 +1,9 @@
+package server;
+
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ClientHandler processes requests from a single client.
@@ -8,28 +12,67 @@ import java.net.Socket;
  * of this class. The handler reads messages from the client and responds.
  * 
  * This is where client request processing logic will be implemented.
+ * 
+ * Dead clients are reaped two ways, so an abandoned connection cannot pin
+ * its thread and buffers forever:
+ * - Idle timeout (bbs.connection.idleSeconds, default 300): a connection
+ *   that sends nothing for this long is closed by the shared timer. Each
+ *   line counts, so an IMPORT whose body keeps arriving stays open.
+ *   Clients keep quiet connections open with PING.
+ * - Read timeout (bbs.connection.readTimeoutSeconds, default 0 = off): the
+ *   socket's SO_TIMEOUT, a per-read limit independent of the timer.
+ * Connections streaming a response (a REPLICATE feed, an EXPORT) are exempt
+ * from the idle timeout until the stream ends.
  */
 public class ClientHandler implements Runnable {
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(
+            ServerConfig.integer("connection.idleSeconds", 300));
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(
+            ServerConfig.integer("connection.readTimeoutSeconds", 0));
+
     private Socket socket;
     private String clientIP;
     private ProtocolHandler protocolHandler;
+    private final HashedWheelTimer timer;
+
+    // Idle tracking: one timeout per connection, re-armed lazily
+    private volatile long lastActivity;
+    private volatile boolean streaming;
+    private volatile boolean reaped;
+    private volatile HashedWheelTimer.Timeout idleCheck;
 
-    public ClientHandler(Socket socket, String clientIP, Board board) {
+    public ClientHandler(Socket socket, String clientIP, BoardRegistry registry, HashedWheelTimer timer) {
         this.socket = socket;
         this.clientIP = clientIP;
-        this.protocolHandler = new ProtocolHandler(board);
+        this.protocolHandler = new ProtocolHandler(registry, clientIP);
+        this.timer = timer;
     }
 
     @Override
     public void run() {
+        ServerMetrics.connectionOpened();
         try {
-            // Create input and output streams for communicating with the client
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            lastActivity = System.nanoTime();
+            if (IDLE_NANOS > 0) {
+                idleCheck = timer.schedule(this::checkIdle, IDLE_NANOS, TimeUnit.NANOSECONDS);
+            }
+
+            // Create input and output streams for communicating with the client.
+            // Every line read is activity, including the body of a long IMPORT
             BufferedReader input = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream()));
+                    new InputStreamReader(socket.getInputStream())) {
+                @Override
+                public String readLine() throws IOException {
+                    String line = super.readLine();
+                    lastActivity = System.nanoTime();
+                    return line;
+                }
+            };
             PrintWriter output = new PrintWriter(
                     new OutputStreamWriter(socket.getOutputStream()), true);
 
-            System.out.println("Client connected: " + clientIP);
+            RequestLog.log(RequestLog.Level.INFO, "connect", clientIP, null);
 
             // Send initial handshake with board configuration
             sendBoardConfiguration(output);
@@ -37,16 +80,34 @@ public class ClientHandler implements Runnable {
             // Read messages from the client
             String clientRequest;
             while ((clientRequest = input.readLine()) != null) {
-                // Log the request
-                System.out.println("Request from " + clientIP + ": " + clientRequest);
+                // Log the request; asynchronous and sampled, never blocks
+                RequestLog.request(clientIP, clientRequest);
 
                 // Process the command using protocol handler
-                ProtocolResponse response = protocolHandler.processCommand(clientRequest);
+                // IMPORT reads its body from the same input
+                ProtocolResponse response = protocolHandler.processCommand(clientRequest, input);
+                lastActivity = System.nanoTime();
 
                 // Only send response if command was not ignored (null = empty line)
                 if (response != null) {
+                    Diagnostics.WriteEvent write = Diagnostics.beginWrite();
                     output.println(response.toString());
 
+                    // Streamed bodies follow the status line; the client
+                    // sends nothing while streaming, so stop idle checks
+                    if (response.getStream() != null) {
+                        streaming = true;
+                        cancelIdleCheck();
+                        response.getStream().writeTo(output);
+                        output.flush();
+                        streaming = false;
+                        lastActivity = System.nanoTime();
+                        if (IDLE_NANOS > 0 && !response.isDisconnect()) {
+                            idleCheck = timer.schedule(this::checkIdle, IDLE_NANOS, TimeUnit.NANOSECONDS);
+                        }
+                    }
+                    Diagnostics.writeFinished(write, clientIP, response);
+
                     // Handle DISCONNECT
                     if (response.isDisconnect()) {
                         break;
@@ -54,26 +115,68 @@ public class ClientHandler implements Runnable {
                 }
             }
 
+        } catch (SocketTimeoutException e) {
+            ServerMetrics.connectionReaped("readTimeout");
+            RequestLog.log(RequestLog.Level.INFO, "reap", clientIP, "reason=readTimeout");
         } catch (IOException e) {
-            System.err.println("Error handling client " + clientIP + ": " + e.getMessage());
+            if (!reaped) {
+                RequestLog.log(RequestLog.Level.WARN, "error", clientIP, e.getMessage());
+            }
         } finally {
+            cancelIdleCheck();
+
+            // Unbind from the board so idle boards can be evicted
+            protocolHandler.close();
+            ServerMetrics.connectionClosed();
+
             // Close the connection
             try {
                 socket.close();
-                System.out.println("Client disconnected: " + clientIP);
+                RequestLog.log(RequestLog.Level.INFO, "disconnect", clientIP, null);
             } catch (IOException e) {
-                System.err.println("Error closing socket: " + e.getMessage());
+                RequestLog.log(RequestLog.Level.WARN, "error", clientIP, "closing socket: " + e.getMessage());
             }
         }
     }
 
+    /**
+     * Timer task: close the connection if it has been idle too long,
+     * otherwise check again when it next could be.
+     */
+    private void checkIdle() {
+        if (streaming || socket.isClosed()) {
+            return;
+        }
+        long idle = System.nanoTime() - lastActivity;
+        if (idle < IDLE_NANOS) {
+            idleCheck = timer.schedule(this::checkIdle, IDLE_NANOS - idle, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        reaped = true;
+        ServerMetrics.connectionReaped("idle");
+        RequestLog.log(RequestLog.Level.INFO, "reap", clientIP,
+                "reason=idle seconds=" + TimeUnit.NANOSECONDS.toSeconds(idle));
+        try {
+            socket.close(); // Unblocks readLine in the handler thread
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    private void cancelIdleCheck() {
+        HashedWheelTimer.Timeout check = idleCheck;
+        if (check != null) {
+            check.cancel();
+        }
+    }
+
     /**
      * Send board configuration to client upon connection.
      * Allows client to know board dimensions, note size, and valid colors.
      */
     private void sendBoardConfiguration(PrintWriter output) {
         // Format: BOARD_CONFIG width height noteWidth noteHeight color1,color2,...
-        String config = "BOARD_CONFIG 800 600 100 100 yellow,blue,green,pink,orange,purple,white";
-        output.println(config);
+        output.println("BOARD_CONFIG " + protocolHandler.getBoard().getConfiguration());
     }
 }
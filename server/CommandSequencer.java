@@ -0,0 +1,201 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * CommandSequencer runs one board's mutations on a single writer thread.
+ *
+ * Client threads claim the next sequence number of a pre-allocated ring
+ * of slots, store their command in the slot and publish it; the writer
+ * thread takes every published slot in sequence order, runs the commands
+ * back to back and hands each result to the thread waiting for it. The
+ * sequence numbers are a total order of the board's mutations, and because
+ * only the writer mutates through the sequencer, the board's tile locks are
+ * never contended between client threads: a burst of POSTs costs one
+ * uncontended lock round per command on one warm core instead of many
+ * threads queueing on the same stripes.
+ *
+ * Nothing is allocated per command beyond the command itself: slots are
+ * reused, and each client thread keeps one Waiter for all its commands.
+ * A full ring makes client threads wait for the writer (back pressure).
+ * The writer parks when the ring is empty and is woken by the next publish.
+ *
+ * stop() marks the claim counter, so every command either got a sequence
+ * before the mark, and the writer runs it before exiting, or gets the
+ * mark and runs on its own thread. None is left waiting on a dead writer.
+ *
+ * Enabled with bbs.board.sequencer=true; bbs.board.sequencerSize sets the
+ * ring size, rounded up to a power of two (default 1024).
+ */
+public final class CommandSequencer {
+    static final boolean ENABLED = ServerConfig.flag("board.sequencer", false);
+    private static final int SIZE = Integer.highestOneBit(
+            Math.max(2, ServerConfig.integer("board.sequencerSize", 1024) * 2 - 1));
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // Spins before a waiting client thread parks; most commands finish sooner
+    private static final int SPINS = 100;
+    // Set in claimed by stop(); sequences claimed afterwards carry it
+    private static final long STOPPED = 1L << 62;
+
+    /** The waiting side of a command; one per client thread, reused. */
+    private static final class Waiter {
+        final Thread thread = Thread.currentThread();
+        Object result; // written by the writer before done
+        Throwable failure;
+        volatile boolean done;
+    }
+
+    /** One ring entry; owned by the writer once its sequence is published. */
+    private static final class Slot {
+        Supplier<?> command;
+        Waiter waiter;
+        volatile long published = -1; // sequence stored here, once complete
+    }
+
+    private static final ThreadLocal<Waiter> WAITERS = ThreadLocal.withInitial(Waiter::new);
+
+    private final Slot[] ring = new Slot[SIZE];
+    private final AtomicLong claimed = new AtomicLong(); // next sequence to hand out
+    private volatile long consumed; // slots before this may be reused
+    private volatile boolean sleeping;
+    private volatile long stopAt = Long.MAX_VALUE; // the writer runs sequences below this
+    private final Thread writer;
+
+    private final LongAdder commands = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param name Board name, for the writer thread's name
+     */
+    public CommandSequencer(String name) {
+        for (int i = 0; i < SIZE; i++) {
+            ring[i] = new Slot();
+        }
+        writer = new Thread(this::drain, "sequencer-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Run a command on the writer thread and wait for its result.
+     * An exception or error thrown by the command is rethrown here.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Supplier<T> command) {
+        long sequence = claimed.getAndIncrement();
+        if ((sequence & STOPPED) != 0) {
+            return command.get(); // Board is being discarded; nothing to order against
+        }
+        while (sequence - consumed >= SIZE) {
+            LockSupport.parkNanos(FULL_PARK_NANOS); // Ring full: wait for the writer
+        }
+
+        Waiter waiter = WAITERS.get();
+        waiter.done = false;
+        Slot slot = ring[(int) sequence & (SIZE - 1)];
+        slot.command = command;
+        slot.waiter = waiter;
+        slot.published = sequence;
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+
+        for (int spins = 0; !waiter.done; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        Object result = waiter.result;
+        Throwable failure = waiter.failure;
+        waiter.result = null;
+        waiter.failure = null;
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return (T) result;
+    }
+
+    /**
+     * Stop the writer once the board has no connections left. Commands
+     * already given a sequence still run on the writer before it exits;
+     * later ones run on their callers' threads.
+     */
+    public void stop() {
+        long end;
+        do {
+            end = claimed.get();
+            if ((end & STOPPED) != 0) {
+                return;
+            }
+        } while (!claimed.compareAndSet(end, end | STOPPED));
+        stopAt = end;
+        LockSupport.unpark(writer);
+    }
+
+    /** Whether the writer has run its last command and exited. */
+    boolean isStopped() {
+        return !writer.isAlive();
+    }
+
+    /** Commands run by the writer so far. */
+    public long getCommands() {
+        return commands.sum();
+    }
+
+    /** Wake-ups of the writer that found work; commands / batches is the mean batch. */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Writer thread: run published commands in sequence order, until every
+     * sequence claimed before stop() has run.
+     */
+    private void drain() {
+        long next = 0;
+        while (next < stopAt) {
+            Slot slot = ring[(int) next & (SIZE - 1)];
+            if (slot.published != next) {
+                sleeping = true;
+                if (slot.published != next && next < stopAt) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+
+            batches.increment();
+            long end = next;
+            do {
+                run(slot);
+                end++;
+                slot = ring[(int) end & (SIZE - 1)];
+            } while (slot.published == end);
+            commands.add(end - next);
+            next = end;
+            consumed = next;
+        }
+    }
+
+    private static void run(Slot slot) {
+        Waiter waiter = slot.waiter;
+        try {
+            waiter.result = slot.command.get();
+        } catch (RuntimeException | Error e) {
+            waiter.failure = e; // Rethrown by the client thread; the writer carries on
+        }
+        slot.command = null;
+        slot.waiter = null;
+        waiter.done = true;
+        LockSupport.unpark(waiter.thread);
+    }
+}
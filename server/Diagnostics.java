@@ -0,0 +1,205 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Diagnostics emits Java Flight Recorder events for commands, board
+ * operations and response writes, and logs slow commands.
+ *
+ * Events (category "BBS"; all disabled unless a recording enables them):
+ * - bbs.Command: one per processed command, with its type, board, client,
+ *   response size, error code and the time it spent waiting for board locks
+ * - bbs.BoardOperation: one per locking Board operation, with its name,
+ *   items affected or returned and lock wait
+ * - bbs.ResponseWrite: one per response written to a socket, with the
+ *   client and response size
+ *
+ * With no recording running an event costs an allocation the JIT usually
+ * removes and a check of a static flag, so they stay compiled in. Events
+ * shorter than 1 ms are dropped unless a recording's settings lower the
+ * threshold (e.g. bbs.Command#threshold=0 ms in a .jfc file). Record
+ * from a running server with, for example:
+ *   jcmd &lt;pid&gt; JFR.start name=bbs settings=profile duration=60s filename=bbs.jfr
+ * and the event durations show which commands were slow and whether the
+ * time went to lock waits, the operation itself or the socket.
+ *
+ * Commands taking at least bbs.diagnostics.slowCommandMillis (default
+ * 500, 0 disables) are also written to the request log at WARN with the
+ * full command line, whatever the log sampling.
+ *
+ * Lock wait is attributed per thread: Board reports each wait here, and an
+ * event's lock wait is the increase over its lifetime.
+ */
+public final class Diagnostics {
+    private static final long SLOW_COMMAND_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            ServerConfig.longValue("diagnostics.slowCommandMillis", 500));
+
+    // Total lock wait of the current thread, in nanoseconds
+    private static final ThreadLocal<long[]> LOCK_WAIT = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Name("bbs.Command")
+    @Label("Command")
+    @Category("BBS")
+    @Description("One client command, from parsing to the response being ready")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class CommandEvent extends Event {
+        @Label("Command")
+        String command;
+
+        @Label("Board")
+        String board;
+
+        @Label("Client")
+        String client;
+
+        @Label("Response Size")
+        @Description("Characters in the response, excluding any streamed body")
+        int resultSize;
+
+        @Label("Error")
+        String error;
+
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+
+        private transient long startNanos;
+        private transient long lockWaitStart;
+    }
+
+    @Name("bbs.BoardOperation")
+    @Label("Board Operation")
+    @Category("BBS")
+    @Description("One Board operation that takes tile locks")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class BoardEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Items")
+        @Description("Notes or pins returned, added or removed")
+        int items;
+
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long lockWait;
+
+        private transient long lockWaitStart;
+
+        /** Record the operation's items and lock wait and commit, if enabled. */
+        void finish(String operation, int items) {
+            end();
+            if (shouldCommit()) {
+                this.operation = operation;
+                this.items = items;
+                this.lockWait = lockWaitNanos() - lockWaitStart;
+                commit();
+            }
+        }
+    }
+
+    @Name("bbs.ResponseWrite")
+    @Label("Response Write")
+    @Category("BBS")
+    @Description("Writing one response, including any streamed body, to a client socket")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class WriteEvent extends Event {
+        @Label("Client")
+        String client;
+
+        @Label("Response Size")
+        @Description("Characters in the status line or data, excluding any streamed body")
+        int size;
+
+        @Label("Streamed")
+        boolean streamed;
+    }
+
+    private Diagnostics() {
+    }
+
+    /** Called by Board with the time one operation waited for its locks. */
+    static void lockWaited(long nanos) {
+        LOCK_WAIT.get()[0] += nanos;
+    }
+
+    /** Lock wait accumulated by the current thread so far. */
+    static long lockWaitNanos() {
+        return LOCK_WAIT.get()[0];
+    }
+
+    /** Start timing a Board operation; finish it once its locks are released. */
+    static BoardEvent beginBoard() {
+        BoardEvent event = new BoardEvent();
+        if (event.isEnabled()) {
+            event.lockWaitStart = lockWaitNanos();
+            event.begin();
+        }
+        return event;
+    }
+
+    /** Start timing a command; see commandFinished. */
+    static CommandEvent beginCommand() {
+        CommandEvent event = new CommandEvent();
+        event.startNanos = System.nanoTime();
+        event.lockWaitStart = lockWaitNanos();
+        event.begin();
+        return event;
+    }
+
+    /** Report a processed command: commit its event and log it if slow. */
+    static void commandFinished(CommandEvent event, String commandType, String command, String board,
+            String client, ProtocolResponse response) {
+        event.end();
+        long nanos = System.nanoTime() - event.startNanos;
+        boolean slow = SLOW_COMMAND_NANOS > 0 && nanos >= SLOW_COMMAND_NANOS;
+        if (!slow && !event.shouldCommit()) {
+            return;
+        }
+        long lockWait = lockWaitNanos() - event.lockWaitStart;
+        if (event.shouldCommit()) {
+            event.command = commandType;
+            event.board = board;
+            event.client = client;
+            event.resultSize = response.size();
+            event.error = response.getErrorCode();
+            event.lockWait = lockWait;
+            event.commit();
+        }
+        if (slow) {
+            RequestLog.slowCommand(client, command, "board=" + board + " micros="
+                    + TimeUnit.NANOSECONDS.toMicros(nanos) + " lockWaitMicros="
+                    + TimeUnit.NANOSECONDS.toMicros(lockWait) + " size=" + response.size()
+                    + (response.getErrorCode() != null ? " error=" + response.getErrorCode() : ""));
+        }
+    }
+
+    /** Start timing a response write; see writeFinished. */
+    static WriteEvent beginWrite() {
+        WriteEvent event = new WriteEvent();
+        event.begin();
+        return event;
+    }
+
+    static void writeFinished(WriteEvent event, String client, ProtocolResponse response) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = client;
+            event.size = response.size();
+            event.streamed = response.getStream() != null;
+            event.commit();
+        }
+    }
+}
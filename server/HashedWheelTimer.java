@@ -0,0 +1,224 @@
+package server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HashedWheelTimer runs many coarse timeouts from a single thread.
+ *
+ * Time is divided into ticks and timeouts are hashed into the slot of the
+ * wheel for their deadline tick, with a round count for deadlines more
+ * than one revolution away. Each tick the worker thread expires one slot.
+ * Scheduling and cancelling are O(1) and lock-free (a state flag and a
+ * queue hand-off to the worker), so timers can be created per connection or
+ * per note without one thread or heap entry per socket and without any
+ * contention between the threads that schedule them. Cancelling drops
+ * the task at once and the worker unlinks its entry on the next tick, so
+ * nothing a cancelled task captured stays reachable from the wheel until
+ * its slot comes round.
+ *
+ * Timeouts fire up to one tick late and run on the timer thread, so tasks
+ * must be short (e.g. close a socket, remove a note) and must not block.
+ */
+public final class HashedWheelTimer {
+    /** Handle to a scheduled task. */
+    public interface Timeout {
+        /**
+         * Prevent the task from running.
+         *
+         * @return false if it has already run or been cancelled
+         */
+        boolean cancel();
+    }
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    // Upper bound on new timeouts moved into the wheel per tick, so a
+    // burst of scheduling cannot delay expiry for long
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Slot[] wheel;
+    private final int mask;
+    private final Queue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick; // worker thread only
+
+    /** A scheduled task, linked into one wheel slot. */
+    private final class Entry implements Timeout {
+        Runnable task; // dropped on cancel
+        final long deadline; // nanos since startTime
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        long rounds;
+        Entry prev;
+        Entry next;
+        Slot slot;
+
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            // Release what the task holds even while this handle is kept;
+            // the worker unlinks the entry itself on its next tick
+            task = null;
+            cancelled.add(this);
+            return true;
+        }
+    }
+
+    /** Doubly linked list of entries; touched only by the worker thread. */
+    private static final class Slot {
+        Entry head;
+        Entry tail;
+
+        void add(Entry e) {
+            e.slot = this;
+            e.prev = tail;
+            if (tail == null) {
+                head = e;
+            } else {
+                tail.next = e;
+            }
+            tail = e;
+        }
+
+        void remove(Entry e) {
+            if (e.prev == null) {
+                head = e.next;
+            } else {
+                e.prev.next = e.next;
+            }
+            if (e.next == null) {
+                tail = e.prev;
+            } else {
+                e.next.prev = e.prev;
+            }
+            e.prev = null;
+            e.next = null;
+            e.slot = null;
+        }
+    }
+
+    /**
+     * @param name       Name of the timer thread
+     * @param tick       Tick duration, i.e. the timer's resolution
+     * @param unit       Unit of tick
+     * @param wheelSize  Number of slots, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize) {
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tick));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.wheel = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Run a task once after a delay.
+     *
+     * @return Handle that can cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + Math.max(0, unit.toNanos(delay)) - startTime;
+        Entry entry = new Entry(task, deadline);
+        if (running) {
+            incoming.add(entry);
+        }
+        return entry;
+    }
+
+    /** Stop the timer thread; pending tasks never run. */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = (tick + 1) * tickNanos;
+            long sleep = deadline - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            transferIncoming();
+            removeCancelled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Entry e = incoming.poll();
+            if (e == null) {
+                return;
+            }
+            if (e.state.get() != PENDING) {
+                continue;
+            }
+            long due = e.deadline / tickNanos;
+            e.rounds = (due - tick) / wheel.length;
+            // Already overdue entries go into the current slot
+            wheel[(int) (Math.max(due, tick) & mask)].add(e);
+        }
+    }
+
+    /** Unlink cancelled entries, so their tasks become unreachable. */
+    private void removeCancelled() {
+        Entry e;
+        while ((e = cancelled.poll()) != null) {
+            if (e.slot != null) {
+                e.slot.remove(e);
+            }
+        }
+    }
+
+    private void expire(Slot slot) {
+        Entry e = slot.head;
+        while (e != null) {
+            Entry next = e.next;
+            if (e.state.get() == CANCELLED) {
+                slot.remove(e);
+            } else if (e.rounds <= 0) {
+                slot.remove(e);
+                if (e.state.compareAndSet(PENDING, EXPIRED)) {
+                    try {
+                        e.task.run();
+                    } catch (RuntimeException ex) {
+                        System.err.println("Timer task failed: " + ex);
+                    }
+                }
+            } else {
+                e.rounds--;
+            }
+            e = next;
+        }
+    }
+}
@@ -0,0 +1,644 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HttpGateway serves the boards as JSON over HTTP, for clients such as web
+ * dashboards that cannot speak the line protocol.
+ *
+ * Resources (names as for USE, IDs and coordinates as in the protocol):
+ * GET    /boards/&lt;board&gt;                 dimensions, colors, version and counts
+ * GET    /boards/&lt;board&gt;/notes           notes; ?color= ?contains=x,y ?region=x,y,w,h ?refersTo=
+ * POST   /boards/&lt;board&gt;/notes           {"x","y","color","message","ttl"} (POST)
+ * GET    /boards/&lt;board&gt;/notes/&lt;id&gt;      one note (GET id=)
+ * PUT    /boards/&lt;board&gt;/notes/&lt;id&gt;      {"message"} (EDIT)
+ * DELETE /boards/&lt;board&gt;/notes/&lt;id&gt;      (DELETE)
+ * GET    /boards/&lt;board&gt;/pins            pins; ?region=x,y,w,h
+ * POST   /boards/&lt;board&gt;/pins            {"x","y"} (PIN)
+ * DELETE /boards/&lt;board&gt;/pins/&lt;x&gt;/&lt;y&gt;    (UNPIN)
+ * POST   /boards/&lt;board&gt;/shake           (SHAKE)
+ * POST   /boards/&lt;board&gt;/clear           (CLEAR)
+ *
+ * HEAD is answered wherever GET is, with the same headers and no body.
+ *
+ * Reads go straight to the in-process Board. They never create a board:
+ * a board that is neither in memory nor in a snapshot is a 404, and only
+ * mutations (as USE does on the wire) bring a new board into being. A
+ * read that is not answered 304 costs what a protocol GET costs from the
+ * client's token bucket and takes a LoadShedder permit while it runs.
+ *
+ * Every GET carries a weak ETag made of the board version and content
+ * hash (as GET VERSION reports them), read before the board is, so a
+ * representation is never labelled newer than it is. A GET whose If-None-Match holds the current tag is
+ * answered 304 Not Modified from the two counters alone: nothing is
+ * locked, copied or serialized. Lists of at least bbs.http.streamThreshold
+ * items (default 1000) are written as they are serialized, with chunked
+ * transfer encoding, instead of being built in memory first.
+ *
+ * Mutations run through a ProtocolHandler bound to the board, so they are
+ * validated, sequenced, shed and measured exactly like protocol commands,
+ * and are charged to one token bucket per client address, shared with its
+ * reads, as a connection's commands are; RFC error codes come back as {"error","message"} with a
+ * matching HTTP status. As on the wire, runs of whitespace in a message collapse to one
+ * space, and messages may not hold line breaks.
+ *
+ * Enabled with bbs.http.port; bbs.http.threads sets the worker threads
+ * (default 8).
+ */
+public final class HttpGateway {
+    static final int PORT = ServerConfig.integer("http.port", 0);
+    private static final int THREADS = Math.max(1, ServerConfig.integer("http.threads", 8));
+    private static final int STREAM_THRESHOLD = ServerConfig.integer("http.streamThreshold", 1000);
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final int MAX_LIMITERS = 4096; // client addresses with a token bucket
+
+    private final BoardRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Map<String, TokenBucket> limiters; // by client address, least recently used first
+    private final Supplier<TokenBucket> newLimiter;
+
+    /** The body of a read, served once the board has changed since the client's copy. */
+    private interface Read {
+        void serve(Board board, String tag) throws IOException, HttpError;
+    }
+
+    /** A JSON document written to the response as it is produced. */
+    private interface Body {
+        void writeTo(Appendable out) throws IOException;
+    }
+
+    /** A request that cannot be served; becomes an error response. */
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+        final String code;
+
+        HttpError(int status, String code, String message) {
+            super(message, null, false, false);
+            this.status = status;
+            this.code = code;
+        }
+    }
+
+    private HttpGateway(BoardRegistry registry, int port, Supplier<TokenBucket> newLimiter) throws IOException {
+        this.registry = registry;
+        this.newLimiter = newLimiter;
+        this.limiters = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > MAX_LIMITERS;
+            }
+        };
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "http-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Headers and body are separate writes; without TCP_NODELAY each
+        // response waits out the client's delayed ACK (about 40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/boards/", this::handle);
+        server.setExecutor(workers);
+    }
+
+    /**
+     * Start serving the registry's boards.
+     *
+     * @param registry The server's named boards
+     * @param port     TCP port to listen on
+     * @throws IOException if the port cannot be bound
+     */
+    public static HttpGateway start(BoardRegistry registry, int port) throws IOException {
+        return start(registry, port, ProtocolHandler::newRateLimiter);
+    }
+
+    /** Start with each client's token bucket made by newLimiter, which may return null. */
+    static HttpGateway start(BoardRegistry registry, int port, Supplier<TokenBucket> newLimiter) throws IOException {
+        HttpGateway gateway = new HttpGateway(registry, port, newLimiter);
+        gateway.server.start();
+        return gateway;
+    }
+
+    /** The port the gateway listens on, e.g. the one chosen for port 0. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** Stop accepting requests, letting those in progress finish for up to a second. */
+    public void stop() {
+        server.stop(1);
+        workers.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // Read the body first: the JDK server drops a connection whose
+            // request was not read to the end before the response
+            byte[] body = readBody(exchange);
+            String[] path = exchange.getRequestURI().getRawPath().substring("/boards/".length()).split("/");
+            if (!BoardRegistry.isValidName(path[0])) {
+                throw new HttpError(404, "NOT_FOUND", "No such resource");
+            }
+            route(exchange, path, body);
+        } catch (HttpError e) {
+            sendError(exchange, e.status, e.code, e.getMessage());
+        } catch (IOException e) {
+            // Client went away mid-response; nothing left to tell it
+        } catch (RuntimeException e) {
+            RequestLog.log(RequestLog.Level.ERROR, "http", null, String.valueOf(e));
+            try {
+                sendError(exchange, 500, "INTERNAL_ERROR", "Internal error");
+            } catch (IOException | RuntimeException ignored) {
+                // The response had already started
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String[] path, byte[] body) throws IOException, HttpError {
+        String method = exchange.getRequestMethod();
+        String resource = path.length > 1 ? path[1] : "";
+        switch (path.length + ":" + resource) {
+            case "1:":
+                allow(exchange, "GET, HEAD");
+                getBoard(exchange, path[0]);
+                return;
+            case "2:notes":
+                allow(exchange, "GET, HEAD, POST");
+                if (isRead(method)) {
+                    getNotes(exchange, path[0]);
+                } else {
+                    postNote(exchange, path[0], body);
+                }
+                return;
+            case "3:notes":
+                allow(exchange, "GET, HEAD, PUT, DELETE");
+                long id = number(path[2]);
+                if (isRead(method)) {
+                    getNote(exchange, path[0], id);
+                } else if (method.equals("PUT")) {
+                    String message = string(object(body), "message", "");
+                    mutate(exchange, path[0], 200, "EDIT " + id + " " + checkMessage(message));
+                } else {
+                    mutate(exchange, path[0], 200, "DELETE " + id);
+                }
+                return;
+            case "2:pins":
+                allow(exchange, "GET, HEAD, POST");
+                if (isRead(method)) {
+                    getPins(exchange, path[0]);
+                } else {
+                    Map<String, Object> pin = object(body);
+                    mutate(exchange, path[0], 200, "PIN " + integer(pin, "x") + " " + integer(pin, "y"));
+                }
+                return;
+            case "4:pins":
+                allow(exchange, "DELETE");
+                mutate(exchange, path[0], 200, "UNPIN " + number(path[2]) + " " + number(path[3]));
+                return;
+            case "2:shake":
+                allow(exchange, "POST");
+                mutate(exchange, path[0], 200, "SHAKE");
+                return;
+            case "2:clear":
+                allow(exchange, "POST");
+                mutate(exchange, path[0], 200, "CLEAR");
+                return;
+            default:
+                throw new HttpError(404, "NOT_FOUND", "No such resource");
+        }
+    }
+
+    /** GET, or HEAD, which is answered the same way without the body. */
+    private static boolean isRead(String method) {
+        return method.equals("GET") || method.equals("HEAD");
+    }
+
+    /** Reject a method the resource does not support with 405 and an Allow header. */
+    private static void allow(HttpExchange exchange, String methods) throws HttpError {
+        if (!(", " + methods + ",").contains(", " + exchange.getRequestMethod() + ",")) {
+            exchange.getResponseHeaders().set("Allow", methods);
+            throw new HttpError(405, "METHOD_NOT_ALLOWED", "Allowed: " + methods);
+        }
+    }
+
+    /**
+     * Serve a GET or HEAD of an existing board. A 304 is free; anything
+     * else is charged to the client's token bucket as a protocol GET and
+     * admitted by LoadShedder, and is answered 429 or 503 as a rejected
+     * mutation would be.
+     */
+    private void read(HttpExchange exchange, String name, Read read) throws IOException, HttpError {
+        Board board = registry.acquireExisting(name);
+        if (board == null) {
+            // Reads never create a board
+            throw new HttpError(404, "NOT_FOUND", "No board named " + name);
+        }
+        try {
+            String tag = etag(board);
+            if (notModified(exchange, tag)) {
+                return;
+            }
+            ProtocolResponse rejected = ProtocolHandler.charge(limiter(client(exchange)), "GET");
+            String overload = rejected == null ? LoadShedder.admit() : null;
+            if (overload != null) {
+                rejected = ProtocolHandler.overloaded(overload);
+            }
+            if (rejected != null) {
+                throw new HttpError(statusOf(rejected.getErrorCode()), rejected.getErrorCode(),
+                        rejected.getErrorMessage());
+            }
+            try {
+                read.serve(board, tag);
+            } finally {
+                LoadShedder.release();
+            }
+        } finally {
+            registry.release(name);
+        }
+    }
+
+    /** GET /boards/&lt;board&gt;: configuration, version and counts. */
+    private void getBoard(HttpExchange exchange, String name) throws IOException, HttpError {
+        read(exchange, name, (board, tag) -> {
+            StringBuilder json = new StringBuilder("{\"name\":");
+            Json.quote(json, name);
+            json.append(",\"width\":").append(board.getWidth()).append(",\"height\":").append(board.getHeight())
+                    .append(",\"noteWidth\":").append(board.getNoteWidth()).append(",\"noteHeight\":")
+                    .append(board.getNoteHeight()).append(",\"colors\":[");
+            String separator = "";
+            for (String color : board.getValidColors()) {
+                json.append(separator);
+                Json.quote(json, color);
+                separator = ",";
+            }
+            json.append("],\"version\":").append(board.getVersion()).append(",\"notes\":")
+                    .append(board.getNoteCount()).append(",\"pins\":").append(board.getPinCount()).append('}');
+            send(exchange, 200, tag, json.toString());
+        });
+    }
+
+    /** GET /boards/&lt;board&gt;/notes with the GET command's filters. */
+    private void getNotes(HttpExchange exchange, String name) throws IOException, HttpError {
+        Map<String, String> query = query(exchange);
+        int[] contains = ints(query.get("contains"), 2, "contains");
+        int[] region = region(query.get("region"));
+        read(exchange, name, (board, tag) -> {
+            int[] clipped = region == null ? null : board.clipRegion(region);
+            List<Note> notes = region != null && clipped == null ? List.of()
+                    : board.getNotes(query.get("color"), contains == null ? null : contains[0],
+                            contains == null ? null : contains[1], query.get("refersTo"), clipped);
+            sendList(exchange, tag, notes.size(), out -> {
+                out.append("{\"notes\":[");
+                for (int i = 0; i < notes.size(); i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    Json.note(out, notes.get(i));
+                }
+                out.append("]}");
+            });
+        });
+    }
+
+    /** GET /boards/&lt;board&gt;/notes/&lt;id&gt;. */
+    private void getNote(HttpExchange exchange, String name, long id) throws IOException, HttpError {
+        read(exchange, name, (board, tag) -> {
+            Note note = board.getNote(id);
+            if (note == null) {
+                throw new HttpError(404, "NOTE_NOT_FOUND", "No note with ID " + id);
+            }
+            StringBuilder json = new StringBuilder();
+            Json.note(json, note);
+            send(exchange, 200, tag, json.toString());
+        });
+    }
+
+    /** GET /boards/&lt;board&gt;/pins, optionally within a region. */
+    private void getPins(HttpExchange exchange, String name) throws IOException, HttpError {
+        int[] region = region(query(exchange).get("region"));
+        read(exchange, name, (board, tag) -> {
+            int[] clipped = region == null ? null : board.clipRegion(region);
+            List<int[]> pins = region != null && clipped == null ? List.of() : board.getPins(clipped);
+            sendList(exchange, tag, pins.size(), out -> {
+                out.append("{\"pins\":[");
+                for (int i = 0; i < pins.size(); i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    Json.pin(out, pins.get(i));
+                }
+                out.append("]}");
+            });
+        });
+    }
+
+    /** POST /boards/&lt;board&gt;/notes; answers 201 with the new note's ID. */
+    private void postNote(HttpExchange exchange, String name, byte[] body) throws IOException, HttpError {
+        Map<String, Object> note = object(body);
+        String color = string(note, "color", null);
+        if (color == null || color.isEmpty() || !color.equals(color.replaceAll("[\\s=]", ""))) {
+            throw new HttpError(400, "INVALID_FORMAT", "color must be one word without '='");
+        }
+        Object ttl = note.get("ttl");
+        if (ttl != null && !(ttl instanceof Long)) {
+            throw new HttpError(400, "INVALID_FORMAT", "ttl must be an integer");
+        }
+        mutate(exchange, name, 201, "POST " + integer(note, "x") + " " + integer(note, "y")
+                + (ttl != null ? " ttl=" + ttl : "") + " " + color + " " + checkMessage(string(note, "message", "")));
+    }
+
+    /**
+     * Run a mutation as a protocol command and answer with its status,
+     * e.g. {"status":"NOTE_POSTED","id":7}, or its RFC error.
+     */
+    private void mutate(HttpExchange exchange, String name, int status, String command)
+            throws IOException, HttpError {
+        String client = client(exchange);
+        ProtocolHandler handler = new ProtocolHandler(registry, client, name, limiter(client));
+        ProtocolResponse response;
+        try {
+            response = handler.processCommand(command);
+        } finally {
+            handler.close();
+        }
+        if (!response.isSuccess()) {
+            throw new HttpError(statusOf(response.getErrorCode()), response.getErrorCode(),
+                    response.getErrorMessage());
+        }
+
+        // OK <STATUS> [<id>]
+        String[] words = response.toString().split(" ");
+        StringBuilder json = new StringBuilder("{\"status\":");
+        Json.quote(json, words.length > 1 ? words[1] : "OK");
+        if (words.length > 2) {
+            json.append(",\"id\":").append(words[2]);
+            exchange.getResponseHeaders().set("Location",
+                    "/boards/" + name + "/notes/" + words[2]);
+        }
+        json.append('}');
+        send(exchange, status, null, json.toString());
+    }
+
+    private static String client(HttpExchange exchange) {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    /** The client's token bucket, kept across requests; null if rate limiting is off. */
+    private TokenBucket limiter(String client) {
+        synchronized (limiters) {
+            return limiters.computeIfAbsent(client, address -> newLimiter.get());
+        }
+    }
+
+    /** HTTP status for an RFC Section 9.1 error code. */
+    private static int statusOf(String code) {
+        switch (code) {
+            case "NOTE_NOT_FOUND":
+            case "PIN_NOT_FOUND":
+                return 404;
+            case "COMPLETE_OVERLAP":
+            case "NO_NOTE_AT_COORDINATE":
+            case "BOARD_FULL":
+                return 409;
+            case "READ_ONLY":
+                return 403;
+            case "RATE_LIMITED":
+                return 429;
+            case "OVERLOADED":
+                return 503;
+            default:
+                return 400;
+        }
+    }
+
+    /** Weak ETag of the board's current contents: W/"&lt;version&gt;-&lt;content hash&gt;". */
+    private static String etag(Board board) {
+        return "W/\"" + board.getVersion() + "-" + String.format("%016x", board.getContentHash()) + "\"";
+    }
+
+    /** Answer 304 if If-None-Match holds the tag; weak comparison, as for GET. */
+    private static boolean notModified(HttpExchange exchange, String tag) throws IOException {
+        String header = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (header == null) {
+            return false;
+        }
+        String opaque = tag.substring(2);
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(tag) || candidate.equals(opaque)) {
+                Headers headers = exchange.getResponseHeaders();
+                headers.set("ETag", tag);
+                headers.set("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send a list: built in memory and sent with a Content-Length when
+     * short, otherwise streamed with chunked encoding as it is serialized.
+     */
+    private static void sendList(HttpExchange exchange, String tag, int items, Body body) throws IOException {
+        if (items < STREAM_THRESHOLD || isHead(exchange)) {
+            StringBuilder json = new StringBuilder(64 + items * 64);
+            body.writeTo(json);
+            send(exchange, 200, tag, json.toString());
+            return;
+        }
+        headers(exchange, tag);
+        exchange.sendResponseHeaders(200, 0); // 0: chunked
+        // Closing ends the chunked body and keeps the connection reusable
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8), 16 * 1024)) {
+            body.writeTo(out);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String tag, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        headers(exchange, tag);
+        if (isHead(exchange)) {
+            // The length GET would send; there is no body to delimit
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(bytes.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static boolean isHead(HttpExchange exchange) {
+        return exchange.getRequestMethod().equals("HEAD");
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String code, String message)
+            throws IOException {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.quote(json, code);
+        json.append(",\"message\":");
+        Json.quote(json, message == null ? "" : message);
+        json.append('}');
+        send(exchange, status, null, json.toString());
+    }
+
+    private static void headers(HttpExchange exchange, String tag) {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", JSON);
+        if (tag != null) {
+            headers.set("ETag", tag);
+            headers.set("Cache-Control", "no-cache"); // Revalidate every time; 304s are cheap
+        }
+    }
+
+    /** Read the whole request body; usually empty. */
+    private static byte[] readBody(HttpExchange exchange) throws IOException, HttpError {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new HttpError(413, "INVALID_FORMAT", "Request body over " + MAX_BODY_BYTES + " bytes");
+                }
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /** Parse a request body as one flat JSON object. */
+    private static Map<String, Object> object(byte[] body) throws HttpError {
+        try {
+            return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, "INVALID_FORMAT", "Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private static long integer(Map<String, Object> object, String key) throws HttpError {
+        Object value = object.get(key);
+        if (!(value instanceof Long)) {
+            throw new HttpError(400, "INVALID_FORMAT", key + " must be an integer");
+        }
+        return (Long) value;
+    }
+
+    private static String string(Map<String, Object> object, String key, String defaultValue) throws HttpError {
+        Object value = object.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new HttpError(400, "INVALID_FORMAT", key + " must be a string");
+        }
+        return (String) value;
+    }
+
+    /** A message must fit on one protocol line. */
+    private static String checkMessage(String message) throws HttpError {
+        if (message.indexOf('\n') >= 0 || message.indexOf('\r') >= 0) {
+            throw new HttpError(400, "INVALID_FORMAT", "message may not contain line breaks");
+        }
+        return message;
+    }
+
+    /** A path segment that must be an integer. */
+    private static long number(String segment) throws HttpError {
+        try {
+            return Long.parseLong(segment);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "INVALID_FORMAT", segment + " is not an integer");
+        }
+    }
+
+    /** Comma-separated integers, e.g. contains=10,20; null if absent. */
+    private static int[] ints(String value, int count, String name) throws HttpError {
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split(",");
+        if (fields.length != count) {
+            throw new HttpError(400, "INVALID_FORMAT", name + "= requires " + count + " comma-separated integers");
+        }
+        int[] result = new int[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                result[i] = Integer.parseInt(fields[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "INVALID_FORMAT", name + "= requires " + count + " comma-separated integers");
+        }
+        return result;
+    }
+
+    /**
+     * region=x,y,w,h as the GET command checks it; null if absent. The
+     * caller clips it to the board, and a region entirely off the board
+     * yields an empty list without locking anything.
+     */
+    private static int[] region(String value) throws HttpError {
+        int[] region = ints(value, 4, "region");
+        if (region == null) {
+            return null;
+        }
+        if (region[0] < 0 || region[1] < 0 || region[2] <= 0 || region[3] <= 0) {
+            throw new HttpError(400, "INVALID_FORMAT", "region= requires x,y >= 0 and w,h > 0");
+        }
+        // Keep x + w and y + h from overflowing
+        region[2] = Math.min(region[2], Integer.MAX_VALUE - region[0]);
+        region[3] = Math.min(region[3], Integer.MAX_VALUE - region[1]);
+        return region;
+    }
+
+    /** Decoded query parameters; the last of a repeated name wins. */
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+}
@@ -0,0 +1,215 @@
+package server;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Json writes and reads the small JSON documents of the HTTP gateway.
+ *
+ * Writing appends straight to the output, so a large list can be streamed
+ * without building it as a string first. Reading accepts one flat object
+ * whose values are strings, integers, booleans or null, which is all a
+ * gateway request body holds; anything else is rejected.
+ */
+final class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Json() {
+    }
+
+    /** Append a string as a quoted, escaped JSON string. */
+    static void quote(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /** Append a note as {"id":..,"x":..,"y":..,"color":..,"message":..}. */
+    static void note(Appendable out, Note note) throws IOException {
+        out.append("{\"id\":").append(String.valueOf(note.getId()))
+                .append(",\"x\":").append(String.valueOf(note.getX()))
+                .append(",\"y\":").append(String.valueOf(note.getY()))
+                .append(",\"color\":");
+        quote(out, note.getColor());
+        out.append(",\"message\":");
+        quote(out, note.getMessage());
+        out.append('}');
+    }
+
+    /** Append a pin as {"x":..,"y":..}. */
+    static void pin(Appendable out, int[] pin) throws IOException {
+        out.append("{\"x\":").append(String.valueOf(pin[0])).append(",\"y\":").append(String.valueOf(pin[1]))
+                .append('}');
+    }
+
+    /**
+     * Parse one flat JSON object. Integers become Long, true and false
+     * Boolean, null null.
+     *
+     * @throws IllegalArgumentException if the text is not such an object
+     */
+    static Map<String, Object> parseObject(String text) {
+        Parser parser = new Parser(text);
+        Map<String, Object> object = new LinkedHashMap<>();
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String key = parser.string();
+                parser.expect(':');
+                object.put(key, parser.value());
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.skipSpace();
+        if (parser.pos != text.length()) {
+            throw new IllegalArgumentException("Unexpected text after the object");
+        }
+        return object;
+    }
+
+    /** Cursor over the text being parsed. */
+    private static final class Parser {
+        final String text;
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void skipSpace() {
+            while (pos < text.length() && " \t\r\n".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at offset " + pos);
+            }
+        }
+
+        Object value() {
+            skipSpace();
+            if (pos >= text.length()) {
+                throw new IllegalArgumentException("Missing value");
+            }
+            char c = text.charAt(pos);
+            if (c == '"') {
+                return string();
+            }
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                return number();
+            }
+            for (String literal : new String[] { "true", "false", "null" }) {
+                if (text.startsWith(literal, pos)) {
+                    pos += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            throw new IllegalArgumentException("Unsupported value at offset " + pos);
+        }
+
+        Long number() {
+            int start = pos;
+            if (text.charAt(pos) == '-') {
+                pos++;
+            }
+            while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos < text.length() && ".eE".indexOf(text.charAt(pos)) >= 0) {
+                throw new IllegalArgumentException("Only integers are accepted, at offset " + start);
+            }
+            try {
+                return Long.parseLong(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number at offset " + start);
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Truncated \\u escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Invalid \\u escape at offset " + pos);
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        value.append(escaped); // \" \\ \/
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+    }
+}
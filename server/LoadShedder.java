@@ -0,0 +1,121 @@
+package server;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadShedder rejects board commands quickly when the server is overloaded,
+ * so the commands it does accept keep their latency.
+ *
+ * Two signals trigger shedding, each off unless its threshold is set:
+ * - Queueing delay: board commands run under a bounded number of permits
+ *   (bbs.shed.maxConcurrent, default 4 per CPU, at least 8). A command
+ *   that cannot get a permit within bbs.shed.queueMillis is rejected
+ *   instead of waiting longer.
+ * - Lock wait: board lock waits are sampled over 100 ms intervals. If even
+ *   the shortest wait in an interval exceeded bbs.shed.lockWaitMillis,
+ *   the stripes are persistently congested rather than briefly contended,
+ *   and board commands are rejected for the next interval. Using the
+ *   minimum, as CoDel does, ignores single long waits such as one SHAKE.
+ *
+ * Rejected commands get ERROR OVERLOADED without touching the board.
+ */
+public final class LoadShedder {
+    private static final long QUEUE_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            ServerConfig.integer("shed.queueMillis", 0));
+    private static final long LOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            ServerConfig.integer("shed.lockWaitMillis", 0));
+    private static final int MAX_CONCURRENT = ServerConfig.integer("shed.maxConcurrent",
+            Math.max(8, 4 * Runtime.getRuntime().availableProcessors()));
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Semaphore permits = new Semaphore(MAX_CONCURRENT);
+
+    // Current lock-wait interval
+    private static final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private static final AtomicLong intervalMinWait = new AtomicLong(Long.MAX_VALUE);
+    private static volatile boolean congested;
+
+    private static final LongAdder shedQueue = new LongAdder();
+    private static final LongAdder shedLockWait = new LongAdder();
+
+    private LoadShedder() {
+    }
+
+    /**
+     * Admit a board command. If admitted the caller must call release()
+     * when the command is done.
+     *
+     * @return null if admitted, otherwise the reason for rejection
+     */
+    public static String admit() {
+        if (LOCK_WAIT_NANOS > 0 && isCongested()) {
+            shedLockWait.increment();
+            return "lock wait above " + TimeUnit.NANOSECONDS.toMillis(LOCK_WAIT_NANOS) + " ms";
+        }
+        if (QUEUE_NANOS <= 0) {
+            return null;
+        }
+        try {
+            if (permits.tryAcquire(QUEUE_NANOS, TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        shedQueue.increment();
+        return "queued longer than " + TimeUnit.NANOSECONDS.toMillis(QUEUE_NANOS) + " ms";
+    }
+
+    /** Return the permit taken by a successful admit(). */
+    public static void release() {
+        if (QUEUE_NANOS > 0) {
+            permits.release();
+        }
+    }
+
+    /** Feed one board lock wait; called by Board for every acquisition. */
+    public static void observeLockWait(long nanos) {
+        if (LOCK_WAIT_NANOS > 0) {
+            rollInterval(System.nanoTime());
+            intervalMinWait.accumulateAndGet(nanos, Math::min);
+        }
+    }
+
+    /** Commands rejected for queueing delay. */
+    public static long getShedQueue() {
+        return shedQueue.sum();
+    }
+
+    /** Commands rejected for lock congestion. */
+    public static long getShedLockWait() {
+        return shedLockWait.sum();
+    }
+
+    /** Commands currently holding a permit. */
+    public static int getInFlight() {
+        return MAX_CONCURRENT - permits.availablePermits();
+    }
+
+    private static boolean isCongested() {
+        rollInterval(System.nanoTime());
+        return congested;
+    }
+
+    /**
+     * Close the current interval once it is over. An interval with no lock
+     * samples (e.g. everything was shed) counts as uncongested, so shedding
+     * stops on its own when load drops.
+     */
+    private static void rollInterval(long now) {
+        long start = intervalStart.get();
+        if (now - start < INTERVAL_NANOS || !intervalStart.compareAndSet(start, now)) {
+            return;
+        }
+        long minWait = intervalMinWait.getAndSet(Long.MAX_VALUE);
+        congested = minWait != Long.MAX_VALUE && minWait > LOCK_WAIT_NANOS
+                && now - start < 2 * INTERVAL_NANOS; // stale intervals do not count
+    }
+}
@@ -1,3 +1,5 @@
+package server;
+
 /**
  * Note represents a single note on the bulletin board.
  * 
@@ -7,6 +9,10 @@
  * - Color selected from server's predefined palette
  * - Free-form text content (message)
  * - Zero or more associated pins (tracked separately in Board)
+ * - Server-generated 64-bit ID, assigned when the note is added to a board
+ *   and stable for its lifetime (including snapshots and replicas)
+ * - Optional expiry time (POST ttl=), after which the board removes the
+ *   note unless it is pinned
  * 
  * Per RFC Section 4.1 - Coordinate System:
  * - Origin (0,0) at upper-left corner
@@ -21,6 +27,22 @@ public class Note {
     private final String color;
     private final String message;
 
+    // Assigned by the board; increases with insertion, so it also orders
+    // query results. 0 until the note is added.
+    private long id;
+
+    // Wall-clock expiry in milliseconds, or 0 for a note that never
+    // expires; set before the note is added
+    private long expiresAt;
+
+    // Pending expiry on the board's timer; guarded by the note's tiles
+    HashedWheelTimer.Timeout expiry;
+
+    // Read since the board last considered evicting it (LRU eviction).
+    // Set by readers without locking; a lost update only costs the note
+    // its second chance.
+    boolean referenced;
+
     /**
      * Create a new note with specified properties.
      * 
@@ -65,6 +87,54 @@ public class Note {
         return message;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    /** Wall-clock expiry in milliseconds, or 0 if the note never expires. */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Copy of this note with a new message and the same ID, expiry and
+     * eviction state (EDIT).
+     */
+    Note withMessage(String newMessage) {
+        Note edited = new Note(x, y, width, height, color, newMessage);
+        edited.id = id;
+        edited.expiresAt = expiresAt;
+        edited.expiry = expiry;
+        edited.referenced = referenced;
+        return edited;
+    }
+
+    /**
+     * Hash of everything a client sees of this note; Board sums these into
+     * its content hash.
+     */
+    long contentHash() {
+        long h = mix(id);
+        h = mix(h ^ (((long) x << 32) | (y & 0xFFFFFFFFL)));
+        h = mix(h ^ color.hashCode());
+        return mix(h ^ message.hashCode());
+    }
+
+    /** SplitMix64 finalizer: spreads every input bit over the result. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     /**
      * Check if a coordinate point lies within this note's bounds.
      * Per RFC Section 7.3 - PIN applies to all notes containing the coordinate.
@@ -77,6 +147,20 @@ public class Note {
         return px >= x && px < x + width && py >= y && py < y + height;
     }
 
+    /**
+     * Check if this note intersects a rectangular region.
+     * Used by GET region= queries (viewport fetches).
+     * 
+     * @param rx Region upper-left x
+     * @param ry Region upper-left y
+     * @param rw Region width
+     * @param rh Region height
+     * @return true if the note and region share at least one point
+     */
+    public boolean intersects(int rx, int ry, int rw, int rh) {
+        return x < rx + rw && rx < x + width && y < ry + rh && ry < y + height;
+    }
+
     /**
      * Check if this note completely overlaps another note.
      * Per RFC Section 4.3 - Partial overlaps permitted; exact overlaps rejected.
@@ -106,10 +190,10 @@ public class Note {
 
     /**
      * Format note for GET response per RFC Appendix A.2.
-     * Format: NOTE <x> <y> <color> <message>
+     * Format: NOTE <id> <x> <y> <color> <message>
      */
     @Override
     public String toString() {
-        return "NOTE " + x + " " + y + " " + color + " " + message;
+        return "NOTE " + id + " " + x + " " + y + " " + color + " " + message;
     }
 }
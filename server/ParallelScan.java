@@ -0,0 +1,97 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+/**
+ * ParallelScan filters a large list of notes on a dedicated fork-join pool.
+ *
+ * The list is cut into fixed-size chunks; each chunk is filtered into its
+ * own result list and the lists are joined in chunk order, so the output
+ * keeps the input's order. The input must not change during the scan,
+ * which is why Board passes a copy taken under its locks.
+ *
+ * The pool (bbs.board.scanThreads, default one per CPU) is separate from
+ * the common pool, so heavy GETs cannot starve other users of it, and its
+ * size bounds the CPU that concurrent scans can take together.
+ */
+final class ParallelScan {
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, ServerConfig.integer("board.scanThreads", Runtime.getRuntime().availableProcessors())),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("board-scan-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Notes matching filter, in their original order.
+     */
+    static List<Note> filter(List<Note> notes, Predicate<Note> filter) {
+        if (notes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int chunks = (notes.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        List<Note>[] parts = new List[chunks];
+        POOL.invoke(new Chunks(notes, filter, parts, 0, chunks));
+
+        int total = 0;
+        for (List<Note> part : parts) {
+            total += part.size();
+        }
+        List<Note> result = new ArrayList<>(total);
+        for (List<Note> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    /** Filters chunks [from, to), splitting in half until one chunk is left. */
+    private static final class Chunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Note> notes;
+        private final Predicate<Note> filter;
+        private final List<Note>[] parts;
+        private final int from;
+        private final int to;
+
+        Chunks(List<Note> notes, Predicate<Note> filter, List<Note>[] parts, int from, int to) {
+            this.notes = notes;
+            this.filter = filter;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Chunks(notes, filter, parts, from, mid), new Chunks(notes, filter, parts, mid, to));
+                return;
+            }
+            int start = from * CHUNK_SIZE;
+            int end = Math.min(notes.size(), start + CHUNK_SIZE);
+            List<Note> part = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                Note note = notes.get(i);
+                if (filter.test(note)) {
+                    part.add(note);
+                }
+            }
+            parts[from] = part;
+        }
+    }
+}
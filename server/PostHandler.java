@@ -1,12 +1,18 @@
+package server;
+
 /**
  * PostHandler implements the POST command logic.
  * 
  * Per RFC Section 7.1 - POST Command:
  * Purpose: Create a new note on the board.
- * Syntax: POST <x> <y> <color> <message>
+ * Syntax: POST <x> <y> [ttl=<seconds>] <color> <message>
  * 
  * Parameters:
  * - <x> <y>: Upper-left coordinate of the note
+ * - ttl=<seconds>: Optional lifetime; without it the board's default TTL
+ *   applies (bbs.board.ttlSeconds, default 0 = never expire). It comes
+ *   before the color, where no color can be mistaken for it, so every
+ *   message stays literal
  * - <color>: One of the valid colors announced by the server
  * - <message>: Arbitrary text content (remainder of line)
  * 
@@ -14,9 +20,11 @@
  * - Note must lie fully within board boundaries (OUT_OF_BOUNDS)
  * - Color must be supported by server (COLOR_NOT_SUPPORTED)
  * - Note must not completely overlap an existing note (COMPLETE_OVERLAP)
+ * - Board must be below its capacity limits, or able to evict an
+ *   unpinned note to get there (BOARD_FULL)
  * 
  * Success Response (RFC Section 8.1):
- * - OK NOTE_POSTED
+ * - OK NOTE_POSTED <id>, where <id> is the new note's ID
  */
 public class PostHandler {
 
@@ -24,7 +32,7 @@ public class PostHandler {
      * Handle the POST command to create a new note.
      * 
      * @param board The shared board state
-     * @param parts Parsed command parts [POST, x, y, color, message...]
+     * @param parts Parsed command parts [POST, x, y, (ttl=s,) color, message...]
      * @return ProtocolResponse indicating success or error
      */
     public static ProtocolResponse handle(Board board, String[] parts) {
@@ -32,19 +40,36 @@ public class PostHandler {
         // Allow empty message: POST x y color = 4 parts minimum
         if (parts.length < 4) {
             return ProtocolResponse.error("INVALID_FORMAT",
-                    "POST requires: <x> <y> <color> [message]");
+                    "POST requires: <x> <y> [ttl=<seconds>] <color> [message]");
         }
 
         try {
             // Parse coordinates
             int x = Integer.parseInt(parts[1]);
             int y = Integer.parseInt(parts[2]);
-            String color = parts[3].toLowerCase();
+
+            // Optional ttl=<seconds> before the color; colors never hold '='
+            int colorIndex = 3;
+            long ttlSeconds = board.getDefaultTtlSeconds();
+            if (parts[3].regionMatches(true, 0, "ttl=", 0, 4)) {
+                ttlSeconds = Integer.parseInt(parts[3].substring(4));
+                if (ttlSeconds <= 0) {
+                    return ProtocolResponse.error("INVALID_FORMAT",
+                            "ttl= requires a positive number of seconds");
+                }
+                if (parts.length < 5) {
+                    return ProtocolResponse.error("INVALID_FORMAT",
+                            "POST requires: <x> <y> [ttl=<seconds>] <color> [message]");
+                }
+                colorIndex = 4;
+            }
+            String color = parts[colorIndex].toLowerCase();
+            int messageStart = colorIndex + 1;
 
             // Reconstruct message (allow empty message per RFC)
             StringBuilder messageBuilder = new StringBuilder();
-            for (int i = 4; i < parts.length; i++) {
-                if (i > 4)
+            for (int i = messageStart; i < parts.length; i++) {
+                if (i > messageStart)
                     messageBuilder.append(" ");
                 messageBuilder.append(parts[i]);
             }
@@ -59,6 +84,9 @@ public class PostHandler {
             // Create note with fixed dimensions from board config
             Note note = new Note(x, y, board.getNoteWidth(), board.getNoteHeight(),
                     color, message);
+            if (ttlSeconds > 0) {
+                note.setExpiresAt(System.currentTimeMillis() + ttlSeconds * 1000);
+            }
 
             // Add note to board (board handles validation)
             String error = board.addNote(note);
@@ -75,17 +103,20 @@ public class PostHandler {
                     case "COMPLETE_OVERLAP":
                         return ProtocolResponse.error("COMPLETE_OVERLAP",
                                 "Note would completely overlap existing note");
+                    case "BOARD_FULL":
+                        return ProtocolResponse.error("BOARD_FULL",
+                                "Board is at capacity and no note can be evicted");
                     default:
                         return ProtocolResponse.error("INVALID_FORMAT", error);
                 }
             }
 
             // Success!!!!!
-            return ProtocolResponse.okWithStatus("NOTE_POSTED");
+            return ProtocolResponse.okWithStatus("NOTE_POSTED " + note.getId());
 
         } catch (NumberFormatException e) {
             return ProtocolResponse.error("INVALID_FORMAT",
-                    "Coordinates must be valid integers");
+                    "Coordinates and ttl must be valid integers");
         }
     }
 }
@@ -1,28 +1,129 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * ProtocolHandler processes commands
  * 
- * Handles all seven defined commands:
- * - POST: Create a new note on the board
- * - GET: Retrieve notes with optional filtering
+ * Handles the sixteen defined commands:
+ * - POST: Create a new note on the board; answers with the note's ID
+ * - GET: Retrieve notes with optional filtering, one note by ID, or the board version
+ * - DELETE: Remove one note by ID
+ * - EDIT: Replace the message of one note by ID
  * - PIN: Place a pin at specified coordinates
  * - UNPIN: Remove a pin from specified coordinates
  * - SHAKE: Randomly rearrange all notes on board
  * - CLEAR: Remove all notes and pins from board
  * - DISCONNECT: Cleanly terminate client connection
+ * - USE: Bind this connection to a named board
+ * - REPLICATE: Stream the bound board's mutations to a read replica
+ * - LAG: Report replication progress of the bound board
+ * - STATS: Report server performance metrics
+ * - PING: Heartbeat; keeps an otherwise idle connection open
+ * - EXPORT: Stream every note and pin of the board
+ * - IMPORT: Load notes and pins streamed after the command
+ * 
+ * Each connection starts bound to the default board. USE switches to
+ * another board from the registry, creating it on first use.
+ * 
+ * On a read replica, mutations (POST, DELETE, EDIT, PIN, UNPIN, SHAKE, CLEAR, IMPORT) are
+ * rejected with READ_ONLY; clients must send them to the primary.
+ * 
+ * Each connection may have a token bucket (bbs.rateLimit.perSecond and
+ * bbs.rateLimit.burst; off by default). Commands cost tokens by how much
+ * work they do: GET 5, SHAKE, CLEAR, EXPORT and IMPORT 20, other board commands 1, and
+ * control commands nothing; bbs.rateLimit.cost.&lt;CMD&gt; overrides a cost.
+ * A command the bucket cannot pay for gets RATE_LIMITED. Board commands
+ * that pass are then admitted by LoadShedder, or get OVERLOADED.
+ * 
+ * If the board has a CommandSequencer (bbs.board.sequencer), mutations
+ * other than IMPORT are handed to its writer thread and this thread waits
+ * for the response. IMPORT reads its body from the connection, so it stays
+ * on the client thread and takes the board's locks directly.
+ * 
+ * Every command is reported to Diagnostics (a flight recorder event, and
+ * the slow-command log when over the threshold).
  * 
  * Each command is parsed and validated for proper syntax before processing.
  * Invalid commands return INVALID_FORMAT error response.
  */
 public class ProtocolHandler {
-    private final Board board;
+    private static final double RATE_LIMIT = ServerConfig.doubleValue("rateLimit.perSecond", 0);
+    private static final double RATE_BURST = ServerConfig.doubleValue("rateLimit.burst", 2 * RATE_LIMIT);
+    private static final Map<String, Double> COSTS = new HashMap<>();
+
+    static {
+        String[][] defaults = { { "POST", "1" }, { "DELETE", "1" }, { "EDIT", "1" }, { "GET", "5" }, { "PIN", "1" }, { "UNPIN", "1" },
+                { "SHAKE", "20" }, { "CLEAR", "20" }, { "EXPORT", "20" }, { "IMPORT", "20" }, { "USE", "1" },
+                { "STATS", "1" } };
+        for (String[] cost : defaults) {
+            COSTS.put(cost[0], ServerConfig.doubleValue("rateLimit.cost." + cost[0], Double.parseDouble(cost[1])));
+        }
+    }
+
+    private final BoardRegistry registry;
+    private final TokenBucket rateLimiter;
+    private final String client; // address for diagnostics, or null
+    private String boardName;
+    private Board board;
+    private boolean bodyRead; // the current command's handler consumed its body
+
+    /**
+     * Create a ProtocolHandler bound to the registry's default board.
+     * 
+     * @param registry The server's named boards
+     */
+    public ProtocolHandler(BoardRegistry registry) {
+        this(registry, null);
+    }
+
+    /**
+     * Create a ProtocolHandler for one client connection.
+     * 
+     * @param registry The server's named boards
+     * @param client   Client address, reported with diagnostics
+     */
+    public ProtocolHandler(BoardRegistry registry, String client) {
+        this(registry, client, BoardRegistry.DEFAULT_BOARD, newRateLimiter());
+    }
 
     /**
-     * Create a ProtocolHandler with the shared board.
+     * Create a ProtocolHandler bound to a named board without a USE, for
+     * callers that serve one command at a time (the HTTP gateway).
      * 
-     * @param board The shared board state
+     * @param registry    The server's named boards
+     * @param client      Client address, reported with diagnostics
+     * @param boardName   Board to bind to, created on first use
+     * @param rateLimiter The client's token bucket, or null for none
      */
-    public ProtocolHandler(Board board) {
-        this.board = board;
+    ProtocolHandler(BoardRegistry registry, String client, String boardName, TokenBucket rateLimiter) {
+        this.registry = registry;
+        this.client = client;
+        this.boardName = boardName;
+        this.board = registry.acquire(boardName);
+        this.rateLimiter = rateLimiter;
+    }
+
+    /** A token bucket as configured by bbs.rateLimit.*, or null if rate limiting is off. */
+    static TokenBucket newRateLimiter() {
+        return RATE_LIMIT > 0 ? new TokenBucket(RATE_LIMIT, Math.max(1, RATE_BURST)) : null;
+    }
+
+    /** The board this connection is currently bound to. */
+    public Board getBoard() {
+        return board;
+    }
+
+    /** Release the bound board when the connection ends. */
+    public void close() {
+        if (board != null) {
+            registry.release(boardName);
+            board = null;
+        }
     }
 
     /**
@@ -32,21 +133,124 @@ public class ProtocolHandler {
      * @return ProtocolResponse indicating success/failure and any error details
      */
     public ProtocolResponse processCommand(String command) {
+        return processCommand(command, null);
+    }
+
+    /**
+     * Process a single command that may be followed by a body (IMPORT).
+     * 
+     * @param command Raw command string from client
+     * @param input   Connection input, positioned after the command line;
+     *                a body is read from it, or skipped if rejected
+     * @return ProtocolResponse indicating success/failure and any error details
+     */
+    public ProtocolResponse processCommand(String command, BufferedReader input) {
         // Ignore empty lines - return null to signal no response needed
         if (command == null || command.trim().isEmpty()) {
             return null;
         }
 
+        long start = System.nanoTime();
+        Diagnostics.CommandEvent event = Diagnostics.beginCommand();
+        String commandBoard = boardName; // USE may rebind
+
         // Split command into parts for parsing
         String[] parts = command.trim().split("\\s+");
         String commandType = parts[0].toUpperCase();
 
+        bodyRead = false;
+        ProtocolResponse response = admitAndDispatch(commandType, parts, input);
+        if (commandType.equals("IMPORT") && input != null && !bodyRead) {
+            // Rejected before the handler ran; keep the connection in step
+            try {
+                TransferHandler.skipBody(input);
+            } catch (IOException e) {
+                // The connection is gone; the read loop will notice
+            }
+        }
+        ServerMetrics.recordCommand(commandType, System.nanoTime() - start, response.getErrorCode());
+        Diagnostics.commandFinished(event, commandType, command, commandBoard, client, response);
+        return response;
+    }
+
+    /**
+     * Apply the rate limit and load shedding, then dispatch. Both reject
+     * before any board work, so a rejected command is cheap.
+     */
+    private ProtocolResponse admitAndDispatch(String commandType, String[] parts, BufferedReader input) {
+        ProtocolResponse limited = charge(rateLimiter, commandType);
+        if (limited != null) {
+            return limited;
+        }
+        // IMPORT admits its clear and each batch itself, so a slow body
+        // holds no permit while it is read
+        if (!isBoardCommand(commandType) || commandType.equals("IMPORT")) {
+            return dispatch(commandType, parts, input);
+        }
+        String overload = LoadShedder.admit();
+        if (overload != null) {
+            return overloaded(overload);
+        }
+        try {
+            return dispatch(commandType, parts, input);
+        } finally {
+            LoadShedder.release();
+        }
+    }
+
+    /**
+     * Charge a command to a token bucket at its configured cost; also used
+     * for the HTTP gateway's reads, which do not run as commands.
+     *
+     * @param rateLimiter The client's token bucket, or null for none
+     * @return RATE_LIMITED if the bucket cannot pay, otherwise null
+     */
+    static ProtocolResponse charge(TokenBucket rateLimiter, String commandType) {
+        Double cost = COSTS.get(commandType);
+        if (rateLimiter != null && cost != null && !rateLimiter.tryAcquire(cost)) {
+            return ProtocolResponse.error("RATE_LIMITED", "Retry after "
+                    + rateLimiter.millisUntil(cost) + " ms");
+        }
+        return null;
+    }
+
+    /** OVERLOADED for a command LoadShedder rejected for the given reason. */
+    static ProtocolResponse overloaded(String reason) {
+        return ProtocolResponse.error("OVERLOADED", "Server overloaded (" + reason + "); retry later");
+    }
+
+    /**
+     * Route a parsed command to its handler.
+     */
+    private ProtocolResponse dispatch(String commandType, String[] parts, BufferedReader input) {
+        if (registry.isReplica() && isMutation(commandType)) {
+            return ProtocolResponse.error("READ_ONLY", "This server is a read replica; send "
+                    + commandType + " to the primary");
+        }
+
+        if (isMutation(commandType) && !commandType.equals("IMPORT")) {
+            CommandSequencer sequencer = registry.getSequencer(boardName);
+            if (sequencer != null) {
+                return sequencer.execute(() -> route(commandType, parts, input));
+            }
+        }
+        return route(commandType, parts, input);
+    }
+
+    /**
+     * Run a command's handler on the current thread.
+     */
+    private ProtocolResponse route(String commandType, String[] parts, BufferedReader input) {
         // Route to appropriate command handler
         switch (commandType) {
             case "POST":
                 return PostHandler.handle(board, parts);
             case "GET":
                 return handleGet(parts);
+            case "DELETE":
+                return handleDelete(parts);
+            case "EDIT":
+                return handleEdit(parts);
             case "PIN":
                 return handlePin(parts);
             case "UNPIN":
@@ -57,19 +261,94 @@ public class ProtocolHandler {
                 return ClearHandler.handle(board, parts);
             case "DISCONNECT":
                 return handleDisconnect(parts);
+            case "USE":
+                return handleUse(parts);
+            case "REPLICATE":
+                return ReplicationHandler.handle(board, parts, () -> registry.replicationLog(boardName, board));
+            case "LAG":
+                return handleLag(parts);
+            case "STATS":
+                return handleStats(parts);
+            case "PING":
+                return handlePing(parts);
+            case "EXPORT":
+                return TransferHandler.handleExport(board, parts);
+            case "IMPORT":
+                bodyRead = input != null;
+                return TransferHandler.handleImport(board, parts, input);
             default:
                 return ProtocolResponse.error("INVALID_FORMAT", "Unknown command: " + commandType);
         }
     }
 
+    private static boolean isBoardCommand(String commandType) {
+        return isMutation(commandType) || commandType.equals("GET") || commandType.equals("EXPORT");
+    }
+
+    private static boolean isMutation(String commandType) {
+        switch (commandType) {
+            case "POST":
+            case "DELETE":
+            case "EDIT":
+            case "PIN":
+            case "UNPIN":
+            case "SHAKE":
+            case "CLEAR":
+            case "IMPORT":
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
-     * GET command: GET PINS or GET [color=<color>] [contains=<x> <y>]
+     * GET command: GET PINS [region=<x> <y> <w> <h>], GET VERSION, GET id=<id> or GET
+     * [color=<color>] [contains=<x> <y>] [region=<x> <y> <w> <h>]
      * [refersTo=<substring>]
      */
     private ProtocolResponse handleGet(String[] parts) {
+        // GET VERSION: cheap change check for clients holding a copy
+        if (parts.length >= 2 && parts[1].equalsIgnoreCase("VERSION")) {
+            if (parts.length != 2) {
+                return ProtocolResponse.error("INVALID_FORMAT", "GET VERSION takes no parameters");
+            }
+            return ProtocolResponse.okWithStatus("VERSION " + board.getVersion() + " "
+                    + String.format("%016x", board.getContentHash()));
+        }
+
+        // GET id=<id>: direct lookup in the board's ID index
+        if (parts.length >= 2 && parts[1].startsWith("id=")) {
+            if (parts.length != 2) {
+                return ProtocolResponse.error("INVALID_FORMAT", "id= cannot be combined with other filters");
+            }
+            Long id = parseId(parts[1].substring(3));
+            if (id == null) {
+                return ProtocolResponse.error("INVALID_FORMAT", "id= requires a numeric note ID");
+            }
+            Note note = board.getNote(id);
+            if (note == null) {
+                return ProtocolResponse.error("NOTE_NOT_FOUND", "No note with ID " + id);
+            }
+            return ProtocolResponse.okWithData("OK 1\n" + note);
+        }
+
         // Special case: GET PINS - per RFC Section 8.1
-        if (parts.length == 2 && parts[1].equalsIgnoreCase("PINS")) {
-            java.util.List<int[]> pins = board.getPins();
+        if (parts.length >= 2 && parts[1].equalsIgnoreCase("PINS")) {
+            int[] region = null;
+            if (parts.length > 2) {
+                if (!parts[2].startsWith("region=")) {
+                    return ProtocolResponse.error("INVALID_FORMAT", "GET PINS only accepts region=");
+                }
+                region = parseRegion(parts, 2);
+                if (region == null || parts.length != 6) {
+                    return ProtocolResponse.error("INVALID_FORMAT", "region= requires: x y w h");
+                }
+                region = board.clipRegion(region);
+                if (region == null) {
+                    return ProtocolResponse.okWithData("OK 0"); // entirely off the board
+                }
+            }
+            java.util.List<int[]> pins = board.getPins(region);
             StringBuilder response = new StringBuilder("OK " + pins.size());
             for (int[] pin : pins) {
                 response.append("\nPIN ").append(pin[0]).append(" ").append(pin[1]);
@@ -82,6 +361,7 @@ public class ProtocolHandler {
         Integer containsX = null;
         Integer containsY = null;
         String refersTo = null;
+        int[] region = null;
 
         // Parse remaining parts for filters
         for (int i = 1; i < parts.length; i++) {
@@ -111,6 +391,13 @@ public class ProtocolHandler {
                 } catch (NumberFormatException e) {
                     return ProtocolResponse.error("INVALID_FORMAT", "Invalid contains coordinates");
                 }
+            } else if (part.startsWith("region=")) {
+                // region=x y w h - rectangle of interest, e.g. a client viewport
+                region = parseRegion(parts, i);
+                if (region == null) {
+                    return ProtocolResponse.error("INVALID_FORMAT", "region= requires: x y w h");
+                }
+                i += 3;
             } else if (part.startsWith("refersTo=")) {
                 // Collect remaining text as refersTo value
                 refersTo = part.substring(9);
@@ -121,8 +408,15 @@ public class ProtocolHandler {
             }
         }
 
+        if (region != null) {
+            region = board.clipRegion(region);
+            if (region == null) {
+                return ProtocolResponse.okWithData("OK 0"); // entirely off the board
+            }
+        }
+
         // Get filtered notes
-        java.util.List<Note> notes = board.getNotes(colorFilter, containsX, containsY, refersTo);
+        java.util.List<Note> notes = board.getNotes(colorFilter, containsX, containsY, refersTo, region);
         StringBuilder response = new StringBuilder("OK " + notes.size());
         for (Note note : notes) {
             response.append("\n").append(note.toString());
@@ -130,6 +424,31 @@ public class ProtocolHandler {
         return ProtocolResponse.okWithData(response.toString());
     }
 
+    /**
+     * Parse "region=<x> <y> <w> <h>" starting at parts[start].
+     * 
+     * @return [x, y, w, h], or null if malformed, negative or empty. The
+     *         caller clips it to the board with Board.clipRegion.
+     */
+    private static int[] parseRegion(String[] parts, int start) {
+        if (start + 3 >= parts.length) {
+            return null;
+        }
+        try {
+            int x = Integer.parseInt(parts[start].substring(7));
+            int y = Integer.parseInt(parts[start + 1]);
+            int w = Integer.parseInt(parts[start + 2]);
+            int h = Integer.parseInt(parts[start + 3]);
+            if (x < 0 || y < 0 || w <= 0 || h <= 0) {
+                return null;
+            }
+            // Keep x + w and y + h from overflowing
+            return new int[] { x, y, Math.min(w, Integer.MAX_VALUE - x), Math.min(h, Integer.MAX_VALUE - y) };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * PIN command: PIN <x> <y>
      */
@@ -178,6 +497,52 @@ public class ProtocolHandler {
         }
     }
 
+    /**
+     * DELETE command: DELETE <id>
+     */
+    private ProtocolResponse handleDelete(String[] parts) {
+        Long id = parts.length == 2 ? parseId(parts[1]) : null;
+        if (id == null) {
+            return ProtocolResponse.error("INVALID_FORMAT", "DELETE requires: id");
+        }
+
+        String error = board.deleteNote(id);
+        if (error != null) {
+            return ProtocolResponse.error(error, "No note with ID " + id);
+        }
+        return ProtocolResponse.okWithStatus("NOTE_DELETED");
+    }
+
+    /**
+     * EDIT command: EDIT <id> <message>
+     */
+    private ProtocolResponse handleEdit(String[] parts) {
+        Long id = parts.length >= 2 ? parseId(parts[1]) : null;
+        if (id == null) {
+            return ProtocolResponse.error("INVALID_FORMAT", "EDIT requires: id [message]");
+        }
+
+        // Message is the remainder of the line, as in POST; it may be empty
+        String message = String.join(" ", Arrays.asList(parts).subList(2, parts.length));
+        String error = board.editNote(id, message);
+        if (error != null) {
+            return ProtocolResponse.error(error, error.equals("BOARD_FULL")
+                    ? "Board is at capacity and no note can be evicted"
+                    : "No note with ID " + id);
+        }
+        return ProtocolResponse.okWithStatus("NOTE_EDITED");
+    }
+
+    /** Parse a note ID; IDs are positive. Returns null if malformed. */
+    private static Long parseId(String value) {
+        try {
+            long id = Long.parseLong(value);
+            return id > 0 ? id : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**
      * SHAKE command: SHAKE
      */
@@ -190,6 +555,77 @@ public class ProtocolHandler {
         return ProtocolResponse.okWithStatus("SHAKE_COMPLETE");
     }
 
+    /**
+     * USE command: USE <board>
+     */
+    private ProtocolResponse handleUse(String[] parts) {
+        if (parts.length != 2 || !BoardRegistry.isValidName(parts[1])) {
+            return ProtocolResponse.error("INVALID_FORMAT",
+                    "USE requires a board name of letters, digits, '_' or '-'");
+        }
+
+        String name = parts[1];
+        if (!name.equals(boardName)) {
+            // Acquire first so the new board is never evicted in between
+            Board next = registry.acquire(name);
+            registry.release(boardName);
+            boardName = name;
+            board = next;
+        }
+        // The board may differ from the one BOARD_CONFIG described
+        return ProtocolResponse.okWithStatus("BOARD_SELECTED " + board.getConfiguration());
+    }
+
+    /**
+     * LAG command: LAG
+     * 
+     * Response: OK LAG <appliedVersion> <primaryVersion> <lagMillis>.
+     * On a primary both versions are the board version and lag is 0; on a
+     * replica lag is -1 while it is not connected to the primary.
+     */
+    private ProtocolResponse handleLag(String[] parts) {
+        if (parts.length != 1) {
+            return ProtocolResponse.error("INVALID_FORMAT", "LAG takes no parameters");
+        }
+
+        long applied = board.getVersion();
+        ReplicaFollower follower = registry.getFollower(boardName);
+        if (follower == null) {
+            return ProtocolResponse.okWithStatus("LAG " + applied + " " + applied + " 0");
+        }
+        return ProtocolResponse.okWithStatus("LAG " + applied + " " + follower.getPrimaryVersion() + " "
+                + follower.getLagMillis());
+    }
+
+    /**
+     * STATS command: STATS
+     * 
+     * Response: OK <n> followed by n STAT lines (see ServerMetrics.report).
+     */
+    private ProtocolResponse handleStats(String[] parts) {
+        if (parts.length != 1) {
+            return ProtocolResponse.error("INVALID_FORMAT", "STATS takes no parameters");
+        }
+
+        java.util.List<String> lines = ServerMetrics.report(registry);
+        StringBuilder response = new StringBuilder("OK " + lines.size());
+        for (String line : lines) {
+            response.append("\n").append(line);
+        }
+        return ProtocolResponse.okWithData(response.toString());
+    }
+
+    /**
+     * PING command: PING
+     */
+    private ProtocolResponse handlePing(String[] parts) {
+        if (parts.length != 1) {
+            return ProtocolResponse.error("INVALID_FORMAT", "PING takes no parameters");
+        }
+
+        return ProtocolResponse.okWithStatus("PONG");
+    }
+
     /**
      * DISCONNECT command: DISCONNECT
      */
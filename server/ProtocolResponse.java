@@ -1,3 +1,5 @@
+package server;
+
 /**
  * Protocol response following RFC
  * 
@@ -13,19 +15,42 @@
  * - COMPLETE_OVERLAP: Note would completely overlap existing note
  * - NO_NOTE_AT_COORDINATE: No note exists at specified coordinate
  * - PIN_NOT_FOUND: Attempted to unpin non-existent pin
+ * - READ_ONLY: Mutation sent to a read replica
+ * - NOTE_NOT_FOUND: No note with the given ID
+ * - RATE_LIMITED: Connection exceeded its command rate
+ * - OVERLOADED: Command shed because the server is overloaded
+ * - BOARD_FULL: Board at capacity with nothing it may evict
+ * 
+ * A response may also carry a stream: a body written straight to the
+ * socket after the status line, for output that is too large or too
+ * long-lived to build as a string (e.g. a replication feed).
  */
 public class ProtocolResponse {
     private final boolean success;
     private final String errorCode;
     private final String errorMessage;
     private final boolean disconnect;
+    private final Stream stream;
+
+    /**
+     * Writes a streamed response body directly to the client.
+     */
+    public interface Stream {
+        void writeTo(java.io.PrintWriter out) throws java.io.IOException;
+    }
 
     // Private constructor for creating responses
     private ProtocolResponse(boolean success, String errorCode, String errorMessage, boolean disconnect) {
+        this(success, errorCode, errorMessage, disconnect, null);
+    }
+
+    private ProtocolResponse(boolean success, String errorCode, String errorMessage, boolean disconnect,
+            Stream stream) {
         this.success = success;
         this.errorCode = errorCode;
         this.errorMessage = errorMessage;
         this.disconnect = disconnect;
+        this.stream = stream;
     }
 
     /**
@@ -56,6 +81,17 @@ public class ProtocolResponse {
         return new ProtocolResponse(true, null, null, true);
     }
 
+    /**
+     * Successful OK status line followed by a streamed body
+     * 
+     * @param status          Status text (e.g. REPLICATING)
+     * @param stream          Writes the body after the status line
+     * @param disconnectAfter Close the connection once the stream ends
+     */
+    public static ProtocolResponse okWithStream(String status, Stream stream, boolean disconnectAfter) {
+        return new ProtocolResponse(true, status, null, disconnectAfter, stream);
+    }
+
     /**
      * ERROR response with specified code and message
      */
@@ -70,6 +106,41 @@ public class ProtocolResponse {
         return disconnect;
     }
 
+    /**
+     * Streamed body, or null for plain responses
+     */
+    public Stream getStream() {
+        return stream;
+    }
+
+    /**
+     * Error code of a failed response, or null on success
+     */
+    public String getErrorCode() {
+        return success ? null : errorCode;
+    }
+
+    /**
+     * Error message of a failed response, or null on success
+     */
+    public String getErrorMessage() {
+        return success ? null : errorMessage;
+    }
+
+    /**
+     * Length of the response text in characters, without formatting it;
+     * a streamed body is not included
+     */
+    public int size() {
+        if (!success) {
+            return 7 + errorCode.length() + String.valueOf(errorMessage).length();
+        }
+        if (errorCode == null) {
+            return 2;
+        }
+        return errorCode.startsWith("OK") ? errorCode.length() : errorCode.length() + 3;
+    }
+
     /**
      * Success!!
      */
@@ -0,0 +1,267 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReplicaFollower keeps one local board in sync with the same board on a
+ * primary server.
+ *
+ * It connects as an ordinary client, binds to the board with USE and sends
+ * REPLICATE, then applies the SNAPSHOT/ENTRY stream to the local board
+ * through the normal Board methods. Entries must arrive with consecutive
+ * sequence numbers and each must succeed locally; anything else means the
+ * replica has diverged, and it reconnects to resynchronize from a snapshot.
+ * Connection failures are retried with exponential backoff.
+ *
+ * Replication is asynchronous: a replica serves reads from whatever it has
+ * applied so far. Lag is measured from the primary's timestamps on entries
+ * and heartbeats, so it assumes roughly synchronized clocks.
+ */
+public class ReplicaFollower implements Runnable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    // No line for this long means the primary or the link is dead
+    private static final int READ_TIMEOUT_MILLIS = 5000;
+    private static final long MAX_BACKOFF_MILLIS = 10000;
+
+    private final String host;
+    private final int port;
+    private final String boardName;
+    private final Board board;
+
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile long epoch; // 0 until the first snapshot
+    private volatile long primaryVersion;
+    private volatile long lagMillis = -1; // -1 until the first heartbeat or entry
+
+    /**
+     * @param primary   Primary address as host:port
+     * @param boardName Board to follow
+     * @param board     Local board the stream is applied to
+     */
+    public ReplicaFollower(String primary, String boardName, Board board) {
+        int colon = primary.lastIndexOf(':');
+        this.host = colon > 0 ? primary.substring(0, colon) : primary;
+        this.port = colon > 0 ? Integer.parseInt(primary.substring(colon + 1)) : 4200;
+        this.boardName = boardName;
+        this.board = board;
+    }
+
+    /** Start following on a daemon thread. */
+    public void start() {
+        Thread thread = new Thread(this, "replica-" + boardName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop following and close the connection to the primary. */
+    public void stop() {
+        running = false;
+        closeSocket();
+    }
+
+    /** Highest version the primary has reported. */
+    public long getPrimaryVersion() {
+        return Math.max(primaryVersion, board.getVersion());
+    }
+
+    /** Replication lag in milliseconds, or -1 if not connected yet. */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Override
+    public void run() {
+        long backoff = 100;
+        while (running) {
+            try {
+                follow();
+                backoff = 100;
+            } catch (IOException | RuntimeException e) {
+                if (running) {
+                    System.err.println("Replica " + boardName + ": " + e.getMessage() + ", retrying in "
+                            + backoff + " ms");
+                }
+            } finally {
+                closeSocket();
+                lagMillis = -1;
+            }
+
+            if (running) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * One replication session; returns normally when the replica must
+     * resynchronize, throws on connection failure.
+     */
+    private void follow() throws IOException {
+        Socket s = new Socket();
+        socket = s;
+        s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+        s.setSoTimeout(READ_TIMEOUT_MILLIS);
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+        PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+
+        expect(in.readLine(), "BOARD_CONFIG");
+        out.println("USE " + boardName);
+        expect(in.readLine(), "OK");
+        out.println("REPLICATE " + epoch + " " + (board.getVersion() + 1));
+        expect(in.readLine(), "OK");
+        System.out.println("Replica " + boardName + ": following " + host + ":" + port);
+
+        String line;
+        while (running && (line = in.readLine()) != null) {
+            if (line.startsWith("ENTRY ")) {
+                if (!applyEntry(line)) {
+                    System.err.println("Replica " + boardName + ": diverged at version " + board.getVersion()
+                            + ", resynchronizing");
+                    epoch = 0;
+                    return;
+                }
+            } else if (line.startsWith("HEARTBEAT ")) {
+                String[] parts = line.split(" ");
+                primaryVersion = Long.parseLong(parts[1]);
+                updateLag(Long.parseLong(parts[2]));
+            } else if (line.startsWith("SNAPSHOT ")) {
+                loadSnapshot(line, in);
+            } else {
+                throw new IOException("Unexpected line from primary: " + line);
+            }
+        }
+        throw new IOException("Primary closed the connection");
+    }
+
+    /**
+     * SNAPSHOT &lt;epoch&gt; &lt;version&gt; &lt;noteCount&gt; &lt;pinCount&gt;,
+     * followed by NOTE and PIN lines in GET format.
+     */
+    private void loadSnapshot(String header, BufferedReader in) throws IOException {
+        String[] parts = header.split(" ");
+        long snapshotEpoch = Long.parseLong(parts[1]);
+        long version = Long.parseLong(parts[2]);
+        int noteCount = Integer.parseInt(parts[3]);
+        int pinCount = Integer.parseInt(parts[4]);
+
+        List<Note> notes = new ArrayList<>(noteCount);
+        for (int i = 0; i < noteCount; i++) {
+            // NOTE <id> <x> <y> <color> <message>
+            String[] note = readLine(in).split(" ", 6);
+            notes.add(newNote(Long.parseLong(note[1]), note[2], note[3], note[4], note.length > 5 ? note[5] : ""));
+        }
+        List<int[]> pins = new ArrayList<>(pinCount);
+        for (int i = 0; i < pinCount; i++) {
+            String[] pin = readLine(in).split(" ");
+            pins.add(new int[] { Integer.parseInt(pin[1]), Integer.parseInt(pin[2]) });
+        }
+
+        board.restore(new BoardSnapshot(version, notes, pins));
+        epoch = snapshotEpoch;
+        primaryVersion = version;
+        lagMillis = 0;
+        System.out.println("Replica " + boardName + ": loaded snapshot at version " + version + " ("
+                + noteCount + " notes, " + pinCount + " pins)");
+    }
+
+    /**
+     * ENTRY &lt;sequence&gt; &lt;timestamp&gt; &lt;command&gt;
+     *
+     * @return false if the entry is out of order or fails to apply
+     */
+    private boolean applyEntry(String line) {
+        String[] parts = line.split(" ", 4);
+        long sequence = Long.parseLong(parts[1]);
+        if (sequence != board.getVersion() + 1) {
+            return false;
+        }
+
+        String[] command = parts[3].split(" ", 6);
+        String error;
+        switch (command[0]) {
+            case "POST":
+                // POST <id> <x> <y> <color> <message>: the primary's ID is kept
+                error = board.addNote(newNote(Long.parseLong(command[1]), command[2], command[3], command[4],
+                        command.length > 5 ? command[5] : ""));
+                break;
+            case "DELETE":
+                error = board.deleteNote(Long.parseLong(command[1]));
+                break;
+            case "EDIT":
+                String[] edit = parts[3].split(" ", 3);
+                error = board.editNote(Long.parseLong(edit[1]), edit.length > 2 ? edit[2] : "");
+                break;
+            case "PIN":
+                error = board.addPin(Integer.parseInt(command[1]), Integer.parseInt(command[2]));
+                break;
+            case "UNPIN":
+                error = board.removePin(Integer.parseInt(command[1]), Integer.parseInt(command[2]));
+                break;
+            case "SHAKE":
+                board.removeUnpinnedNotes();
+                error = null;
+                break;
+            case "CLEAR":
+                board.clear();
+                error = null;
+                break;
+            default:
+                error = "UNKNOWN_COMMAND";
+        }
+
+        primaryVersion = Math.max(primaryVersion, sequence);
+        updateLag(Long.parseLong(parts[2]));
+        return error == null && board.getVersion() == sequence;
+    }
+
+    private Note newNote(long id, String x, String y, String color, String message) {
+        Note note = new Note(Integer.parseInt(x), Integer.parseInt(y), board.getNoteWidth(), board.getNoteHeight(),
+                color, message);
+        note.setId(id);
+        return note;
+    }
+
+    private void updateLag(long primaryTimestamp) {
+        lagMillis = Math.max(0, System.currentTimeMillis() - primaryTimestamp);
+    }
+
+    private static String readLine(BufferedReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new IOException("Primary closed the connection during snapshot");
+        }
+        return line;
+    }
+
+    private static void expect(String line, String prefix) throws IOException {
+        if (line == null || !line.startsWith(prefix)) {
+            throw new IOException("Primary rejected replication: " + line);
+        }
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+}
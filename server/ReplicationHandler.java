@@ -0,0 +1,128 @@
+package server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * ReplicationHandler implements the REPLICATE command on a primary server.
+ *
+ * Syntax: REPLICATE <epoch> <fromSequence>
+ *
+ * A follower sends REPLICATE after USE to receive the ordered mutation
+ * stream of that board. The server answers "OK REPLICATING" and then keeps
+ * the connection open, streaming lines until the follower goes away:
+ *
+ * SNAPSHOT <epoch> <version> <noteCount> <pinCount>
+ * NOTE ... / PIN ... (noteCount + pinCount lines, as in GET)
+ * ENTRY <sequence> <timestampMillis> <command>
+ * HEARTBEAT <version> <timestampMillis>
+ *
+ * ENTRY commands are the board's mutations in canonical form: PIN, UNPIN,
+ * SHAKE, CLEAR, DELETE and EDIT as a client sends them, and
+ * POST <id> <x> <y> <color> <message> with the ID the primary assigned.
+ *
+ * A SNAPSHOT is sent first whenever the follower's epoch does not match
+ * the board's log (new follower or primary restart) or the requested
+ * sequence has already been truncated from the log. HEARTBEATs are sent
+ * while idle so followers can measure lag and detect a dead primary.
+ */
+public class ReplicationHandler {
+    private static final int BATCH_SIZE = 1024;
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Handle the REPLICATE command.
+     *
+     * @param board The board being replicated
+     * @param parts Parsed command parts [REPLICATE, epoch, fromSequence]
+     * @param logs  Starts or returns the board's log; null if replication
+     *              of the board is disabled
+     * @return Streaming response, or error
+     */
+    public static ProtocolResponse handle(Board board, String[] parts, Supplier<ReplicationLog> logs) {
+        if (parts.length != 3) {
+            return ProtocolResponse.error("INVALID_FORMAT", "REPLICATE requires: <epoch> <fromSequence>");
+        }
+
+        try {
+            long epoch = Long.parseLong(parts[1]);
+            long from = Long.parseLong(parts[2]);
+            ReplicationLog log = logs.get();
+            if (log == null) {
+                return ProtocolResponse.error("INVALID_FORMAT", "Replication is disabled for this board");
+            }
+            return ProtocolResponse.okWithStream("REPLICATING", out -> stream(board, log, epoch, from, out), true);
+        } catch (NumberFormatException e) {
+            return ProtocolResponse.error("INVALID_FORMAT", "Epoch and sequence must be integers");
+        }
+    }
+
+    /**
+     * Stream mutations to the follower until its connection fails.
+     */
+    private static void stream(Board board, ReplicationLog log, long epoch, long from, PrintWriter out)
+            throws IOException {
+        long next = from;
+        if (epoch != log.getEpoch()) {
+            next = sendSnapshot(board, log, out);
+        }
+
+        long lastWrite = System.nanoTime();
+        long park = 1000;
+        while (!out.checkError()) {
+            List<ReplicationLog.Entry> batch = log.read(next, board.getVersion(), BATCH_SIZE);
+            if (batch == null) {
+                // Follower is behind what the log retains
+                next = sendSnapshot(board, log, out);
+                lastWrite = System.nanoTime();
+                continue;
+            }
+
+            if (batch.isEmpty()) {
+                if (System.nanoTime() - lastWrite >= HEARTBEAT_NANOS) {
+                    out.print("HEARTBEAT " + board.getVersion() + " " + System.currentTimeMillis() + "\n");
+                    out.flush();
+                    lastWrite = System.nanoTime();
+                }
+                // Back off while idle, but stay responsive under load
+                LockSupport.parkNanos(park);
+                park = Math.min(park * 2, MAX_IDLE_PARK_NANOS);
+                continue;
+            }
+
+            StringBuilder lines = new StringBuilder();
+            for (ReplicationLog.Entry entry : batch) {
+                lines.append("ENTRY ").append(entry.getSequence()).append(' ')
+                        .append(entry.getTimestamp()).append(' ')
+                        .append(entry.getCommand()).append('\n');
+            }
+            out.print(lines);
+            out.flush();
+            next = batch.get(batch.size() - 1).getSequence() + 1;
+            lastWrite = System.nanoTime();
+            park = 1000;
+        }
+    }
+
+    /**
+     * Send the whole board; returns the next sequence the follower needs.
+     */
+    private static long sendSnapshot(Board board, ReplicationLog log, PrintWriter out) {
+        BoardSnapshot snapshot = board.snapshot();
+        out.print("SNAPSHOT " + log.getEpoch() + " " + snapshot.getVersion() + " "
+                + snapshot.getNotes().size() + " " + snapshot.getPins().size() + "\n");
+        for (Note note : snapshot.getNotes()) {
+            out.print(note.toString() + "\n");
+        }
+        for (int[] pin : snapshot.getPins()) {
+            out.print("PIN " + pin[0] + " " + pin[1] + "\n");
+        }
+        out.flush();
+        return snapshot.getVersion() + 1;
+    }
+}
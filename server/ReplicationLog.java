@@ -0,0 +1,118 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ReplicationLog keeps the most recent board mutations for read replicas.
+ *
+ * Every successful mutation is recorded with the board version it produced,
+ * so versions double as log sequence numbers. The board appends while still
+ * holding the stripes of the mutation, which makes log order consistent with
+ * the order in which conflicting commands were applied; mutations that do
+ * not share a stripe commute and may appear in either order.
+ *
+ * The log is a fixed-size ring: old entries are overwritten (truncated), and
+ * a follower that falls further behind than the ring holds is resynchronized
+ * from a board snapshot instead. Appends are lock-free.
+ */
+public final class ReplicationLog {
+    /** One logged mutation in canonical command form, e.g. "PIN 10 20". */
+    public static final class Entry {
+        private final long sequence;
+        private final long timestamp;
+        private final String command;
+
+        Entry(long sequence, long timestamp, String command) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.command = command;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** Primary wall-clock time of the mutation, in milliseconds. */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> ring;
+    private final int capacity;
+    private final long epoch;
+
+    // Versions at or below this were never logged (board restored from a snapshot)
+    private volatile long base;
+
+    /**
+     * @param capacity    Number of recent entries retained
+     * @param baseVersion Board version when the log was created
+     */
+    public ReplicationLog(int capacity, long baseVersion) {
+        this.capacity = capacity;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        // Identifies this log instance, so followers notice a primary restart
+        this.epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        this.base = baseVersion;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /** Record the mutation that produced the given board version. */
+    void append(long version, String command) {
+        ring.set(slot(version), new Entry(version, System.currentTimeMillis(), command));
+    }
+
+    /**
+     * Forget all entries; the board's contents were replaced wholesale and
+     * followers must resynchronize from a snapshot at this version.
+     */
+    void reset(long version) {
+        base = version;
+        for (int i = 0; i < capacity; i++) {
+            ring.set(i, null);
+        }
+    }
+
+    /**
+     * Read consecutive entries starting at a sequence number.
+     *
+     * @param fromSequence   First sequence wanted
+     * @param currentVersion Current board version (upper bound)
+     * @param max            Maximum number of entries returned
+     * @return Entries in order (empty if none are published yet), or null if
+     *         fromSequence is no longer retained and a snapshot is needed
+     */
+    public List<Entry> read(long fromSequence, long currentVersion, int max) {
+        if (fromSequence <= base || fromSequence > currentVersion + 1) {
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (long seq = fromSequence; seq <= currentVersion && entries.size() < max; seq++) {
+            Entry entry = ring.get(slot(seq));
+            if (entry == null || entry.sequence < seq) {
+                break; // Mutation still in flight; never skip past it
+            }
+            if (entry.sequence > seq) {
+                return entries.isEmpty() ? null : entries; // Overwritten
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
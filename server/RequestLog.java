@@ -0,0 +1,285 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RequestLog is the server's asynchronous, structured connection and
+ * request log.
+ *
+ * Client threads only capture the event's fields and publish it into a
+ * fixed-size lock-free ring buffer; a single background thread formats the
+ * lines and writes them to standard output in batches. When the buffer is
+ * full the event is dropped and counted instead of blocking, so logging
+ * can never stall a command. Nothing is formatted on the client thread.
+ *
+ * Lines look like:
+ * 2026-01-01T12:00:00.123Z INFO request client=127.0.0.1 cmd="GET color=blue"
+ *
+ * Settings:
+ * bbs.log.level         OFF, ERROR, WARN, INFO or DEBUG (default INFO)
+ * bbs.log.bufferSize    Ring buffer slots, rounded up to a power of two (default 8192)
+ * bbs.log.sampleRate    Fraction of requests logged, 0.0 to 1.0 (default 1.0)
+ * bbs.log.sample.&lt;CMD&gt; Per-command override, e.g. bbs.log.sample.GET=0.01
+ *
+ * Connection events, errors and slow commands are never sampled.
+ */
+public final class RequestLog {
+    /** Log levels, most severe first. */
+    public enum Level {
+        OFF, ERROR, WARN, INFO, DEBUG
+    }
+
+    private static final Level LEVEL = parseLevel(ServerConfig.string("log.level", "INFO"));
+    private static final double SAMPLE_RATE = sampleRate("log.sampleRate", 1.0);
+    private static final int CAPACITY = Integer.highestOneBit(
+            Math.max(2, ServerConfig.integer("log.bufferSize", 8192) * 2 - 1));
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Known commands only, so arbitrary input cannot grow the map
+    private static final String[] COMMANDS = { "POST", "GET", "DELETE", "EDIT", "PIN", "UNPIN", "SHAKE", "CLEAR",
+            "DISCONNECT", "USE", "REPLICATE", "LAG", "STATS", "PING", "EXPORT", "IMPORT" };
+    private static final ConcurrentHashMap<String, Double> commandRates = new ConcurrentHashMap<>();
+
+    private static final AtomicReferenceArray<Event> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong(); // next slot to claim
+    private static volatile long head; // next slot to write out; writer thread only
+    private static volatile long flushed; // slots before this are on the output
+
+    private static final LongAdder written = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder sampledOut = new LongAdder();
+
+    private static volatile Thread writer;
+
+    static {
+        for (String command : COMMANDS) {
+            commandRates.put(command, sampleRate("log.sample." + command, SAMPLE_RATE));
+        }
+    }
+
+    /** One captured log event; formatted by the writer thread. */
+    private static final class Event {
+        final long timestamp;
+        final Level level;
+        final String event;
+        final String client;
+        final String detail;
+        final boolean quoted; // detail is a raw command
+        final String fields; // key=value pairs before a quoted command, or null
+
+        Event(Level level, String event, String client, String detail, boolean quoted) {
+            this(level, event, client, detail, quoted, null);
+        }
+
+        Event(Level level, String event, String client, String detail, boolean quoted, String fields) {
+            this.timestamp = System.currentTimeMillis();
+            this.level = level;
+            this.event = event;
+            this.client = client;
+            this.detail = detail;
+            this.quoted = quoted;
+            this.fields = fields;
+        }
+    }
+
+    private RequestLog() {
+    }
+
+    /** True if events at this level are written. */
+    public static boolean isEnabled(Level level) {
+        return level != Level.OFF && level.ordinal() <= LEVEL.ordinal();
+    }
+
+    /**
+     * Log a client command at INFO, subject to per-command sampling.
+     *
+     * @param client  Client address
+     * @param command Raw command line
+     */
+    public static void request(String client, String command) {
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+        double rate = rateOf(command);
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            sampledOut.increment();
+            return;
+        }
+        publish(new Event(Level.INFO, "request", client, command, true));
+    }
+
+    /**
+     * Log an event, e.g. log(Level.INFO, "connect", ip, null).
+     *
+     * @param detail Free text appended to the line, or null
+     */
+    public static void log(Level level, String event, String client, String detail) {
+        if (isEnabled(level)) {
+            publish(new Event(level, event, client, detail, false));
+        }
+    }
+
+    /**
+     * Log a command that exceeded the slow-command threshold at WARN,
+     * unsampled, e.g. "WARN slow client=... micros=812345 cmd="SHAKE"".
+     *
+     * @param fields Measurements as key=value pairs
+     */
+    public static void slowCommand(String client, String command, String fields) {
+        if (isEnabled(Level.WARN)) {
+            publish(new Event(Level.WARN, "slow", client, command, true, fields));
+        }
+    }
+
+    /** Lines written so far. */
+    public static long getWritten() {
+        return written.sum();
+    }
+
+    /** Events dropped because the buffer was full. */
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    /** Requests skipped by sampling. */
+    public static long getSampledOut() {
+        return sampledOut.sum();
+    }
+
+    /**
+     * Wait briefly for buffered events to be written, e.g. at shutdown.
+     */
+    public static void flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long target = tail.get();
+        while (flushed < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private static void publish(Event event) {
+        startWriter();
+        while (true) {
+            long slot = tail.get();
+            if (slot - head >= CAPACITY) {
+                dropped.increment(); // Full: never wait for the writer
+                return;
+            }
+            if (tail.compareAndSet(slot, slot + 1)) {
+                ring.set((int) slot & MASK, event);
+                return;
+            }
+        }
+    }
+
+    private static void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        synchronized (RequestLog.class) {
+            if (writer == null) {
+                Thread thread = new Thread(RequestLog::drain, "request-log");
+                thread.setDaemon(true);
+                thread.start();
+                writer = thread;
+            }
+        }
+    }
+
+    /** Writer thread: format and write events in order, batching flushes. */
+    private static void drain() {
+        // Bypass System.out so client threads never share its lock with us
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+        StringBuilder line = new StringBuilder(256);
+        long next = head;
+        while (true) {
+            int index = (int) next & MASK;
+            Event event = ring.get(index);
+            if (event == null) {
+                // Empty, or the producer that claimed this slot has not stored yet
+                if (flushed != next) {
+                    try {
+                        out.flush();
+                    } catch (IOException e) {
+                        // Nowhere left to report it
+                    }
+                    flushed = next;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+
+            ring.set(index, null);
+            head = ++next;
+            format(event, line);
+            try {
+                out.write(line.toString());
+            } catch (IOException e) {
+                dropped.increment();
+                continue;
+            }
+            written.increment();
+        }
+    }
+
+    private static void format(Event event, StringBuilder line) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(event.timestamp)).append(' ').append(event.level).append(' ')
+                .append(event.event);
+        if (event.client != null) {
+            line.append(" client=").append(event.client);
+        }
+        if (event.fields != null) {
+            line.append(' ').append(event.fields);
+        }
+        if (event.detail != null) {
+            if (event.quoted) {
+                line.append(" cmd=\"").append(event.detail.replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append('"');
+            } else {
+                line.append(' ').append(event.detail);
+            }
+        }
+        line.append(System.lineSeparator());
+    }
+
+    private static double rateOf(String command) {
+        int end = 0;
+        int length = command.length();
+        while (end < length && !Character.isWhitespace(command.charAt(end))) {
+            end++;
+        }
+        Double rate = commandRates.get(command.substring(0, end).toUpperCase(Locale.ROOT));
+        return rate != null ? rate : SAMPLE_RATE;
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid value for bbs.log.level: " + value);
+            return Level.INFO;
+        }
+    }
+
+    private static double sampleRate(String name, double defaultValue) {
+        return Math.max(0.0, Math.min(1.0, ServerConfig.doubleValue(name, defaultValue)));
+    }
+}
@@ -1,7 +1,11 @@
+package server;
+
 import java.io.*;
 import java.net.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A simple bulletin board server implementation to demonstrate socket
@@ -25,24 +29,14 @@ public final class Server {
     // Volatile flag to allow graceful shutdown
     private static volatile boolean running = true;
 
-    // Board configuration per RFC Section 4.2
-    private static final int BOARD_WIDTH = 800;
-    private static final int BOARD_HEIGHT = 600;
-    private static final int NOTE_WIDTH = 100;
-    private static final int NOTE_HEIGHT = 100;
-
-    // Valid colors per RFC Section 4.3
-    private static Set<String> getValidColors() {
-        Set<String> colors = new HashSet<>();
-        colors.add("yellow");
-        colors.add("blue");
-        colors.add("green");
-        colors.add("pink");
-        colors.add("orange");
-        colors.add("purple");
-        colors.add("white");
-        return colors;
-    }
+    // Snapshot settings: -Dbbs.snapshot.dir enables periodic snapshots
+    private static final int SNAPSHOT_INTERVAL_SECONDS = ServerConfig.integer("snapshot.intervalSeconds", 60);
+
+    // Named boards with no connections are evicted after this many idle seconds
+    private static final int BOARD_IDLE_SECONDS = ServerConfig.integer("board.idleSeconds", 600);
+
+    // Metrics are printed this often; 0 disables the periodic dump
+    private static final int METRICS_DUMP_SECONDS = ServerConfig.integer("metrics.dumpSeconds", 60);
 
     public static void main(String argv[]) throws Exception {
         // Get the port number from the command line
@@ -70,10 +64,33 @@ public final class Server {
             System.out.println("Press Ctrl+C to stop the server");
             System.out.println("---------------------------------------------------");
 
-            // Create shared board instance per RFC Section 10.2
-            Board board = new Board(BOARD_WIDTH, BOARD_HEIGHT, NOTE_WIDTH, NOTE_HEIGHT, getValidColors());
-            System.out.println("Board initialized: " + BOARD_WIDTH + "x" + BOARD_HEIGHT +
-                    " (notes: " + NOTE_WIDTH + "x" + NOTE_HEIGHT + ")");
+            // Create the board registry; each named board is shared by the
+            // clients bound to it per RFC Section 10.2
+            // -Dbbs.replication.primary=host:port runs this server as a read replica
+            String snapshotDir = ServerConfig.string("snapshot.dir", null);
+            String primary = ServerConfig.string("replication.primary", null);
+            if (primary != null) {
+                System.out.println("Read replica of " + primary);
+            }
+            BoardRegistry registry = new BoardRegistry(
+                    snapshotDir == null ? null : Paths.get(snapshotDir), BOARD_IDLE_SECONDS, primary);
+            startMaintenance(registry, snapshotDir != null);
+
+            // -Dbbs.http.port=<port> also serves the boards as JSON over HTTP
+            if (HttpGateway.PORT > 0) {
+                try {
+                    HttpGateway.start(registry, HttpGateway.PORT);
+                    System.out.println("HTTP gateway on port " + HttpGateway.PORT);
+                } catch (IOException e) {
+                    System.err.println("Error starting HTTP gateway on port " + HttpGateway.PORT + ": "
+                            + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            // One timer thread serves every connection's idle timeout
+            HashedWheelTimer timer = new HashedWheelTimer("connection-timer", 100, TimeUnit.MILLISECONDS, 512);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> RequestLog.flush(1000), "request-log-flush"));
 
             // Step 2: Process client requests in an infinite loop
             while (running) {
@@ -87,8 +104,8 @@ public final class Server {
                     String clientIP = clientConnection.getInetAddress().getHostAddress();
 
                     // Step 3: Create a ClientHandler object to handle this specific request
-                    // Pass the client socket and shared board to the request handler
-                    ClientHandler request = new ClientHandler(clientConnection, clientIP, board);
+                    // Pass the client socket, board registry and timer to the request handler
+                    ClientHandler request = new ClientHandler(clientConnection, clientIP, registry, timer);
 
                     // Step 4: Create a new thread to process the request
                     // This is crucial because accept() is blocking
@@ -125,6 +142,47 @@ public final class Server {
         }
     }
 
+    /**
+     * Schedule background board maintenance: idle board eviction, the
+     * periodic metrics dump and, when enabled, periodic snapshots plus a
+     * final one at shutdown. Snapshots are
+     * written from an immutable board view, so they never hold a board lock
+     * while doing I/O.
+     */
+    private static void startMaintenance(BoardRegistry registry, boolean snapshots) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "board-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int evictPeriod = Math.max(1, Math.min(60, BOARD_IDLE_SECONDS));
+        scheduler.scheduleWithFixedDelay(registry::evictIdle, evictPeriod, evictPeriod, TimeUnit.SECONDS);
+
+        if (METRICS_DUMP_SECONDS > 0) {
+            scheduler.scheduleAtFixedRate(() -> {
+                for (String line : ServerMetrics.report(registry)) {
+                    System.out.println(line);
+                }
+            }, METRICS_DUMP_SECONDS, METRICS_DUMP_SECONDS, TimeUnit.SECONDS);
+        }
+
+        if (snapshots) {
+            scheduler.scheduleWithFixedDelay(registry::snapshotAll, SNAPSHOT_INTERVAL_SECONDS,
+                    SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                scheduler.shutdown();
+                try {
+                    scheduler.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                registry.snapshotAll();
+            }, "snapshot-final"));
+            System.out.println("Snapshots every " + SNAPSHOT_INTERVAL_SECONDS + "s");
+        }
+    }
+
     /**
      * Gracefully shut down the server (can be called from other threads)
      */
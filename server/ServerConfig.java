@@ -0,0 +1,87 @@
+package server;
+
+/**
+ * ServerConfig reads tunable server settings.
+ *
+ * Settings are supplied as JVM system properties with a "bbs." prefix,
+ * for example:
+ *
+ * java -Dbbs.snapshot.dir=/var/lib/bbs server.Server 4200
+ *
+ * Every setting has a default that matches the original hard-coded
+ * behaviour, so running "java server.Server" with no properties is unchanged.
+ */
+public final class ServerConfig {
+    private static final String PREFIX = "bbs.";
+
+    private ServerConfig() {
+    }
+
+    /**
+     * Read a string setting.
+     *
+     * @param name         Setting name without the "bbs." prefix
+     * @param defaultValue Value used when the property is not set
+     * @return Configured value or default
+     */
+    public static String string(String name, String defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    /**
+     * Read an integer setting. Malformed values fall back to the default.
+     */
+    public static int integer(String name, int defaultValue) {
+        String value = string(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a long setting. Malformed values fall back to the default.
+     */
+    public static long longValue(String name, long defaultValue) {
+        String value = string(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a decimal setting. Malformed values fall back to the default.
+     */
+    public static double doubleValue(String name, double defaultValue) {
+        String value = string(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + PREFIX + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a boolean setting ("true"/"false").
+     */
+    public static boolean flag(String name, boolean defaultValue) {
+        String value = string(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,175 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerMetrics collects server-wide performance counters.
+ *
+ * Recorded:
+ * - Per command: count, errors and a latency histogram of processCommand
+ * - Errors by RFC Section 9.1 code
+ * - Board lock wait time (blocked acquiring stripes) and hold time
+ * - Live and total connections, and connections reaped by timeouts
+ * - Commands shed by LoadShedder, and board commands in flight
+ * - Request log lines written, dropped and sampled out
+ *
+ * All recorders are lock-free (LongAdder counters and LatencyHistogram), so
+ * instrumentation never adds contention to the paths it measures. Metrics
+ * are process-wide and reset only on restart. They are reported through
+ * the STATS command and periodically to System.out.
+ */
+public final class ServerMetrics {
+    // Commands with their own counters; anything else is counted as OTHER
+    private static final String[] COMMANDS = { "POST", "GET", "DELETE", "EDIT", "PIN", "UNPIN", "SHAKE", "CLEAR",
+            "DISCONNECT", "USE", "REPLICATE", "LAG", "STATS", "PING", "EXPORT", "IMPORT", "OTHER" };
+
+    private static final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private static final LatencyHistogram lockWait = new LatencyHistogram();
+    private static final LatencyHistogram lockHold = new LatencyHistogram();
+    private static final AtomicInteger liveConnections = new AtomicInteger();
+    private static final LongAdder totalConnections = new LongAdder();
+    private static final LongAdder reapedIdle = new LongAdder();
+    private static final LongAdder reapedReadTimeout = new LongAdder();
+    private static final long startedAt = System.currentTimeMillis();
+
+    static {
+        for (String command : COMMANDS) {
+            commands.put(command, new CommandStats());
+        }
+    }
+
+    /** Counters for one command type. */
+    private static final class CommandStats {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Record one processed command.
+     *
+     * @param command   Upper-case command name
+     * @param nanos     Time spent in processCommand
+     * @param errorCode RFC error code, or null on success
+     */
+    public static void recordCommand(String command, long nanos, String errorCode) {
+        CommandStats stats = commands.get(command);
+        if (stats == null) {
+            stats = commands.get("OTHER");
+        }
+        stats.count.increment();
+        stats.latency.record(nanos);
+        if (errorCode != null) {
+            stats.errors.increment();
+            errors.computeIfAbsent(errorCode, code -> new LongAdder()).increment();
+        }
+    }
+
+    /** Record time spent waiting to acquire board lock stripes. */
+    public static void recordLockWait(long nanos) {
+        lockWait.record(nanos);
+    }
+
+    /** Record time board lock stripes were held. */
+    public static void recordLockHold(long nanos) {
+        lockHold.record(nanos);
+    }
+
+    public static void connectionOpened() {
+        liveConnections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    public static void connectionClosed() {
+        liveConnections.decrementAndGet();
+    }
+
+    /**
+     * Record a connection closed by the server for inactivity.
+     *
+     * @param reason "idle" or "readTimeout"
+     */
+    public static void connectionReaped(String reason) {
+        (reason.equals("idle") ? reapedIdle : reapedReadTimeout).increment();
+    }
+
+    /**
+     * Format all metrics, one STAT line per item. Latencies are in
+     * microseconds.
+     *
+     * STAT uptime &lt;seconds&gt;
+     * STAT connections &lt;live&gt; &lt;total&gt;
+     * STAT reaped idle=&lt;n&gt; readTimeout=&lt;n&gt;
+     * STAT board &lt;name&gt; notes=&lt;n&gt; pins=&lt;n&gt; version=&lt;n&gt; expired=&lt;n&gt; bytes=&lt;n&gt; evicted=&lt;n&gt;
+     * STAT sequencer &lt;name&gt; commands=&lt;n&gt; batches=&lt;n&gt;
+     * STAT command &lt;name&gt; count=&lt;n&gt; errors=&lt;n&gt; p50=&lt;us&gt; p99=&lt;us&gt; p999=&lt;us&gt; max=&lt;us&gt;
+     * STAT error &lt;code&gt; &lt;count&gt;
+     * STAT lock wait|hold count=&lt;n&gt; p50=&lt;us&gt; p99=&lt;us&gt; p999=&lt;us&gt; max=&lt;us&gt;
+     * STAT shed queue=&lt;n&gt; lockWait=&lt;n&gt; inFlight=&lt;n&gt;
+     * STAT log written=&lt;n&gt; dropped=&lt;n&gt; sampledOut=&lt;n&gt;
+     */
+    public static List<String> report(BoardRegistry registry) {
+        List<String> lines = new ArrayList<>();
+        lines.add("STAT uptime " + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt));
+        lines.add("STAT connections " + liveConnections.get() + " " + totalConnections.sum());
+        lines.add("STAT reaped idle=" + reapedIdle.sum() + " readTimeout=" + reapedReadTimeout.sum());
+
+        List<String> boards = registry.getBoardNames();
+        Collections.sort(boards);
+        for (String name : boards) {
+            Board board = registry.getBoard(name);
+            if (board != null) {
+                lines.add("STAT board " + name + " notes=" + board.getNoteCount() + " pins="
+                        + board.getPinCount() + " version=" + board.getVersion() + " expired="
+                        + board.getExpiredCount() + " bytes=" + board.getEstimatedBytes() + " evicted="
+                        + board.getEvictedCount());
+            }
+            CommandSequencer sequencer = registry.getSequencer(name);
+            if (sequencer != null) {
+                lines.add("STAT sequencer " + name + " commands=" + sequencer.getCommands() + " batches="
+                        + sequencer.getBatches());
+            }
+        }
+
+        for (String command : COMMANDS) {
+            CommandStats stats = commands.get(command);
+            if (stats.count.sum() > 0) {
+                lines.add("STAT command " + command + " count=" + stats.count.sum() + " errors="
+                        + stats.errors.sum() + " " + percentiles(stats.latency));
+            }
+        }
+
+        for (Map.Entry<String, LongAdder> error : new TreeMap<>(errors).entrySet()) {
+            lines.add("STAT error " + error.getKey() + " " + error.getValue().sum());
+        }
+
+        lines.add("STAT lock wait count=" + lockWait.getCount() + " " + percentiles(lockWait));
+        lines.add("STAT lock hold count=" + lockHold.getCount() + " " + percentiles(lockHold));
+        lines.add("STAT shed queue=" + LoadShedder.getShedQueue() + " lockWait=" + LoadShedder.getShedLockWait()
+                + " inFlight=" + LoadShedder.getInFlight());
+        lines.add("STAT log written=" + RequestLog.getWritten() + " dropped=" + RequestLog.getDropped()
+                + " sampledOut=" + RequestLog.getSampledOut());
+        return lines;
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return "p50=" + micros(histogram.getPercentile(50)) + " p99=" + micros(histogram.getPercentile(99))
+                + " p999=" + micros(histogram.getPercentile(99.9)) + " max=" + micros(histogram.getMax());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
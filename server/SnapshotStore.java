@@ -0,0 +1,192 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SnapshotStore writes and loads board snapshots in a compact binary format.
+ *
+ * File layout (all integers big-endian):
+ *
+ * int magic "BBS1" | int formatVersion | long boardVersion | long createdAt
+ * int noteWidth | int noteHeight
+ * int noteCount, then per note: long id | long expiresAt | int x | int y | string color | string message
+ * int pinCount, then per pin: int x | int y
+ *
+ * where string is an int byte length followed by UTF-8 bytes and
+ * expiresAt is a wall-clock time in milliseconds, 0 for no TTL. Older
+ * formats are still read: format 2 has no expiresAt (notes never expire)
+ * and format 1, written before notes had IDs, also lacks the id, so its
+ * notes get new IDs.
+ *
+ * Snapshots are written to a temporary file, forced to disk and atomically
+ * renamed over the previous one, after which the directory is forced too,
+ * so a crash mid-write, of the process or of the machine, never leaves a
+ * torn snapshot behind. Where a directory cannot be forced (e.g. Windows),
+ * a power failure may undo the rename and leave the previous snapshot.
+ * Loading maps the file with a MappedByteBuffer and decodes it in a single
+ * pass, which avoids copying the file through stream buffers and keeps
+ * restart time proportional to the file size.
+ */
+public final class SnapshotStore {
+    private static final int MAGIC = 0x42425331; // "BBS1"
+    private static final int FORMAT_VERSION = 3;
+
+    private final Path file;
+
+    public SnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Write a snapshot to disk. Runs entirely outside the board lock.
+     *
+     * @param snapshot   Immutable board view to persist
+     * @param noteWidth  Note width of the board the snapshot came from
+     * @param noteHeight Note height of the board the snapshot came from
+     */
+    public void write(BoardSnapshot snapshot, int noteWidth, int noteHeight) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshot.getVersion());
+            out.writeLong(snapshot.getCreatedAt());
+            out.writeInt(noteWidth);
+            out.writeInt(noteHeight);
+
+            List<Note> notes = snapshot.getNotes();
+            out.writeInt(notes.size());
+            for (Note note : notes) {
+                out.writeLong(note.getId());
+                out.writeLong(note.getExpiresAt());
+                out.writeInt(note.getX());
+                out.writeInt(note.getY());
+                writeString(out, note.getColor());
+                writeString(out, note.getMessage());
+            }
+
+            List<int[]> pins = snapshot.getPins();
+            out.writeInt(pins.size());
+            for (int[] pin : pins) {
+                out.writeInt(pin[0]);
+                out.writeInt(pin[1]);
+            }
+            out.flush();
+            // The data must be durable before the rename can be
+            channel.force(true);
+        }
+
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (dir != null) {
+            forceDirectory(dir);
+        }
+    }
+
+    /** Make a rename in dir durable, where the platform allows it. */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported here (e.g. Windows); the rename is still atomic
+        }
+    }
+
+    /**
+     * Load the snapshot through a memory-mapped buffer.
+     *
+     * @return The decoded snapshot, or null if no snapshot file exists
+     * @throws IOException if the file is unreadable or not a valid snapshot
+     */
+    public BoardSnapshot read() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 32 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a board snapshot: " + file);
+            }
+            int format = buffer.getInt();
+            if (format < 1 || format > FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format " + format + " in " + file);
+            }
+            long version = buffer.getLong();
+            buffer.getLong(); // createdAt, informational only
+            int noteWidth = buffer.getInt();
+            int noteHeight = buffer.getInt();
+
+            // Colors repeat across millions of notes; share one String per color
+            Map<String, String> colors = new HashMap<>();
+
+            int noteCount = buffer.getInt();
+            List<Note> notes = new ArrayList<>(Math.min(noteCount, buffer.remaining() / 16));
+            for (int i = 0; i < noteCount; i++) {
+                long id = format >= 2 ? buffer.getLong() : 0;
+                long expiresAt = format >= 3 ? buffer.getLong() : 0;
+                int x = buffer.getInt();
+                int y = buffer.getInt();
+                String color = colors.computeIfAbsent(readString(buffer), c -> c);
+                String message = readString(buffer);
+                Note note = new Note(x, y, noteWidth, noteHeight, color, message);
+                note.setId(id);
+                note.setExpiresAt(expiresAt);
+                notes.add(note);
+            }
+
+            int pinCount = buffer.getInt();
+            List<int[]> pins = new ArrayList<>(Math.min(pinCount, buffer.remaining() / 8));
+            for (int i = 0; i < pinCount; i++) {
+                pins.add(new int[] { buffer.getInt(), buffer.getInt() });
+            }
+
+            return new BoardSnapshot(version, notes, pins);
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + file);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new java.nio.BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
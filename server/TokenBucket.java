@@ -0,0 +1,61 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TokenBucket limits the rate at which one client may spend tokens.
+ *
+ * The bucket holds up to burst tokens and refills continuously at rate
+ * tokens per second; a command is allowed if its cost can be paid from the
+ * bucket. Refill is computed lazily from the elapsed time, so an idle
+ * bucket costs nothing.
+ *
+ * Thread-safe. A connection owns its bucket, so the lock is uncontended;
+ * the HTTP gateway shares one bucket among the requests of a client.
+ */
+public final class TokenBucket {
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate  Tokens added per second
+     * @param burst Bucket capacity; the bucket starts full
+     */
+    public TokenBucket(double rate, double burst) {
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take cost tokens if the bucket holds that many.
+     *
+     * @return true if the tokens were taken
+     */
+    public synchronized boolean tryAcquire(double cost) {
+        refill();
+        if (tokens >= cost) {
+            tokens -= cost;
+            return true;
+        }
+        return false;
+    }
+
+    /** Milliseconds until cost tokens will be available. */
+    public synchronized long millisUntil(double cost) {
+        refill();
+        double missing = Math.min(cost, burst) - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / rate * 1000);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / NANOS_PER_SECOND * rate);
+        lastRefill = now;
+    }
+}
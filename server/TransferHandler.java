@@ -0,0 +1,302 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * TransferHandler implements the bulk EXPORT and IMPORT commands.
+ *
+ * Per RFC Section 7.15 - EXPORT Command:
+ * Syntax: EXPORT
+ * Answers OK &lt;n&gt; followed by n lines: every note as
+ * NOTE &lt;id&gt; &lt;x&gt; &lt;y&gt; [expires=&lt;ms&gt;] &lt;color&gt; &lt;message&gt;
+ * in ID order, then every pin as PIN &lt;x&gt; &lt;y&gt;. expires= is the
+ * wall-clock expiry of a note posted with a TTL, in milliseconds. The lines come from a
+ * point-in-time snapshot and are streamed to the socket, so exporting a
+ * large board neither holds the board lock nor builds the response in
+ * memory.
+ *
+ * Per RFC Section 7.16 - IMPORT Command:
+ * Syntax: IMPORT [REPLACE], followed by lines in the EXPORT format and a
+ * final END line. In place of expires= a NOTE line may give
+ * ttl=&lt;seconds&gt;, counted from the import.
+ * Lines are checked as they arrive (syntax, bounds, palette) and applied
+ * in batches of bbs.import.batchSize items (default 1000) through
+ * Board.importBatch, which also checks overlap and pin placement. Only one
+ * batch is held in memory however long the input. Invalid lines are
+ * skipped and counted. REPLACE clears the board first; other clients may
+ * see the board partly loaded.
+ *
+ * The body arrives at the client's pace, so IMPORT holds no LoadShedder
+ * permit while reading it: the clear and each batch are admitted on their
+ * own, like separate board commands. If one is shed, the rest of the body
+ * is discarded and IMPORT answers OVERLOADED; batches already applied stay.
+ *
+ * Success Response (RFC Section 8.1):
+ * - OK IMPORTED &lt;notes&gt; &lt;pins&gt; &lt;rejected&gt;
+ *
+ * The same format is read and written offline by BoardTool.
+ */
+public class TransferHandler {
+    // Items applied per board lock round
+    static final int BATCH_SIZE = Math.max(1, ServerConfig.integer("import.batchSize", 1000));
+
+    /** Import totals. */
+    static final class Result {
+        long notes;
+        long pins;
+        long rejected;
+        String overload; // why a batch was shed, or null
+    }
+
+    /**
+     * Handle the EXPORT command.
+     *
+     * @param board The shared board state
+     * @param parts Parsed command parts [EXPORT]
+     * @return Streaming response, or error
+     */
+    public static ProtocolResponse handleExport(Board board, String[] parts) {
+        if (parts.length != 1) {
+            return ProtocolResponse.error("INVALID_FORMAT", "EXPORT takes no parameters");
+        }
+
+        BoardSnapshot snapshot = board.snapshot();
+        int count = snapshot.getNotes().size() + snapshot.getPins().size();
+        return ProtocolResponse.okWithStream(String.valueOf(count), out -> write(snapshot, out), false);
+    }
+
+    /**
+     * Handle the IMPORT command. Always reads the body up to END, so the
+     * connection stays in step even when the command is rejected.
+     *
+     * @param board The shared board state
+     * @param parts Parsed command parts [IMPORT, REPLACE?]
+     * @param in    Connection input positioned after the command line
+     * @return ProtocolResponse with the import totals, or error
+     */
+    public static ProtocolResponse handleImport(Board board, String[] parts, BufferedReader in) {
+        if (in == null) {
+            return ProtocolResponse.error("INVALID_FORMAT", "IMPORT needs a client connection");
+        }
+        try {
+            boolean replace = parts.length == 2 && parts[1].equalsIgnoreCase("REPLACE");
+            if (parts.length > 2 || (parts.length == 2 && !replace)) {
+                skipBody(in);
+                return ProtocolResponse.error("INVALID_FORMAT", "IMPORT takes only REPLACE");
+            }
+
+            if (replace) {
+                String overload = LoadShedder.admit();
+                if (overload != null) {
+                    skipBody(in);
+                    return ProtocolHandler.overloaded(overload);
+                }
+                try {
+                    board.clear();
+                } finally {
+                    LoadShedder.release();
+                }
+            }
+            Result result = importLines(board, in, null, true);
+            if (result.overload != null) {
+                return ProtocolHandler.overloaded(result.overload + "; imported " + result.notes + " notes and "
+                        + result.pins + " pins before that");
+            }
+            return ProtocolResponse.okWithStatus("IMPORTED " + result.notes + " " + result.pins + " "
+                    + result.rejected);
+        } catch (IOException e) {
+            return ProtocolResponse.error("INVALID_FORMAT", "Import interrupted: " + e.getMessage());
+        }
+    }
+
+    /** Discard an IMPORT body that will not be applied. */
+    static void skipBody(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !line.equals("END")) {
+            // Discard
+        }
+    }
+
+    /** Write every note, then every pin, one line each. */
+    static void write(BoardSnapshot snapshot, PrintWriter out) {
+        for (Note note : snapshot.getNotes()) {
+            out.print(line(note) + "\n");
+        }
+        for (int[] pin : snapshot.getPins()) {
+            out.print("PIN " + pin[0] + " " + pin[1] + "\n");
+        }
+        out.flush();
+    }
+
+    /** Format one note; GET's NOTE format plus the expiry, if any. */
+    static String line(Note note) {
+        if (note.getExpiresAt() == 0) {
+            return note.toString();
+        }
+        return "NOTE " + note.getId() + " " + note.getX() + " " + note.getY() + " expires="
+                + note.getExpiresAt() + " " + note.getColor() + " " + note.getMessage();
+    }
+
+    /**
+     * Read lines up to END or end of input and apply them in batches.
+     *
+     * @param rejects Told the line number and RFC error code of each line
+     *                rejected before batching, or null
+     * @param shed    Admit each batch through LoadShedder; a shed batch
+     *                sets Result.overload and the rest of the input is
+     *                discarded
+     */
+    static Result importLines(Board board, BufferedReader in, ObjLongConsumer<String> rejects, boolean shed)
+            throws IOException {
+        Result result = new Result();
+        List<Note> notes = new ArrayList<>();
+        List<int[]> pins = new ArrayList<>();
+        // Colors repeat on every line; share one String per color
+        Map<String, String> colors = new HashMap<>();
+
+        String line;
+        long lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.equals("END")) {
+                break;
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String error = parseLine(board, line, notes, pins, colors);
+            if (error != null) {
+                result.rejected++;
+                if (rejects != null) {
+                    rejects.accept(error, lineNumber);
+                }
+            }
+            if (notes.size() + pins.size() >= BATCH_SIZE) {
+                applyBatch(board, notes, pins, result, shed);
+                if (result.overload != null) {
+                    skipBody(in);
+                    return result;
+                }
+            }
+        }
+        applyBatch(board, notes, pins, result, shed);
+        return result;
+    }
+
+    private static void applyBatch(Board board, List<Note> notes, List<int[]> pins, Result result,
+            boolean shed) {
+        if (notes.isEmpty() && pins.isEmpty()) {
+            return;
+        }
+        if (shed) {
+            result.overload = LoadShedder.admit();
+            if (result.overload != null) {
+                return;
+            }
+        }
+        int[] added;
+        try {
+            added = board.importBatch(notes, pins);
+        } finally {
+            if (shed) {
+                LoadShedder.release();
+            }
+        }
+        result.notes += added[0];
+        result.pins += added[1];
+        result.rejected += notes.size() + pins.size() - added[0] - added[1];
+        notes.clear();
+        pins.clear();
+    }
+
+    /**
+     * Parse one NOTE or PIN line into the current batch.
+     *
+     * @return null if added to the batch, otherwise the RFC error code
+     */
+    private static String parseLine(Board board, String line, List<Note> notes, List<int[]> pins,
+            Map<String, String> colors) {
+        try {
+            if (line.startsWith("NOTE ")) {
+                // NOTE <id> <x> <y> [expires=<ms>|ttl=<s>] <color> <message>;
+                // the message may hold spaces, colors never hold '='
+                String[] f = line.split(" ", 6);
+                int colorField = 4;
+                long expiresAt = 0;
+                if (f.length >= 5 && f[4].indexOf('=') >= 0) {
+                    expiresAt = parseExpiry(f[4]);
+                    if (expiresAt <= 0) {
+                        return "INVALID_FORMAT";
+                    }
+                    f = line.split(" ", 7);
+                    colorField = 5;
+                }
+                if (f.length <= colorField) {
+                    return "INVALID_FORMAT";
+                }
+                long id = Long.parseLong(f[1]);
+                int x = Integer.parseInt(f[2]);
+                int y = Integer.parseInt(f[3]);
+                String color = colors.computeIfAbsent(f[colorField].toLowerCase(), c -> c);
+                if (id < 0) {
+                    return "INVALID_FORMAT";
+                }
+                if (x < 0 || y < 0) {
+                    return "OUT_OF_BOUNDS";
+                }
+                Note note = new Note(x, y, board.getNoteWidth(), board.getNoteHeight(), color,
+                        f.length > colorField + 1 ? f[colorField + 1] : "");
+                if (!note.isWithinBounds(board.getWidth(), board.getHeight())) {
+                    return "OUT_OF_BOUNDS";
+                }
+                if (!board.isValidColor(color)) {
+                    return "COLOR_NOT_SUPPORTED";
+                }
+                note.setId(id); // 0 asks the board for a new ID
+                note.setExpiresAt(expiresAt);
+                notes.add(note);
+                return null;
+            }
+            if (line.startsWith("PIN ")) {
+                String[] f = line.split(" ");
+                if (f.length != 3) {
+                    return "INVALID_FORMAT";
+                }
+                int x = Integer.parseInt(f[1]);
+                int y = Integer.parseInt(f[2]);
+                if (x < 0 || y < 0) {
+                    return "OUT_OF_BOUNDS";
+                }
+                pins.add(new int[] { x, y });
+                return null;
+            }
+            return "INVALID_FORMAT";
+        } catch (NumberFormatException e) {
+            return "INVALID_FORMAT";
+        }
+    }
+
+    /**
+     * Parse an expires=&lt;ms&gt; or ttl=&lt;seconds&gt; field.
+     *
+     * @return Wall-clock expiry in milliseconds, or 0 if the field is invalid
+     */
+    private static long parseExpiry(String field) {
+        if (field.regionMatches(true, 0, "expires=", 0, 8)) {
+            return Math.max(0, Long.parseLong(field.substring(8)));
+        }
+        if (field.regionMatches(true, 0, "ttl=", 0, 4)) {
+            long ttlSeconds = Integer.parseInt(field.substring(4));
+            return ttlSeconds > 0 ? System.currentTimeMillis() + ttlSeconds * 1000 : 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Capacity limits (RFC Section 9.1 BOARD_FULL) and eviction of unpinned
+ * notes to stay within them.
+ */
+class BoardCapacityTest {
+    private ProtocolFixture fixture;
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+        board = fixture.board;
+    }
+
+    @Test
+    void fullBoardWithoutEvictionRejectsPost() {
+        board.setCapacity(2, 0, Board.EvictionPolicy.NONE);
+        fixture.post("POST 0 0 yellow one");
+        fixture.post("POST 200 0 yellow two");
+        assertTrue(fixture.send("POST 400 0 yellow three").startsWith("ERROR BOARD_FULL"));
+        assertEquals(2, board.getNoteCount());
+    }
+
+    @Test
+    void fullBoardEvictsTheOldestNote() {
+        board.setCapacity(2, 0, Board.EvictionPolicy.OLDEST);
+        long first = fixture.post("POST 0 0 yellow one");
+        long second = fixture.post("POST 200 0 yellow two");
+        long third = fixture.post("POST 400 0 yellow three");
+        assertNull(board.getNote(first));
+        assertNotNull(board.getNote(second));
+        assertNotNull(board.getNote(third));
+        assertEquals(1, board.getEvictedCount());
+    }
+
+    @Test
+    void overlappingPostEvictsNothing() {
+        board.setCapacity(2, 0, Board.EvictionPolicy.OLDEST);
+        long first = fixture.post("POST 0 0 yellow one");
+        long second = fixture.post("POST 200 0 yellow two");
+        assertTrue(fixture.send("POST 200 0 blue same place").startsWith("ERROR COMPLETE_OVERLAP"));
+        assertNotNull(board.getNote(first));
+        assertNotNull(board.getNote(second));
+        assertEquals(0, board.getEvictedCount());
+    }
+
+    @Test
+    void growingEditMustFitTheByteLimit() {
+        long id = fixture.post("POST 0 0 yellow short");
+        board.setCapacity(0, board.getEstimatedBytes() + 20, Board.EvictionPolicy.NONE);
+        assertTrue(fixture.send("EDIT " + id + " a message far longer than twenty bytes allow").startsWith("ERROR BOARD_FULL"));
+        assertEquals("short", board.getNote(id).getMessage());
+        assertEquals("OK NOTE_EDITED", fixture.send("EDIT " + id + " longer"));
+        assertEquals("OK NOTE_EDITED", fixture.send("EDIT " + id + " s"));
+    }
+
+    @Test
+    void growingEditEvictsAnotherNote() {
+        long first = fixture.post("POST 0 0 yellow one");
+        long second = fixture.post("POST 200 0 yellow two");
+        board.setCapacity(2, board.getEstimatedBytes(), Board.EvictionPolicy.OLDEST);
+        assertEquals("OK NOTE_EDITED", fixture.send("EDIT " + second + " two, now longer"));
+        assertNull(board.getNote(first));
+        assertEquals("two, now longer", board.getNote(second).getMessage());
+        assertEquals(1, board.getEvictedCount());
+    }
+
+    @Test
+    void pinnedNotesAreNotEvicted() {
+        board.setCapacity(1, 0, Board.EvictionPolicy.OLDEST);
+        long pinned = fixture.post("POST 0 0 yellow keep");
+        assertEquals("OK PIN_ADDED", fixture.send("PIN 10 10"));
+        assertTrue(fixture.send("POST 200 0 yellow two").startsWith("ERROR BOARD_FULL"));
+        assertNotNull(board.getNote(pinned));
+        assertEquals(0, board.getEvictedCount());
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * POST and PIN through the flat-combining front end
+ * (bbs.board.combining): concurrent callers each get their own result,
+ * and one operation throwing fails only its own caller.
+ */
+class BoardCombiningTest {
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 50;
+
+    private Board board;
+    private ExecutorService pool;
+
+    /** A note whose overlap check throws once it is being placed. */
+    private static final class FailingNote extends Note {
+        FailingNote(int x, int y) {
+            super(x, y, 100, 100, "yellow", "fails");
+        }
+
+        @Override
+        public boolean overlapsCompletely(Note other) {
+            throw new IllegalStateException("combined operation failed");
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        System.setProperty("bbs.board.combining", "true");
+        try {
+            board = new Board(800, 600, 100, 100, Set.of("yellow"));
+        } finally {
+            System.clearProperty("bbs.board.combining");
+        }
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /** Thread t posts a row of notes at y = 60t, pinning each one. */
+    private List<Future<String>> postAndPinRows() {
+        List<Future<String>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int y = t * 60;
+            results.add(pool.submit(() -> {
+                for (int i = 0; i < PER_THREAD; i++) {
+                    String error = board.addNote(new Note(i * 10, y, 100, 100, "yellow", "row " + y));
+                    if (error == null) {
+                        error = board.addPin(i * 10 + 1, y + 1);
+                    }
+                    if (error != null) {
+                        return error;
+                    }
+                }
+                return null;
+            }));
+        }
+        return results;
+    }
+
+    @Test
+    void concurrentPostsAndPinsAllApply() throws Exception {
+        for (Future<String> result : postAndPinRows()) {
+            assertNull(result.get());
+        }
+        assertEquals(THREADS * PER_THREAD, board.getNoteCount());
+        assertEquals(THREADS * PER_THREAD, board.getPinCount());
+        assertEquals(2L * THREADS * PER_THREAD, board.getVersion());
+    }
+
+    @Test
+    void failingOperationFailsOnlyItsCaller() throws Exception {
+        // The failing notes share this note's anchor tile, so placing them
+        // runs the overlap check inside the combiner pass
+        assertNull(board.addNote(new Note(700, 500, 100, 100, "yellow", "anchor")));
+
+        List<Future<String>> results = postAndPinRows();
+        List<Future<?>> failures = new ArrayList<>();
+        for (int i = 0; i < PER_THREAD; i++) {
+            int offset = 1 + i % 9;
+            failures.add(pool.submit(() -> board.addNote(new FailingNote(700 - offset, 500 - offset))));
+        }
+
+        for (Future<String> result : results) {
+            assertNull(result.get());
+        }
+        for (Future<?> failure : failures) {
+            Exception e = assertThrows(Exception.class, failure::get);
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        assertEquals(THREADS * PER_THREAD + 1, board.getNoteCount());
+        assertEquals(THREADS * PER_THREAD, board.getPinCount());
+    }
+}
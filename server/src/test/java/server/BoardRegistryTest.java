@@ -0,0 +1,117 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Binding to named boards: one board per name however many connections
+ * race to create it, eviction through the board's snapshot, replication
+ * logs started only for boards that are replicated, and USE describing
+ * the board it selects.
+ */
+class BoardRegistryTest {
+    @TempDir
+    Path snapshots;
+
+    @Test
+    void concurrentAcquiresShareOneBoard() throws Exception {
+        BoardRegistry registry = new BoardRegistry(null, 600, null);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Board>> boards = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                boards.add(pool.submit(() -> {
+                    start.await();
+                    return registry.acquire("shared");
+                }));
+            }
+            start.countDown();
+            Board first = boards.get(0).get();
+            for (Future<Board> board : boards) {
+                assertSame(first, board.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void evictedBoardIsReloadedFromItsSnapshot() throws InterruptedException {
+        BoardRegistry registry = new BoardRegistry(snapshots, 0, null);
+        Board board = registry.acquire("team");
+        assertNull(board.addNote(new Note(0, 0, 100, 100, "yellow", "kept")));
+        assertEquals(0, registry.evictIdle()); // still bound
+        registry.release("team");
+
+        Thread.sleep(5);
+        assertEquals(1, registry.evictIdle());
+        assertNull(registry.getBoard("team"));
+
+        Board reloaded = registry.acquire("team");
+        assertNotSame(board, reloaded);
+        assertEquals(1, reloaded.getNoteCount());
+        assertTrue(registry.getBoardNames().contains("team"));
+        registry.release("team");
+    }
+
+    @Test
+    void replicationLogStartsOnFirstReplicate() {
+        BoardRegistry registry = new BoardRegistry(null, 600, null);
+        Board board = registry.acquire("team");
+        assertNull(board.getReplicationLog());
+
+        ReplicationLog log = registry.replicationLog("team", board);
+        assertSame(log, board.getReplicationLog());
+        assertSame(log, registry.replicationLog("team", board));
+        registry.release("team");
+    }
+
+    @Test
+    void onlyAllowedBoardsReplicate() {
+        System.setProperty("bbs.replication.allow", "team, ops");
+        BoardRegistry registry;
+        try {
+            registry = new BoardRegistry(null, 600, null);
+        } finally {
+            System.clearProperty("bbs.replication.allow");
+        }
+        assertNotNull(registry.replicationLog("ops", registry.acquire("ops")));
+        Board other = registry.acquire("other");
+        assertNull(registry.replicationLog("other", other));
+        assertNull(other.getReplicationLog());
+    }
+
+    @Test
+    void useDescribesTheSelectedBoard() {
+        ProtocolFixture fixture = new ProtocolFixture();
+        System.setProperty("bbs.board.wide.width", "1600");
+        System.setProperty("bbs.board.wide.colors", "red,black");
+        try {
+            assertEquals("OK BOARD_SELECTED 1600 600 100 100 red,black", fixture.send("USE wide"));
+        } finally {
+            System.clearProperty("bbs.board.wide.width");
+            System.clearProperty("bbs.board.wide.colors");
+        }
+        assertTrue(fixture.send("POST 1400 0 red far right").startsWith("OK NOTE_POSTED"));
+
+        assertEquals("OK BOARD_SELECTED 800 600 100 100 yellow,blue,green,pink,orange,purple,white",
+                fixture.send("USE default"));
+        assertTrue(fixture.send("POST 1400 0 yellow far right").startsWith("ERROR OUT_OF_BOUNDS"));
+    }
+}
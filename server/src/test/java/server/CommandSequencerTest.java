@@ -0,0 +1,115 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The single-writer sequencer: commands run one at a time in claim order,
+ * failures reach their callers, and stop() strands no caller.
+ */
+class CommandSequencerTest {
+    private static final int THREADS = 4;
+
+    /** Start THREADS threads running body, released together. */
+    private static List<Thread> startAll(CountDownLatch start, Runnable body) {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                body.run();
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(10_000);
+            assertFalse(thread.isAlive(), "caller still waiting on the sequencer");
+        }
+    }
+
+    @Test
+    void commandsRunOneAtATimeInEachCallersOrder() throws InterruptedException {
+        CommandSequencer sequencer = new CommandSequencer("test");
+        // Only the writer touches these, so they need no synchronization
+        List<Thread> runners = new ArrayList<>();
+        long[] lastSeen = new long[THREADS];
+        int[] outOfOrder = new int[1];
+        AtomicInteger ids = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = startAll(start, () -> {
+            int id = ids.getAndIncrement();
+            for (long i = 1; i <= 5_000; i++) {
+                long value = i;
+                sequencer.execute(() -> {
+                    runners.add(Thread.currentThread());
+                    if (lastSeen[id] != value - 1) {
+                        outOfOrder[0]++;
+                    }
+                    lastSeen[id] = value;
+                    return null;
+                });
+            }
+        });
+        start.countDown();
+        joinAll(threads);
+        sequencer.stop();
+
+        assertEquals(THREADS * 5_000, runners.size());
+        assertTrue(runners.stream().allMatch(thread -> thread == runners.get(0)));
+        assertEquals(0, outOfOrder[0]);
+        assertEquals(THREADS * 5_000, sequencer.getCommands());
+    }
+
+    @Test
+    void failureIsRethrownToItsCallerOnly() {
+        CommandSequencer sequencer = new CommandSequencer("test");
+        IllegalStateException failure = new IllegalStateException("boom");
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> sequencer.execute(() -> {
+            throw failure;
+        })));
+        assertEquals("next", sequencer.execute(() -> "next"));
+        sequencer.stop();
+    }
+
+    @Test
+    void stopRacingExecuteRunsEveryCommandOnce() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            CommandSequencer sequencer = new CommandSequencer("test");
+            AtomicInteger ran = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = startAll(start, () -> {
+                for (int i = 0; i < 100; i++) {
+                    sequencer.execute(ran::incrementAndGet);
+                }
+            });
+            start.countDown();
+            sequencer.stop();
+            joinAll(threads);
+            assertEquals(THREADS * 100, ran.get());
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!sequencer.isStopped() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(sequencer.isStopped(), "writer did not exit");
+        }
+    }
+}
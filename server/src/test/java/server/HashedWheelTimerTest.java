@@ -0,0 +1,56 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The timer wheel: tasks run once after their delay, and a cancelled task
+ * neither runs nor stays reachable from the wheel.
+ */
+class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+
+    @AfterEach
+    void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    void scheduledTaskRunsAndCancelledTaskDoesNot() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        HashedWheelTimer.Timeout cancelled = timer.schedule(() -> cancelledRan.set(true), 50, TimeUnit.MILLISECONDS);
+        timer.schedule(ran::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertFalse(cancelledRan.get());
+    }
+
+    @Test
+    void cancelledTaskIsReleasedBeforeItsSlotComesRound() throws InterruptedException {
+        Object owner = new Object();
+        WeakReference<Object> ref = new WeakReference<>(owner);
+        // Due far beyond one revolution of the wheel
+        HashedWheelTimer.Timeout timeout = timer.schedule(owner::hashCode, 1, TimeUnit.HOURS);
+        owner = null;
+        Thread.sleep(50); // Into the wheel
+        assertTrue(timeout.cancel());
+
+        for (int i = 0; i < 100 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(ref.get());
+    }
+}
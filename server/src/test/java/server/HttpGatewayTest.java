@@ -0,0 +1,150 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The HTTP gateway (RFC Section 13.7): ETags and 304s, HEAD, region lists
+ * and mutations run as single protocol commands.
+ */
+class HttpGatewayTest {
+    private BoardRegistry registry;
+    private HttpGateway gateway;
+    private HttpClient http;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registry = new ProtocolFixture().registry;
+        gateway = HttpGateway.start(registry, 0);
+        http = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.stop();
+    }
+
+    private HttpResponse<String> request(String method, String path, String body, String ifNoneMatch)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + gateway.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String message) throws IOException, InterruptedException {
+        return request("POST", "/boards/default/notes",
+                "{\"x\":0,\"y\":0,\"color\":\"yellow\",\"message\":\"" + message + "\"}", null);
+    }
+
+    @Test
+    void conditionalGetIsNotModifiedUntilTheBoardChanges() throws IOException, InterruptedException {
+        assertEquals(201, post("first").statusCode());
+        HttpResponse<String> get = request("GET", "/boards/default/notes", null, null);
+        assertEquals(200, get.statusCode());
+        String tag = get.headers().firstValue("ETag").orElseThrow();
+        assertTrue(tag.startsWith("W/\""), tag);
+        assertTrue(get.body().contains("\"message\":\"first\""), get.body());
+
+        HttpResponse<String> unchanged = request("GET", "/boards/default/notes", null, tag);
+        assertEquals(304, unchanged.statusCode());
+        assertEquals("", unchanged.body());
+        assertEquals(tag, unchanged.headers().firstValue("ETag").orElseThrow());
+
+        assertEquals(200, request("POST", "/boards/default/pins", "{\"x\":10,\"y\":10}", null).statusCode());
+        HttpResponse<String> changed = request("GET", "/boards/default/notes", null, tag);
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(tag, changed.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void headIsAnsweredLikeGetWithoutABody() throws IOException, InterruptedException {
+        assertEquals(201, post("first").statusCode());
+        for (String path : new String[] { "/boards/default", "/boards/default/notes", "/boards/default/pins" }) {
+            HttpResponse<String> get = request("GET", path, null, null);
+            HttpResponse<String> head = request("HEAD", path, null, null);
+            assertEquals(200, head.statusCode(), path);
+            assertEquals("", head.body(), path);
+            String tag = get.headers().firstValue("ETag").orElseThrow();
+            assertEquals(tag, head.headers().firstValue("ETag").orElseThrow(), path);
+            assertEquals(String.valueOf(get.body().length()),
+                    head.headers().firstValue("Content-Length").orElseThrow(), path);
+            assertEquals(304, request("HEAD", path, null, tag).statusCode(), path);
+        }
+        assertEquals(404, request("HEAD", "/boards/default/notes/999", null, null).statusCode());
+    }
+
+    @Test
+    void readsOfAnUnknownBoardCreateNothing() throws IOException, InterruptedException {
+        for (String path : new String[] { "/boards/nobody", "/boards/nobody/notes", "/boards/nobody/pins",
+                "/boards/nobody/notes/1" }) {
+            assertEquals(404, request("GET", path, null, null).statusCode(), path);
+            assertEquals(404, request("HEAD", path, null, null).statusCode(), path);
+        }
+        assertNull(registry.getBoard("nobody"));
+
+        assertEquals(201, request("POST", "/boards/nobody/notes",
+                "{\"x\":0,\"y\":0,\"color\":\"yellow\",\"message\":\"hello\"}", null).statusCode());
+        assertEquals(200, request("GET", "/boards/nobody/notes", null, null).statusCode());
+    }
+
+    @Test
+    void readsAreChargedToTheClientsBucketExcept304s() throws IOException, InterruptedException {
+        assertEquals(201, post("first").statusCode());
+        gateway.stop();
+        // Room for two GETs at 5 tokens each, and no refill to speak of
+        gateway = HttpGateway.start(registry, 0, () -> new TokenBucket(0.001, 10));
+
+        HttpResponse<String> get = request("GET", "/boards/default/notes", null, null);
+        assertEquals(200, get.statusCode());
+        String tag = get.headers().firstValue("ETag").orElseThrow();
+        assertEquals(200, request("GET", "/boards/default/pins", null, null).statusCode());
+        HttpResponse<String> limited = request("GET", "/boards/default/notes?refersTo=a", null, null);
+        assertEquals(429, limited.statusCode());
+        assertTrue(limited.body().contains("\"RATE_LIMITED\""), limited.body());
+        assertEquals(304, request("GET", "/boards/default/notes", null, tag).statusCode());
+    }
+
+    @Test
+    void regionOffTheBoardIsAnEmptyList() throws IOException, InterruptedException {
+        assertEquals(201, post("first").statusCode());
+        assertEquals("{\"notes\":[]}", request("GET", "/boards/default/notes?region=5000,0,10,10", null, null).body());
+        assertEquals("{\"pins\":[]}", request("GET", "/boards/default/pins?region=0,5000,10,10", null, null).body());
+        assertTrue(request("GET", "/boards/default/notes?region=50,50,5000,5000", null, null).body()
+                .contains("\"message\":\"first\""));
+    }
+
+    @Test
+    void mutationCountsAsOneCommandInStats() throws IOException, InterruptedException {
+        long uses = commandCount("USE");
+        long posts = commandCount("POST");
+        assertEquals(201, post("counted").statusCode());
+        assertEquals(uses, commandCount("USE"));
+        assertEquals(posts + 1, commandCount("POST"));
+    }
+
+    private long commandCount(String command) {
+        for (String line : ServerMetrics.report(registry)) {
+            String prefix = "STAT command " + command + " count=";
+            if (line.startsWith(prefix)) {
+                return Long.parseLong(line.substring(prefix.length(), line.indexOf(' ', prefix.length())));
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,81 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The idle timeout against a real connection: an IMPORT body that keeps
+ * arriving counts as activity, one that stalls is reaped.
+ */
+class IdleTimeoutTest {
+    static {
+        // ClientHandler reads this once when loaded; no other test loads it
+        System.setProperty("bbs.connection.idleSeconds", "1");
+    }
+
+    private BoardRegistry registry;
+    private HashedWheelTimer timer;
+    private ServerSocket listener;
+    private Socket socket;
+    private BufferedReader in;
+    private PrintWriter out;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registry = new ProtocolFixture().registry;
+        timer = new HashedWheelTimer("test-timer", 100, TimeUnit.MILLISECONDS, 64);
+        listener = new ServerSocket(0);
+        socket = new Socket("localhost", listener.getLocalPort());
+        socket.setSoTimeout(10_000);
+        Socket accepted = listener.accept();
+        new Thread(new ClientHandler(accepted, "test", registry, timer)).start();
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new PrintWriter(socket.getOutputStream(), true);
+        in.readLine(); // Board configuration handshake
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        socket.close();
+        listener.close();
+        timer.stop();
+    }
+
+    @Test
+    void slowImportBodyIsNotReaped() throws IOException, InterruptedException {
+        out.println("IMPORT");
+        for (int i = 0; i < 6; i++) {
+            // 2.4 s in all, each line well inside the 1 s timeout
+            Thread.sleep(400);
+            out.println("NOTE 0 " + (i * 110) + " 0 yellow slow " + i);
+        }
+        out.println("END");
+        assertEquals("OK IMPORTED 6 0 0", in.readLine());
+    }
+
+    @Test
+    void stalledImportBodyIsReaped() throws IOException {
+        out.println("IMPORT");
+        out.println("NOTE 0 0 0 yellow then nothing");
+        String line;
+        try {
+            line = in.readLine();
+        } catch (SocketException e) {
+            line = null; // Reset by the server's close
+        }
+        assertNull(line);
+    }
+}
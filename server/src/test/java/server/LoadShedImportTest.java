@@ -0,0 +1,81 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * IMPORT under load shedding. Runs in its own fork with one execution
+ * slot and a 100 ms queue limit (see the server pom).
+ */
+class LoadShedImportTest {
+    private ProtocolFixture fixture;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(System.getProperty("bbs.shed.queueMillis") != null, "run by the shed-test execution");
+        fixture = new ProtocolFixture();
+        pool = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void slowImportBodyDoesNotStarveOtherCommands() throws Exception {
+        PipedWriter body = new PipedWriter();
+        BufferedReader input = new BufferedReader(new PipedReader(body));
+        CompletableFuture<String> imported = CompletableFuture.supplyAsync(
+                () -> fixture.handler.processCommand("IMPORT", input).toString(), pool);
+
+        body.write("NOTE 0 0 0 yellow first\n");
+        body.flush();
+        // Another connection's commands run while the body is still arriving
+        ProtocolHandler other = new ProtocolHandler(fixture.registry);
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(150);
+            assertFalse(other.processCommand("GET").toString().startsWith("ERROR"));
+            assertFalse(other.processCommand("PIN 500 500").toString().startsWith("ERROR OVERLOADED"));
+        }
+        assertFalse(imported.isDone());
+
+        body.write("NOTE 0 200 0 blue second\nEND\n");
+        body.flush();
+        assertEquals("OK IMPORTED 2 0 0", imported.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shedBatchAnswersOverloadedAndKeepsInputInStep() throws Exception {
+        // Hold the only slot, as a long-running command would
+        assertNull(LoadShedder.admit());
+        try {
+            BufferedReader input = new BufferedReader(new StringReader("NOTE 0 0 0 yellow x\nEND\nPING\n"));
+            assertTrue(fixture.handler.processCommand("IMPORT", input).toString().startsWith("ERROR OVERLOADED"));
+            assertEquals("PING", input.readLine());
+            input = new BufferedReader(new StringReader("NOTE 0 0 0 yellow x\nEND\nPING\n"));
+            assertTrue(fixture.handler.processCommand("IMPORT REPLACE", input).toString().startsWith("ERROR OVERLOADED"));
+            assertEquals("PING", input.readLine());
+        } finally {
+            LoadShedder.release();
+        }
+        assertEquals(0, fixture.board.getNoteCount());
+    }
+}
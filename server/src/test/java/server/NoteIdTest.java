@@ -0,0 +1,73 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Commands that address one note by ID: GET id=, DELETE and EDIT
+ * (RFC Sections 7.2, 7.13 and 7.14).
+ */
+class NoteIdTest {
+    private ProtocolFixture fixture;
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+        board = fixture.board;
+    }
+
+    @Test
+    void getByIdReturnsOneNote() {
+        fixture.post("POST 0 0 yellow first");
+        long id = fixture.post("POST 200 0 blue second note");
+        assertEquals("OK 1\nNOTE " + id + " 200 0 blue second note", fixture.send("GET id=" + id));
+    }
+
+    @Test
+    void deleteRemovesTheNoteAndItsPins() {
+        long id = fixture.post("POST 0 0 yellow doomed");
+        long kept = fixture.post("POST 50 50 yellow kept");
+        assertEquals("OK PIN_ADDED", fixture.send("PIN 10 10"));
+        assertEquals("OK PIN_ADDED", fixture.send("PIN 60 60"));
+
+        assertEquals("OK NOTE_DELETED", fixture.send("DELETE " + id));
+        assertNull(board.getNote(id));
+        // 10,10 lay only inside the deleted note; 60,60 is still covered
+        assertEquals("OK 1\nPIN 60 60", fixture.send("GET PINS"));
+        assertEquals("kept", board.getNote(kept).getMessage());
+    }
+
+    @Test
+    void editKeepsIdAndPosition() {
+        long id = fixture.post("POST 100 100 green before");
+        assertEquals("OK NOTE_EDITED", fixture.send("EDIT " + id + " after, with spaces"));
+        assertEquals("OK 1\nNOTE " + id + " 100 100 green after, with spaces", fixture.send("GET id=" + id));
+        assertEquals("OK NOTE_EDITED", fixture.send("EDIT " + id));
+        assertEquals("", board.getNote(id).getMessage());
+    }
+
+    @Test
+    void unknownIdIsNotFound() {
+        long id = fixture.post("POST 0 0 yellow gone");
+        assertEquals("OK NOTE_DELETED", fixture.send("DELETE " + id));
+
+        assertTrue(fixture.send("GET id=" + id).startsWith("ERROR NOTE_NOT_FOUND"));
+        assertTrue(fixture.send("DELETE " + id).startsWith("ERROR NOTE_NOT_FOUND"));
+        assertTrue(fixture.send("EDIT " + id + " too late").startsWith("ERROR NOTE_NOT_FOUND"));
+        assertTrue(fixture.send("DELETE 999").startsWith("ERROR NOTE_NOT_FOUND"));
+    }
+
+    @Test
+    void malformedIdIsInvalid() {
+        assertTrue(fixture.send("GET id=abc").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("GET id=1 color=yellow").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("DELETE 0").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("DELETE").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("EDIT -1 message").startsWith("ERROR INVALID_FORMAT"));
+    }
+}
@@ -0,0 +1,73 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parallel filtering of large GETs: empty and short inputs, order across
+ * several chunks, and boards scanning in parallel from the first note.
+ */
+class ParallelScanTest {
+    private static List<Note> notes(int count) {
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Note note = new Note(0, 0, 100, 100, i % 3 == 0 ? "blue" : "yellow", "note " + i);
+            note.setId(i);
+            notes.add(note);
+        }
+        return notes;
+    }
+
+    private static void assertBlueInOrder(List<Note> result, int count) {
+        assertEquals(count / 3, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            assertEquals(3L * (i + 1), result.get(i).getId());
+        }
+    }
+
+    @Test
+    void emptyInputGivesEmptyResult() {
+        assertTrue(ParallelScan.filter(new ArrayList<>(), note -> true).isEmpty());
+    }
+
+    @Test
+    void inputShorterThanOneChunk() {
+        assertBlueInOrder(ParallelScan.filter(notes(10), note -> note.getColor().equals("blue")), 10);
+    }
+
+    @Test
+    void chunksAreJoinedInOrder() {
+        int count = 3 * ParallelScan.CHUNK_SIZE + 123;
+        assertBlueInOrder(ParallelScan.filter(notes(count), note -> note.getColor().equals("blue")), count);
+    }
+
+    @Test
+    void boardScansInParallelFromItsFirstNote() {
+        System.setProperty("bbs.board.parallelScanThreshold", "0");
+        Board board;
+        try {
+            board = new Board(800, 600, 100, 100, Set.of("yellow", "blue"));
+        } finally {
+            System.clearProperty("bbs.board.parallelScanThreshold");
+        }
+        assertTrue(board.getNotes("blue", null, null, null).isEmpty());
+
+        assertNull(board.addNote(new Note(0, 0, 100, 100, "blue", "one")));
+        assertNull(board.addNote(new Note(100, 0, 100, 100, "yellow", "two")));
+        assertNull(board.addNote(new Note(200, 0, 100, 100, "blue", "three")));
+        List<Note> blue = board.getNotes("blue", null, null, null);
+        assertEquals(2, blue.size());
+        assertEquals("one", blue.get(0).getMessage());
+        assertEquals("three", blue.get(1).getMessage());
+
+        board.clear();
+        assertTrue(board.getNotes(null, null, null, "one").isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * POST with an optional ttl= before the color (RFC Section 7.1) and the
+ * removal of notes whose TTL has run out (RFC Section 4.3).
+ */
+class PostTtlTest {
+    private ProtocolFixture fixture;
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+        board = fixture.board;
+    }
+
+    @Test
+    void ttlBeforeTheColorSetsTheExpiry() {
+        long before = System.currentTimeMillis();
+        long id = fixture.post("POST 0 0 ttl=60 yellow short lived");
+        Note note = board.getNote(id);
+        assertEquals("yellow", note.getColor());
+        assertEquals("short lived", note.getMessage());
+        assertTrue(note.getExpiresAt() >= before + 60_000 && note.getExpiresAt() <= before + 61_000);
+    }
+
+    @Test
+    void messageStartingWithTtlIsLiteral() {
+        long id = fixture.post("POST 0 0 yellow ttl=tbd see the agenda");
+        assertEquals("ttl=tbd see the agenda", board.getNote(id).getMessage());
+        assertEquals(0, board.getNote(id).getExpiresAt());
+
+        id = fixture.post("POST 100 0 yellow ttl=30 is only text here");
+        assertEquals("ttl=30 is only text here", board.getNote(id).getMessage());
+        assertEquals(0, board.getNote(id).getExpiresAt());
+    }
+
+    @Test
+    void malformedTtlIsRejected() {
+        assertTrue(fixture.send("POST 0 0 ttl=0 yellow never").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("POST 0 0 ttl=soon yellow never").startsWith("ERROR INVALID_FORMAT"));
+        assertTrue(fixture.send("POST 0 0 ttl=60").startsWith("ERROR INVALID_FORMAT"));
+        assertEquals(0, board.getNoteCount());
+    }
+
+    @Test
+    void expiredNoteIsRemoved() throws InterruptedException {
+        long id = fixture.post("POST 0 0 ttl=1 yellow gone soon");
+        long kept = fixture.post("POST 200 0 yellow stays");
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (board.getNote(id) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertNull(board.getNote(id));
+        assertEquals("stays", board.getNote(kept).getMessage());
+    }
+
+    @Test
+    void closedBoardExpiresNothing() throws InterruptedException {
+        long id = fixture.post("POST 0 0 ttl=1 yellow would expire");
+        board.close();
+        Thread.sleep(2_500);
+        assertEquals("would expire", board.getNote(id).getMessage());
+        assertEquals(0, board.getExpiredCount());
+    }
+}
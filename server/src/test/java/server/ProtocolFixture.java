@@ -0,0 +1,33 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A ProtocolHandler bound to the default board of a fresh in-memory
+ * registry, cleared before use. Tests drive it one command at a time,
+ * without a socket.
+ */
+final class ProtocolFixture {
+    final BoardRegistry registry;
+    final ProtocolHandler handler;
+    final Board board;
+
+    ProtocolFixture() {
+        registry = new BoardRegistry(null, 600, null);
+        handler = new ProtocolHandler(registry);
+        board = handler.getBoard();
+        send("CLEAR");
+    }
+
+    /** The response to one command, as it would be sent on the wire. */
+    String send(String command) {
+        return handler.processCommand(command).toString();
+    }
+
+    /** Post a note that must be accepted and return its ID. */
+    long post(String command) {
+        String response = send(command);
+        assertTrue(response.startsWith("OK NOTE_POSTED "), response);
+        return Long.parseLong(response.substring("OK NOTE_POSTED ".length()));
+    }
+}
@@ -0,0 +1,80 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Region queries (RFC Section 7.2 region=, GET PINS region=), including
+ * regions partly or entirely off the board.
+ */
+class RegionQueryTest {
+    private ProtocolFixture fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+        assertTrue(fixture.send("POST 0 0 yellow top left").startsWith("OK NOTE_POSTED"));
+        assertTrue(fixture.send("POST 650 450 blue bottom right").startsWith("OK NOTE_POSTED"));
+        assertEquals("OK PIN_ADDED", fixture.send("PIN 10 10"));
+        assertEquals("OK PIN_ADDED", fixture.send("PIN 700 500"));
+    }
+
+    @Test
+    void regionSelectsIntersectingNotes() {
+        assertEquals("OK 1\nNOTE 1 0 0 yellow top left", fixture.send("GET region=0 0 50 50"));
+        assertEquals("OK 2", fixture.send("GET region=0 0 800 600").split("\n")[0]);
+        assertEquals("OK 1\nPIN 700 500", fixture.send("GET PINS region=600 400 200 200"));
+    }
+
+    @Test
+    void regionOffTheBoardIsEmpty() {
+        assertEquals("OK 0", fixture.send("GET region=1000 0 10 10"));
+        assertEquals("OK 0", fixture.send("GET region=0 700 10 10"));
+        assertEquals("OK 0", fixture.send("GET region=2147483000 0 1000 10"));
+        assertEquals("OK 0", fixture.send("GET region=800 600 2147483647 2147483647"));
+        assertEquals("OK 0", fixture.send("GET PINS region=1000 1000 50 50"));
+        assertEquals("OK 0", fixture.send("GET color=blue region=5000 0 10 10"));
+    }
+
+    @Test
+    void regionPartlyOffTheBoardIsClipped() {
+        assertEquals("OK 1\nNOTE 2 650 450 blue bottom right", fixture.send("GET region=700 500 5000 5000"));
+        assertEquals("OK 1\nPIN 700 500", fixture.send("GET PINS region=700 500 2147483647 2147483647"));
+    }
+
+    @Test
+    void clipRegionKeepsOnlyTheBoard() {
+        Board board = fixture.board;
+        assertArrayEquals(new int[] { 700, 500, 100, 100 }, board.clipRegion(new int[] { 700, 500, 5000, 5000 }));
+        assertArrayEquals(new int[] { 10, 20, 30, 40 }, board.clipRegion(new int[] { 10, 20, 30, 40 }));
+        assertArrayEquals(new int[] { 0, 0, 800, 600 },
+                board.clipRegion(new int[] { 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE }));
+        assertNull(board.clipRegion(new int[] { 800, 0, 10, 10 }));
+        assertNull(board.clipRegion(new int[] { Integer.MAX_VALUE - 5, 0, 5, 5 }));
+    }
+
+    @Test
+    void boardRegionOffTheBoardTakesNoLocks() {
+        Board board = fixture.board;
+        assertEquals(0, board.getNotes(null, null, null, null, new int[] { 900, 0, 10, 10 }).size());
+        assertEquals(0, board.getPins(new int[] { 0, 900, 10, 10 }).size());
+        // The board still works afterwards, so no stripe was left held
+        assertTrue(fixture.send("POST 300 300 green still works").startsWith("OK NOTE_POSTED"));
+        assertEquals(3, board.getNoteCount());
+    }
+
+    @Test
+    void malformedRegionIsRejected() {
+        for (String command : Set.of("GET region=-1 0 10 10", "GET region=0 0 0 10", "GET region=0 0 10",
+                "GET PINS region=a 0 10 10")) {
+            assertTrue(fixture.send(command).startsWith("ERROR INVALID_FORMAT"), command);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The STATS command. Metrics are server-wide, so checks compare counts
+ * before and after rather than absolute values.
+ */
+class StatsTest {
+    private ProtocolFixture fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+    }
+
+    private List<String> stats() {
+        String[] lines = fixture.send("STATS").split("\n");
+        assertEquals("OK " + (lines.length - 1), lines[0]);
+        return Arrays.asList(lines).subList(1, lines.length);
+    }
+
+    /** A numeric field such as count= of the first line starting with prefix, or 0. */
+    private long field(String prefix, String name) {
+        for (String line : stats()) {
+            if (line.startsWith(prefix)) {
+                for (String word : line.split(" ")) {
+                    if (word.startsWith(name + "=")) {
+                        return Long.parseLong(word.substring(name.length() + 1));
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    @Test
+    void reportsUptimeConnectionsAndLocks() {
+        List<String> lines = stats();
+        assertTrue(lines.get(0).startsWith("STAT uptime "), lines.get(0));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("STAT connections ")));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("STAT lock wait count=")));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("STAT lock hold count=")));
+    }
+
+    @Test
+    void countsCommandsAndErrors() {
+        long posts = field("STAT command POST ", "count");
+        long postErrors = field("STAT command POST ", "errors");
+        fixture.send("POST 0 0 yellow counted");
+        fixture.send("POST 0 0 blue same place");
+        assertEquals(posts + 2, field("STAT command POST ", "count"));
+        assertEquals(postErrors + 1, field("STAT command POST ", "errors"));
+
+        String overlap = stats().stream().filter(line -> line.startsWith("STAT error COMPLETE_OVERLAP "))
+                .findFirst().orElseThrow();
+        assertTrue(Long.parseLong(overlap.substring("STAT error COMPLETE_OVERLAP ".length())) >= 1);
+    }
+
+    @Test
+    void reportsTheBoards() {
+        fixture.send("POST 0 0 yellow one");
+        fixture.send("PIN 10 10");
+        assertEquals(1, field("STAT board default ", "notes"));
+        assertEquals(1, field("STAT board default ", "pins"));
+    }
+
+    @Test
+    void takesNoParameters() {
+        assertTrue(fixture.send("STATS now").startsWith("ERROR INVALID_FORMAT"));
+    }
+}
@@ -0,0 +1,102 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tile-striped locking: a note is linked into every tile it covers, and
+ * mutations on different tiles, whole-board operations and reads run
+ * together without deadlock or lost updates. Tiles are 200x200 for the
+ * default 100x100 notes.
+ */
+class TileLockingTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 500;
+
+    private Board board;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        board = new Board(800, 600, 100, 100, Set.of("yellow", "blue"));
+        pool = Executors.newFixedThreadPool(THREADS + 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void noteAcrossTilesIsSeenFromEachTile() {
+        Note note = new Note(150, 150, 100, 100, "yellow", "four tiles");
+        assertNull(board.addNote(note));
+        assertEquals(1, board.getNotes(null, 160, 160, null).size());
+        assertEquals(1, board.getNotes(null, 240, 160, null).size());
+        assertEquals(1, board.getNotes(null, 160, 240, null).size());
+        assertEquals(1, board.getNotes(null, 240, 240, null).size());
+        assertNull(board.addPin(240, 240));
+
+        assertNull(board.deleteNote(note.getId()));
+        assertEquals(0, board.getNotes(null, 240, 240, null).size());
+        assertEquals(0, board.getPinCount());
+    }
+
+    @Test
+    void concurrentMutationsAcrossTilesStayConsistent() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            // Each thread straddles tile boundaries shared with its neighbours
+            int x = 150 + (t % 4) * 100;
+            int y = 150 + (t / 4) * 100;
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ROUNDS; i++) {
+                    Note note = new Note(x + i % 25, y + i / 25, 100, 100, "yellow", "round " + i);
+                    assertNull(board.addNote(note));
+                    assertNull(board.addPin(x + 50, y + 50));
+                    if (i % 2 == 0) {
+                        assertNull(board.editNote(note.getId(), "edited"));
+                        assertNull(board.deleteNote(note.getId()));
+                    }
+                }
+                return null;
+            }));
+        }
+        // Whole-board operations take every stripe while the writers run
+        Future<?> reader = pool.submit(() -> {
+            start.await();
+            for (int i = 0; i < ROUNDS / 10; i++) {
+                board.snapshot();
+                board.getNotes("yellow", null, null, null);
+            }
+            return null;
+        });
+        start.countDown();
+
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        reader.get(30, TimeUnit.SECONDS);
+
+        int expected = THREADS * ROUNDS / 2;
+        assertEquals(expected, board.getNoteCount());
+        assertEquals(expected, board.snapshot().getNotes().size());
+        assertEquals(expected, board.getNotes(null, null, null, null).size());
+        assertEquals(THREADS, board.getPinCount());
+    }
+}
@@ -0,0 +1,112 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * EXPORT and IMPORT (RFC Sections 7.15 and 7.16).
+ */
+class TransferTest {
+    private ProtocolFixture fixture;
+    private Board board;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new ProtocolFixture();
+        board = fixture.board;
+    }
+
+    private String importBody(String command, String body) {
+        BufferedReader input = new BufferedReader(new StringReader(body));
+        return fixture.handler.processCommand(command, input).toString();
+    }
+
+    private String export() throws IOException {
+        ProtocolResponse response = fixture.handler.processCommand("EXPORT");
+        assertNotNull(response.getStream());
+        StringWriter body = new StringWriter();
+        try (PrintWriter out = new PrintWriter(body)) {
+            response.getStream().writeTo(out);
+        }
+        return response + "\n" + body;
+    }
+
+    @Test
+    void exportListsNotesThenPins() throws IOException {
+        fixture.send("POST 0 0 yellow first note");
+        fixture.send("POST 200 0 blue second");
+        fixture.send("PIN 10 10");
+        assertEquals("OK 3\nNOTE 1 0 0 yellow first note\nNOTE 2 200 0 blue second\nPIN 10 10\n", export());
+    }
+
+    @Test
+    void importRestoresAnExport() throws IOException {
+        fixture.send("POST 0 0 yellow first note");
+        fixture.send("POST 200 0 blue second");
+        fixture.send("PIN 10 10");
+        String exported = export();
+        String body = exported.substring(exported.indexOf('\n') + 1) + "END\n";
+
+        assertEquals("OK IMPORTED 2 1 0", importBody("IMPORT REPLACE", body));
+        // IDs already handed out are not reused, so the notes get new ones
+        assertEquals("OK 3\nNOTE 4 0 0 yellow first note\nNOTE 5 200 0 blue second\nPIN 10 10\n", export());
+    }
+
+    @Test
+    void expiryRoundTrips() throws IOException {
+        long id = fixture.post("POST 0 0 ttl=600 yellow short lived");
+        long expiresAt = board.getNote(id).getExpiresAt();
+        String exported = export();
+        assertEquals("OK 1\nNOTE " + id + " 0 0 expires=" + expiresAt + " yellow short lived\n", exported);
+
+        String body = exported.substring(exported.indexOf('\n') + 1) + "NOTE 0 200 0 ttl=60 blue a minute\nEND\n";
+        assertEquals("OK IMPORTED 2 0 0", importBody("IMPORT REPLACE", body));
+        Note restored = board.getNotes("yellow", null, null, null).get(0);
+        assertEquals("short lived", restored.getMessage());
+        assertEquals(expiresAt, restored.getExpiresAt());
+        long ttl = board.getNotes("blue", null, null, null).get(0).getExpiresAt() - System.currentTimeMillis();
+        assertTrue(ttl > 50_000 && ttl <= 60_000, String.valueOf(ttl));
+    }
+
+    @Test
+    void invalidExpiryIsRejected() {
+        String body = "NOTE 0 0 0 ttl=0 yellow never\n"
+                + "NOTE 0 0 0 expires=soon yellow never\n"
+                + "NOTE 0 0 0 expires=1\n"
+                + "END\n";
+        assertEquals("OK IMPORTED 0 0 3", importBody("IMPORT", body));
+    }
+
+    @Test
+    void invalidLinesAreSkippedAndCounted() {
+        String body = "NOTE 0 0 0 yellow kept\n"
+                + "NOTE 0 750 0 yellow off the board\n"
+                + "NOTE 0 300 0 black unknown color\n"
+                + "BOGUS line\n"
+                + "PIN 10 10\n"
+                + "PIN 500 500\n"
+                + "END\n";
+        // The PIN outside every note is rejected by the board, not the parser
+        assertEquals("OK IMPORTED 1 1 4", importBody("IMPORT", body));
+        assertEquals(1, board.getNoteCount());
+        assertEquals(1, board.getPinCount());
+    }
+
+    @Test
+    void rejectedImportLeavesTheInputInStep() throws IOException {
+        BufferedReader input = new BufferedReader(new StringReader("NOTE 0 0 0 yellow x\nEND\nPING\n"));
+        assertTrue(fixture.handler.processCommand("IMPORT SOMETIMES", input).toString().startsWith("ERROR INVALID_FORMAT"));
+        assertEquals("PING", input.readLine());
+        assertEquals(0, board.getNoteCount());
+    }
+}
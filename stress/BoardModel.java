@@ -0,0 +1,283 @@
+package stress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * BoardModel is the sequential specification of a board, written from the
+ * RFC rather than from server.Board, for the commands StressHarness sends.
+ *
+ * States are immutable and compare by content, so the linearizability
+ * checker can back out of a step and cache states it has already tried.
+ * step checks a recorded response against what the command must answer in
+ * a given state; POST takes its note ID from the response, since IDs are
+ * only required to be unique (the harness checks their order separately).
+ */
+final class BoardModel {
+    private final int width;
+    private final int height;
+    private final int noteWidth;
+    private final int noteHeight;
+    private final Set<String> colors;
+
+    /** A note as GET shows it, without its ID. */
+    static final class Note {
+        final int x;
+        final int y;
+        final String color;
+        final String message;
+
+        Note(int x, int y, String color, String message) {
+            this.x = x;
+            this.y = y;
+            this.color = color;
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Note)) {
+                return false;
+            }
+            Note other = (Note) o;
+            return x == other.x && y == other.y && color.equals(other.color) && message.equals(other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, color, message);
+        }
+    }
+
+    /** Board contents: notes by ID and pins as packed coordinates. */
+    static final class State {
+        final TreeMap<Long, Note> notes;
+        final TreeSet<Long> pins;
+
+        State(TreeMap<Long, Note> notes, TreeSet<Long> pins) {
+            this.notes = notes;
+            this.pins = pins;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State && notes.equals(((State) o).notes) && pins.equals(((State) o).pins);
+        }
+
+        @Override
+        public int hashCode() {
+            return notes.hashCode() * 31 + pins.hashCode();
+        }
+    }
+
+    BoardModel(int width, int height, int noteWidth, int noteHeight, Set<String> colors) {
+        this.width = width;
+        this.height = height;
+        this.noteWidth = noteWidth;
+        this.noteHeight = noteHeight;
+        this.colors = colors;
+    }
+
+    /** An empty board, as after CLEAR. */
+    State empty() {
+        return new State(new TreeMap<>(), new TreeSet<>());
+    }
+
+    /**
+     * Apply one command to a state.
+     *
+     * @param result The normalized response the client received
+     * @return The state after the command, or null if the command cannot
+     *         have answered this in the given state
+     */
+    State step(State state, String command, String result) {
+        if (result.equals("ERROR OVERLOADED") || result.equals("ERROR RATE_LIMITED")) {
+            return state; // Rejected before reaching the board
+        }
+        String[] parts = command.split(" ", -1);
+        switch (parts[0]) {
+            case "POST":
+                return post(state, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), parts[3], parts[4], result);
+            case "GET":
+                if (parts.length == 2 && parts[1].equals("PINS")) {
+                    return result.equals(pinsResponse(state)) ? state : null;
+                }
+                return result.equals(notesResponse(state)) ? state : null;
+            case "PIN":
+                return pin(state, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), result);
+            case "UNPIN":
+                return unpin(state, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), result);
+            case "DELETE":
+                return delete(state, Long.parseLong(parts[1]), result);
+            case "EDIT":
+                return edit(state, Long.parseLong(parts[1]), parts[2], result);
+            case "SHAKE":
+                return result.equals("OK SHAKE_COMPLETE") ? shake(state) : null;
+            case "CLEAR":
+                return result.equals("OK CLEAR_COMPLETE") ? empty() : null;
+            default:
+                throw new IllegalArgumentException("No model for " + command);
+        }
+    }
+
+    private State post(State state, int x, int y, String color, String message, String result) {
+        // RFC 9.1 checks, in the server's order: bounds, color, overlap
+        if (x < 0 || y < 0 || x + noteWidth > width || y + noteHeight > height) {
+            return result.equals("ERROR OUT_OF_BOUNDS") ? state : null;
+        }
+        if (!colors.contains(color)) {
+            return result.equals("ERROR COLOR_NOT_SUPPORTED") ? state : null;
+        }
+        for (Note note : state.notes.values()) {
+            if (note.x == x && note.y == y) {
+                return result.equals("ERROR COMPLETE_OVERLAP") ? state : null;
+            }
+        }
+        if (!result.startsWith("OK NOTE_POSTED ")) {
+            return null;
+        }
+        long id = Long.parseLong(result.substring("OK NOTE_POSTED ".length()));
+        if (id <= 0 || state.notes.containsKey(id)) {
+            return null;
+        }
+        TreeMap<Long, Note> notes = new TreeMap<>(state.notes);
+        notes.put(id, new Note(x, y, color, message));
+        return new State(notes, state.pins);
+    }
+
+    private State pin(State state, int x, int y, String result) {
+        if (x < 0 || y < 0) {
+            return result.equals("ERROR OUT_OF_BOUNDS") ? state : null;
+        }
+        if (state.pins.contains(pack(x, y))) {
+            return result.equals("OK PIN_ADDED") ? state : null; // Duplicates are allowed
+        }
+        if (!covered(state.notes, x, y)) {
+            return result.equals("ERROR NO_NOTE_AT_COORDINATE") ? state : null;
+        }
+        if (!result.equals("OK PIN_ADDED")) {
+            return null;
+        }
+        TreeSet<Long> pins = new TreeSet<>(state.pins);
+        pins.add(pack(x, y));
+        return new State(state.notes, pins);
+    }
+
+    private State unpin(State state, int x, int y, String result) {
+        if (!state.pins.contains(pack(x, y))) {
+            return result.equals("ERROR PIN_NOT_FOUND") ? state : null;
+        }
+        if (!result.equals("OK PIN_REMOVED")) {
+            return null;
+        }
+        TreeSet<Long> pins = new TreeSet<>(state.pins);
+        pins.remove(pack(x, y));
+        return new State(state.notes, pins);
+    }
+
+    /** DELETE also removes the pins no remaining note covers. */
+    private State delete(State state, long id, String result) {
+        if (!state.notes.containsKey(id)) {
+            return result.equals("ERROR NOTE_NOT_FOUND") ? state : null;
+        }
+        if (!result.equals("OK NOTE_DELETED")) {
+            return null;
+        }
+        TreeMap<Long, Note> notes = new TreeMap<>(state.notes);
+        notes.remove(id);
+        TreeSet<Long> pins = new TreeSet<>();
+        for (long pin : state.pins) {
+            if (covered(notes, x(pin), y(pin))) {
+                pins.add(pin);
+            }
+        }
+        return new State(notes, pins);
+    }
+
+    private State edit(State state, long id, String message, String result) {
+        Note note = state.notes.get(id);
+        if (note == null) {
+            return result.equals("ERROR NOTE_NOT_FOUND") ? state : null;
+        }
+        if (!result.equals("OK NOTE_EDITED")) {
+            return null;
+        }
+        TreeMap<Long, Note> notes = new TreeMap<>(state.notes);
+        notes.put(id, new Note(note.x, note.y, note.color, message));
+        return new State(notes, state.pins);
+    }
+
+    /** SHAKE removes every note with no pin inside it; pins stay. */
+    private State shake(State state) {
+        TreeMap<Long, Note> notes = new TreeMap<>();
+        for (Map.Entry<Long, Note> entry : state.notes.entrySet()) {
+            Note note = entry.getValue();
+            for (long pin : state.pins) {
+                if (contains(note, x(pin), y(pin))) {
+                    notes.put(entry.getKey(), note);
+                    break;
+                }
+            }
+        }
+        return new State(notes, state.pins);
+    }
+
+    /** GET with no filters: every note, lines sorted as by normalize. */
+    private static String notesResponse(State state) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Long, Note> entry : state.notes.entrySet()) {
+            Note note = entry.getValue();
+            lines.add("NOTE " + entry.getKey() + " " + note.x + " " + note.y + " " + note.color + " "
+                    + note.message);
+        }
+        return Operation.normalize(response(lines));
+    }
+
+    private static String pinsResponse(State state) {
+        List<String> lines = new ArrayList<>();
+        for (long pin : state.pins) {
+            lines.add("PIN " + x(pin) + " " + y(pin));
+        }
+        return Operation.normalize(response(lines));
+    }
+
+    private static String response(List<String> lines) {
+        Collections.sort(lines);
+        StringBuilder response = new StringBuilder("OK " + lines.size());
+        for (String line : lines) {
+            response.append('\n').append(line);
+        }
+        return response.toString();
+    }
+
+    private boolean covered(Map<Long, Note> notes, int x, int y) {
+        for (Note note : notes.values()) {
+            if (contains(note, x, y)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(Note note, int x, int y) {
+        return x >= note.x && x < note.x + noteWidth && y >= note.y && y < note.y + noteHeight;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static int x(long pin) {
+        return (int) (pin >> 32);
+    }
+
+    private static int y(long pin) {
+        return (int) pin;
+    }
+}
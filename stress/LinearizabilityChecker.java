@@ -0,0 +1,200 @@
+package stress;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * LinearizabilityChecker decides whether a concurrent history could have
+ * come from running its operations one at a time, each at some instant
+ * between its call and its return, against BoardModel.
+ *
+ * This is the Wing and Gong search with Lowe's memoization: the history is
+ * a list of call and return entries in time order. The search repeatedly
+ * takes a pending call whose operation the model accepts next, removes it
+ * and its return from the list, and backtracks when it reaches a return
+ * whose operation has not been taken. Each (set of operations taken,
+ * model state) pair is explored once, which keeps histories of a few
+ * hundred operations over a handful of clients fast in practice; the
+ * search is still exponential in the worst case, so it gives up after a
+ * step budget and reports the history as unchecked.
+ */
+final class LinearizabilityChecker {
+    /** Outcome of a check. */
+    enum Verdict {
+        LINEARIZABLE, NOT_LINEARIZABLE, INCONCLUSIVE
+    }
+
+    /** Verdict, search effort and, if not linearizable, how far it got. */
+    static final class Result {
+        final Verdict verdict;
+        final long steps;
+        final BitSet longest; // operations in the longest order found
+
+        Result(Verdict verdict, long steps, BitSet longest) {
+            this.verdict = verdict;
+            this.steps = steps;
+            this.longest = longest;
+        }
+    }
+
+    /** A call or return in the doubly linked history list. */
+    private static final class Entry {
+        final Operation op;
+        final boolean call;
+        final long time;
+        Entry match; // a call's return
+        Entry prev;
+        Entry next;
+
+        Entry(Operation op, boolean call, long time) {
+            this.op = op;
+            this.call = call;
+            this.time = time;
+        }
+    }
+
+    /** A call taken by the search and the state before it. */
+    private static final class Taken {
+        final Entry entry;
+        final BoardModel.State before;
+
+        Taken(Entry entry, BoardModel.State before) {
+            this.entry = entry;
+            this.before = before;
+        }
+    }
+
+    /** Memo key: operations taken and the state they led to. */
+    private static final class Key {
+        final BitSet taken;
+        final BoardModel.State state;
+
+        Key(BitSet taken, BoardModel.State state) {
+            this.taken = taken;
+            this.state = state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && taken.equals(((Key) o).taken) && state.equals(((Key) o).state);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(taken, state);
+        }
+    }
+
+    private LinearizabilityChecker() {
+    }
+
+    /**
+     * Check a complete history; every operation has returned.
+     *
+     * @param history  Operations with ids 0..n-1
+     * @param model    Sequential specification
+     * @param initial  State before the first operation
+     * @param maxSteps Search steps before giving up as INCONCLUSIVE
+     */
+    static Result check(List<Operation> history, BoardModel model, BoardModel.State initial, long maxSteps) {
+        Entry head = link(history);
+        BitSet taken = new BitSet(history.size());
+        BitSet longest = new BitSet();
+        Set<Key> seen = new HashSet<>();
+        Deque<Taken> stack = new ArrayDeque<>();
+        BoardModel.State state = initial;
+        long steps = 0;
+
+        Entry entry = head.next;
+        while (head.next != null) {
+            if (++steps > maxSteps) {
+                return new Result(Verdict.INCONCLUSIVE, steps, longest);
+            }
+            if (entry.call) {
+                BoardModel.State after = model.step(state, entry.op.command, entry.op.result);
+                if (after != null) {
+                    BitSet next = (BitSet) taken.clone();
+                    next.set(entry.op.id);
+                    if (seen.add(new Key(next, after))) {
+                        stack.push(new Taken(entry, state));
+                        state = after;
+                        taken = next;
+                        if (taken.cardinality() > longest.cardinality()) {
+                            longest = taken;
+                        }
+                        lift(entry);
+                        entry = head.next;
+                        continue;
+                    }
+                }
+                entry = entry.next;
+            } else {
+                // An operation returned before any order could include it
+                if (stack.isEmpty()) {
+                    return new Result(Verdict.NOT_LINEARIZABLE, steps, longest);
+                }
+                Taken last = stack.pop();
+                state = last.before;
+                taken = (BitSet) taken.clone();
+                taken.clear(last.entry.op.id);
+                unlift(last.entry);
+                entry = last.entry.next;
+            }
+        }
+        return new Result(Verdict.LINEARIZABLE, steps, longest);
+    }
+
+    /**
+     * Build the entry list behind a sentinel head. On equal times calls
+     * come first, treating the operations as overlapping.
+     */
+    private static Entry link(List<Operation> history) {
+        List<Entry> entries = new ArrayList<>(history.size() * 2);
+        for (Operation op : history) {
+            Entry call = new Entry(op, true, op.call);
+            Entry ret = new Entry(op, false, op.ret);
+            call.match = ret;
+            entries.add(call);
+            entries.add(ret);
+        }
+        entries.sort(Comparator.<Entry>comparingLong(e -> e.time).thenComparing(e -> !e.call));
+
+        Entry head = new Entry(null, false, Long.MIN_VALUE);
+        Entry previous = head;
+        for (Entry entry : entries) {
+            previous.next = entry;
+            entry.prev = previous;
+            previous = entry;
+        }
+        return head;
+    }
+
+    /** Remove a call and its return from the list. */
+    private static void lift(Entry call) {
+        call.prev.next = call.next;
+        call.next.prev = call.prev; // A call is always followed by its return
+        Entry ret = call.match;
+        ret.prev.next = ret.next;
+        if (ret.next != null) {
+            ret.next.prev = ret.prev;
+        }
+    }
+
+    /** Undo lift; entries go back in the reverse order they left. */
+    private static void unlift(Entry call) {
+        Entry ret = call.match;
+        ret.prev.next = ret;
+        if (ret.next != null) {
+            ret.next.prev = ret;
+        }
+        call.prev.next = call;
+        call.next.prev = call;
+    }
+}
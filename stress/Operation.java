@@ -0,0 +1,52 @@
+package stress;
+
+import java.util.Arrays;
+
+/**
+ * One command of a recorded history: what a client sent, what it got back
+ * and when, as System.nanoTime readings taken just before sending and just
+ * after the whole response was read.
+ */
+final class Operation {
+    final int id; // index in the history, for the checker's bit sets
+    final int client;
+    final String command;
+    final String result; // normalized, see normalize
+    final long call;
+    final long ret;
+
+    Operation(int id, int client, String command, String result, long call, long ret) {
+        this.id = id;
+        this.client = client;
+        this.command = command;
+        this.result = result;
+        this.call = call;
+        this.ret = ret;
+    }
+
+    /** The note ID of a successful POST, or 0. */
+    long postedId() {
+        if (!result.startsWith("OK NOTE_POSTED ")) {
+            return 0;
+        }
+        return Long.parseLong(result.substring("OK NOTE_POSTED ".length()));
+    }
+
+    /**
+     * Reduce a response to what the model can predict: errors to
+     * "ERROR &lt;code&gt;" without the free-text message, and the lines of a
+     * multi-line response sorted, since the RFC fixes no order for them.
+     */
+    static String normalize(String response) {
+        if (response.startsWith("ERROR ")) {
+            int end = response.indexOf(' ', 6);
+            return end < 0 ? response : response.substring(0, end);
+        }
+        String[] lines = response.split("\n");
+        if (lines.length <= 2) {
+            return response;
+        }
+        Arrays.sort(lines, 1, lines.length);
+        return String.join("\n", lines);
+    }
+}
@@ -0,0 +1,547 @@
+package stress;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import server.Board;
+import server.BoardRegistry;
+import server.ProtocolHandler;
+import server.Server;
+
+/**
+ * Concurrent stress test that checks the board's commands are atomic.
+ *
+ * Runs rounds of concurrent clients against one board. Each round starts
+ * from an empty board; the clients are released together and each sends a
+ * random mix of POST, GET, GET PINS, PIN, UNPIN, DELETE, EDIT, SHAKE and
+ * CLEAR on a few coordinates that straddle tile boundaries, so commands
+ * keep colliding on the same notes, pins and lock stripes. Every command is
+ * recorded with its response and call and return times, and the round's
+ * history is checked with LinearizabilityChecker against BoardModel: a
+ * partial SHAKE, CLEAR or DELETE, a lost update or a torn GET shows up as
+ * a history no sequential order explains (RFC Section 10.3, Appendix A.5).
+ * POST IDs must also be unique and increase with real time.
+ *
+ * Usage:
+ * java -jar stress/target/stress.jar [options]
+ *
+ * --mode board|server   Drive ProtocolHandler and Board directly, or a
+ *                       Server over loopback sockets (default board)
+ * --host &lt;host&gt;         Server mode: server to test; without it a
+ *                       Server is started in this JVM on a free port
+ * --port &lt;port&gt;         Port of --host (default 4200)
+ * --threads &lt;n&gt;        Concurrent clients (default 6)
+ * --ops &lt;n&gt;            Commands per client per round (default 25)
+ * --rounds &lt;n&gt;         Rounds (default 200)
+ * --seed &lt;n&gt;           Random seed, to repeat a run (default: time)
+ * --max-steps &lt;n&gt;      Checker steps per round before a round is
+ *                       reported unchecked (default 2000000)
+ *
+ * Throughput and latency are reported for the recorded commands. Rounds
+ * are short and start together, so throughput is lower than loadgen's;
+ * compare runs of the harness with each other. Server settings such as
+ * -Dbbs.board.combining=true apply to the in-process board or server.
+ * Exits with status 1 on the first history that is not linearizable,
+ * after printing it, or if the clients cannot connect.
+ */
+public final class StressHarness {
+    private static final String BOARD = "stress";
+    // Command weights, in the order of the cases in nextCommand
+    private static final int[] WEIGHTS = { 30, 12, 5, 18, 10, 10, 8, 4, 3 };
+    // Note corners cross the 200-pixel tiles; 720 and 550 are out of bounds
+    private static final int[] NOTE_X = { 0, 50, 150, 250, 720 };
+    private static final int[] NOTE_Y = { 0, 50, 150, 550 };
+    private static final int[] PIN_X = { 60, 120, 160, 210, 300 };
+    private static final int[] PIN_Y = { 60, 120, 160, 210 };
+    private static final long UNKNOWN_ID = 999_999_999L;
+
+    /** Parsed command line. */
+    static final class Options {
+        String mode = "board";
+        String host;
+        int port = 4200;
+        int threads = 6;
+        int ops = 25;
+        int rounds = 200;
+        long seed = System.nanoTime();
+        long maxSteps = 2_000_000;
+    }
+
+    /** One client connection: sends a command and returns the raw response. */
+    interface Client extends Closeable {
+        String send(String command) throws IOException;
+    }
+
+    /** Board mode: commands go straight to a ProtocolHandler. */
+    static final class HandlerClient implements Client {
+        private final ProtocolHandler handler;
+
+        HandlerClient(BoardRegistry registry) {
+            handler = new ProtocolHandler(registry, "stress");
+        }
+
+        @Override
+        public String send(String command) {
+            return handler.processCommand(command).toString();
+        }
+
+        Board getBoard() {
+            return handler.getBoard();
+        }
+
+        @Override
+        public void close() {
+            handler.close();
+        }
+    }
+
+    /** Server mode: one socket, one command in flight. */
+    static final class SocketClient implements Client {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+        final String config; // BOARD_CONFIG handshake line
+
+        SocketClient(String host, int port) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            config = readLine();
+        }
+
+        @Override
+        public String send(String command) throws IOException {
+            out.write(command);
+            out.write('\n');
+            out.flush();
+            String status = readLine();
+            if (!command.startsWith("GET") || !status.matches("OK \\d+")) {
+                return status;
+            }
+            StringBuilder response = new StringBuilder(status);
+            for (int n = Integer.parseInt(status.substring(3)); n > 0; n--) {
+                response.append('\n').append(readLine());
+            }
+            return response.toString();
+        }
+
+        private String readLine() throws IOException {
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("Server closed the connection");
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /** Counts across rounds. */
+    private static final class Totals {
+        long operations;
+        long nanos;
+        long checkNanos;
+        long steps;
+        int unchecked;
+        final List<Long> latencies = new ArrayList<>();
+    }
+
+    private StressHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: StressHarness [--mode board|server] [--host h] [--port p] [--threads n]"
+                    + " [--ops n] [--rounds n] [--seed n] [--max-steps n]");
+            System.exit(1);
+            return;
+        }
+
+        // Quiet the in-process server unless asked otherwise; set before its classes load
+        defaultProperty("bbs.log.level", "OFF");
+        defaultProperty("bbs.metrics.dumpSeconds", "0");
+
+        List<Client> clients;
+        try {
+            clients = connect(options);
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Stress: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        BoardModel model = modelOf(clients.get(0));
+        System.out.println("Stress: " + options.threads + " clients, " + options.ops + " commands each, "
+                + options.rounds + " rounds, mode " + options.mode + ", seed " + options.seed);
+
+        ExecutorService pool = Executors.newFixedThreadPool(options.threads);
+        Totals totals = new Totals();
+        Set<Long> postedIds = new HashSet<>();
+        int status = 0;
+        try {
+            for (int round = 0; round < options.rounds && status == 0; round++) {
+                clients.get(0).send("CLEAR");
+                List<Operation> history = runRound(options, clients, pool, round);
+                status = check(options, model, history, round, postedIds, totals);
+            }
+        } finally {
+            pool.shutdownNow();
+            for (Client client : clients) {
+                client.close();
+            }
+        }
+        report(options, totals, status == 0);
+        System.exit(status);
+    }
+
+    private static void defaultProperty(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /** Open one client per thread, all bound to the stress board. */
+    private static List<Client> connect(Options options) throws Exception {
+        List<Client> clients = new ArrayList<>();
+        if (options.mode.equals("board")) {
+            BoardRegistry registry = new BoardRegistry(null, 600, null);
+            for (int i = 0; i < options.threads; i++) {
+                clients.add(new HandlerClient(registry));
+            }
+        } else {
+            String host = options.host;
+            int port = options.port;
+            if (host == null) {
+                host = "localhost";
+                port = startServer();
+            }
+            for (int i = 0; i < options.threads; i++) {
+                clients.add(new SocketClient(host, port));
+            }
+        }
+        for (Client client : clients) {
+            String response = client.send("USE " + BOARD);
+            if (!response.startsWith("OK")) {
+                throw new IllegalStateException("USE " + BOARD + " failed: " + response);
+            }
+        }
+        return clients;
+    }
+
+    /** Start a Server in this JVM on a free port and wait until it accepts. */
+    private static int startServer() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        String[] argv = { String.valueOf(port) };
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread server = new Thread(() -> {
+            try {
+                Server.main(argv);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        }, "server");
+        server.setDaemon(true);
+        server.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                return port;
+            } catch (IOException e) {
+                if (failure.get() != null) {
+                    throw new IOException("Server failed to start on port " + port + ": " + failure.get(),
+                            failure.get());
+                }
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Server did not start on port " + port, e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /** The model for the board the client is bound to. */
+    private static BoardModel modelOf(Client client) {
+        if (client instanceof HandlerClient) {
+            Board board = ((HandlerClient) client).getBoard();
+            return new BoardModel(board.getWidth(), board.getHeight(), board.getNoteWidth(), board.getNoteHeight(),
+                    board.getValidColors());
+        }
+        // BOARD_CONFIG width height noteWidth noteHeight color1,color2,...
+        String[] config = ((SocketClient) client).config.split(" ");
+        return new BoardModel(Integer.parseInt(config[1]), Integer.parseInt(config[2]),
+                Integer.parseInt(config[3]), Integer.parseInt(config[4]),
+                new LinkedHashSet<>(Arrays.asList(config[5].split(","))));
+    }
+
+    /** Release all clients together and collect what they did. */
+    private static List<Operation> runRound(Options options, List<Client> clients, ExecutorService pool, int round)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger ids = new AtomicInteger();
+        AtomicLong lastPosted = new AtomicLong(UNKNOWN_ID);
+        List<Future<List<Operation>>> results = new ArrayList<>();
+        for (int c = 0; c < clients.size(); c++) {
+            int client = c;
+            Random random = new Random(options.seed * 1_000_003L + round * 31L + client);
+            results.add(pool.submit(() -> {
+                start.await();
+                return runClient(options, clients.get(client), client, random, ids, lastPosted);
+            }));
+        }
+        start.countDown();
+
+        List<Operation> history = new ArrayList<>();
+        for (Future<List<Operation>> result : results) {
+            history.addAll(result.get());
+        }
+        history.sort(Comparator.comparingInt(op -> op.id));
+        return history;
+    }
+
+    private static List<Operation> runClient(Options options, Client client, int index, Random random,
+            AtomicInteger ids, AtomicLong lastPosted) throws IOException {
+        List<Operation> operations = new ArrayList<>(options.ops);
+        List<Long> posted = new ArrayList<>();
+        for (int n = 0; n < options.ops; n++) {
+            String command = nextCommand(random, index, n, posted, lastPosted);
+            long call = System.nanoTime();
+            String response = client.send(command);
+            long ret = System.nanoTime();
+
+            Operation op = new Operation(ids.getAndIncrement(), index, command, Operation.normalize(response),
+                    call, ret);
+            long id = op.postedId();
+            if (id > 0) {
+                posted.add(id);
+                lastPosted.set(id);
+            }
+            operations.add(op);
+        }
+        return operations;
+    }
+
+    /** A random command; DELETE and EDIT target this or another client's notes. */
+    private static String nextCommand(Random random, int client, int n, List<Long> posted, AtomicLong lastPosted) {
+        int pick = random.nextInt(Arrays.stream(WEIGHTS).sum());
+        int type = 0;
+        while (pick >= WEIGHTS[type]) {
+            pick -= WEIGHTS[type++];
+        }
+        switch (type) {
+            case 0:
+                String color = random.nextInt(20) == 0 ? "brown" : random.nextBoolean() ? "yellow" : "blue";
+                return "POST " + NOTE_X[random.nextInt(NOTE_X.length)] + " " + NOTE_Y[random.nextInt(NOTE_Y.length)]
+                        + " " + color + " c" + client + "n" + n;
+            case 1:
+                return "GET";
+            case 2:
+                return "GET PINS";
+            case 3:
+                return "PIN " + PIN_X[random.nextInt(PIN_X.length)] + " " + PIN_Y[random.nextInt(PIN_Y.length)];
+            case 4:
+                return "UNPIN " + PIN_X[random.nextInt(PIN_X.length)] + " " + PIN_Y[random.nextInt(PIN_Y.length)];
+            case 5:
+                return "DELETE " + target(random, posted, lastPosted);
+            case 6:
+                return "EDIT " + target(random, posted, lastPosted) + " e" + client + "n" + n;
+            case 7:
+                return "SHAKE";
+            default:
+                return "CLEAR";
+        }
+    }
+
+    private static long target(Random random, List<Long> posted, AtomicLong lastPosted) {
+        if (posted.isEmpty() || random.nextBoolean()) {
+            return lastPosted.get();
+        }
+        return posted.get(random.nextInt(posted.size()));
+    }
+
+    /** Check one round's history and add it to the totals; returns the exit status. */
+    private static int check(Options options, BoardModel model, List<Operation> history, int round,
+            Set<Long> postedIds, Totals totals) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (Operation op : history) {
+            first = Math.min(first, op.call);
+            last = Math.max(last, op.ret);
+            totals.latencies.add(op.ret - op.call);
+        }
+        totals.operations += history.size();
+        totals.nanos += last - first;
+
+        String idError = checkIds(history, postedIds);
+        if (idError != null) {
+            System.out.println("Round " + round + ": " + idError);
+            printHistory(history, null);
+            return 1;
+        }
+
+        long start = System.nanoTime();
+        LinearizabilityChecker.Result result = LinearizabilityChecker.check(history, model, model.empty(),
+                options.maxSteps);
+        totals.checkNanos += System.nanoTime() - start;
+        totals.steps += result.steps;
+        switch (result.verdict) {
+            case LINEARIZABLE:
+                return 0;
+            case INCONCLUSIVE:
+                totals.unchecked++;
+                System.out.println("Round " + round + ": gave up after " + result.steps + " steps");
+                return 0;
+            default:
+                System.out.println("Round " + round + ": history is not linearizable (seed " + options.seed
+                        + "); '+' marks the longest order found");
+                printHistory(history, result);
+                return 1;
+        }
+    }
+
+    /**
+     * POST IDs must be unique across the run, and a POST that returned
+     * before another was sent must have the smaller ID.
+     */
+    private static String checkIds(List<Operation> history, Set<Long> postedIds) {
+        List<Operation> posts = new ArrayList<>();
+        for (Operation op : history) {
+            if (op.postedId() > 0) {
+                if (!postedIds.add(op.postedId())) {
+                    return "note ID " + op.postedId() + " was issued twice";
+                }
+                posts.add(op);
+            }
+        }
+        for (Operation a : posts) {
+            for (Operation b : posts) {
+                if (a.ret < b.call && a.postedId() > b.postedId()) {
+                    return "note ID " + b.postedId() + " was issued after ID " + a.postedId();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void printHistory(List<Operation> history, LinearizabilityChecker.Result result) {
+        List<Operation> sorted = new ArrayList<>(history);
+        sorted.sort(Comparator.comparingLong(op -> op.call));
+        long origin = sorted.get(0).call;
+        for (Operation op : sorted) {
+            boolean ordered = result != null && result.longest.get(op.id);
+            System.out.println(String.format(Locale.ROOT, "%s %9d %9d c%-2d %-26s -> %s", ordered ? "+" : " ",
+                    op.call - origin, op.ret - origin, op.client, op.command, op.result.replace("\n", " | ")));
+        }
+    }
+
+    private static void report(Options options, Totals totals, boolean passed) {
+        Collections.sort(totals.latencies);
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%d commands, %.0f ops/s while recording, latency"
+                + " p50 %.3f ms, p99 %.3f ms, max %.3f ms", totals.operations,
+                totals.operations / (totals.nanos / 1e9), millis(percentile(totals.latencies, 50)),
+                millis(percentile(totals.latencies, 99)), millis(percentile(totals.latencies, 100))));
+        System.out.println(String.format(Locale.ROOT, "Checker: %d search steps in %.0f ms, %d rounds unchecked",
+                totals.steps, totals.checkNanos / 1e6, totals.unchecked));
+        System.out.println(passed ? "All checked histories are linearizable" : "FAILED");
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            try {
+                switch (name) {
+                    case "--mode":
+                        options.mode = value;
+                        break;
+                    case "--host":
+                        options.host = value;
+                        break;
+                    case "--port":
+                        options.port = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        options.threads = Integer.parseInt(value);
+                        break;
+                    case "--ops":
+                        options.ops = Integer.parseInt(value);
+                        break;
+                    case "--rounds":
+                        options.rounds = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--max-steps":
+                        options.maxSteps = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+            }
+        }
+        if (!options.mode.equals("board") && !options.mode.equals("server")) {
+            throw new IllegalArgumentException("--mode must be board or server");
+        }
+        if (options.threads < 1 || options.ops < 1 || options.rounds < 1 || options.maxSteps < 1) {
+            throw new IllegalArgumentException("--threads, --ops, --rounds and --max-steps must be positive");
+        }
+        return options;
+    }
+}